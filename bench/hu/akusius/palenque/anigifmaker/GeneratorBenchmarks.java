@@ -0,0 +1,118 @@
+package hu.akusius.palenque.anigifmaker;
+
+import hu.akusius.palenque.anigifmaker.bench.Benchmark;
+import hu.akusius.palenque.anigifmaker.bench.CountingOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A képkocka-generálás és a teljes GIF-készítés mérései.
+ * @author Bujdosó Ákos
+ */
+public final class GeneratorBenchmarks {
+
+  /**
+   * A lépésenkénti mérések képkockáinak szélessége.
+   */
+  private static final int WIDTH = 400;
+
+  /**
+   * A lépésenkénti mérések képkockáinak magassága.
+   */
+  private static final int HEIGHT = 300;
+
+  /**
+   * Az egyes lépések mérései: minden lépés középső képkockájának generálása
+   * (a szomszédos kockák nem kerülnek legenerálásra, és a képkocka-gyorsítótár ki van kapcsolva,
+   * így a gyorsítótárak nem segítenek), egy gyorsítótárból kiszolgált képkocka,
+   * a lépések középső kockáinak generálása és GIF-be kódolása indexelt, illetve szürkeárnyalatos képekkel,
+   * valamint a GIF-készítés a korpusz minden elemére (üres képkocka-gyorsítótárral).
+   * @param corpus A GIF-készítés paraméterei névvel.
+   * @return A mérések listája.
+   */
+  public static List<Benchmark> create(Map<String, GenerateParams> corpus) {
+    List<Benchmark> benchmarks = new ArrayList<>();
+
+    AnimParamsBuilder apb = new AnimParamsBuilder();
+    apb.setWidth(WIDTH).setHeight(HEIGHT).setShowGrid(true).setTheta(0.3).setPhi(-0.2).setZoom(1.3);
+    final FrameGenerator fg = new FrameGenerator(apb.createAnimParams());
+    fg.setFrameCache(null);
+    final int[] middleFrames = getMiddleFrames(fg);
+    for (int step = 0; step < middleFrames.length; step++) {
+      final int frame = middleFrames[step];
+      if (frame < 0) {
+        continue;
+      }
+      benchmarks.add(new Benchmark(String.format("render.step.%02d", step)) {
+        @Override
+        public Object run() {
+          return fg.generateFrame(frame);
+        }
+      });
+    }
+
+    final FrameGenerator cachedFg = new FrameGenerator(apb.createAnimParams());
+    cachedFg.setFrameCache(new FrameCache(WIDTH * HEIGHT));
+    final int cachedFrame = middleFrames[middleFrames.length / 2];
+    benchmarks.add(new Benchmark("render.cached") {
+      @Override
+      public Object run() {
+        return cachedFg.generateFrame(cachedFrame);
+      }
+    });
+
+    for (final boolean gray : new boolean[]{false, true}) {
+      final FrameGenerator targetFg = new FrameGenerator(apb.createAnimParams());
+      targetFg.setFrameCache(null);
+      targetFg.setGrayFrames(gray);
+      benchmarks.add(new Benchmark(gray ? "render.target.gray" : "render.target.indexed") {
+        @Override
+        public Object run() {
+          CountingOutputStream cos = new CountingOutputStream();
+          PalenqueGifEncoder encoder = new PalenqueGifEncoder();
+          encoder.start(cos);
+          for (int frame : middleFrames) {
+            if (frame >= 0) {
+              encoder.addFrame(targetFg.generateFrame(frame));
+            }
+          }
+          encoder.finish();
+          return cos.getCount();
+        }
+      });
+    }
+
+    for (Map.Entry<String, GenerateParams> e : corpus.entrySet()) {
+      final GenerateParams params = e.getValue();
+      benchmarks.add(new Benchmark("gifmaker." + e.getKey()) {
+        @Override
+        public Object run() throws Exception {
+          FrameCache.getShared().clear();
+          CountingOutputStream cos = new CountingOutputStream();
+          GifMaker.makeGif(params, cos);
+          return cos.getCount();
+        }
+      });
+    }
+
+    return benchmarks;
+  }
+
+  /**
+   * Az egyes lépések középső képkockáinak meghatározása.
+   * @return A lépések szerint indexelt tömb; -1, ha a lépéshez nem tartozik képkocka.
+   */
+  private static int[] getMiddleFrames(FrameGenerator fg) {
+    int numSteps = fg.getStepsAnimLength().length;
+    int[] middle = new int[numSteps];
+    for (int step = 0; step < numSteps; step++) {
+      int first = fg.getFirstFrameOfStep(step);
+      middle[step] = first < 0 ? -1 : (first + fg.getLastFrameOfStep(step)) / 2;
+    }
+    return middle;
+  }
+
+  private GeneratorBenchmarks() {
+  }
+}
@@ -0,0 +1,125 @@
+package hu.akusius.palenque.anigifmaker;
+
+import hu.akusius.palenque.anigifmaker.bench.Benchmark;
+import hu.akusius.palenque.anigifmaker.bench.BenchmarkRunner;
+import hu.akusius.palenque.anigifmaker.bench.CountingOutputStream;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.other.AnimatedGifEncoder;
+
+/**
+ * Mikrobenchmark az LZW-tömörítéshez: az eredeti {@code LZWEncoder} és az újrahasznosítható
+ * {@link LzwCompressor} összehasonlítása legenerált képkockákon.
+ * A két kimenet azonosságát is ellenőrzi.
+ * @author Bujdosó Ákos
+ */
+public final class LzwBenchmark {
+
+  private static final int WIDTH = 400;
+
+  private static final int HEIGHT = 300;
+
+  /**
+   * Az eredeti kódoló elérése.
+   */
+  private static final class Reference extends AnimatedGifEncoder {
+
+    static void encode(byte[] pixels, int width, int height, OutputStream os) throws IOException {
+      encodePixels(width, height, pixels, 8, os);
+    }
+  }
+
+  /**
+   * Csak az LZW-mérések futtatása (a további paraméterek a {@link BenchmarkRunner}-éi).
+   */
+  public static void main(String[] args) throws Exception {
+    String[] runnerArgs = new String[args.length + 2];
+    runnerArgs[0] = "--filter";
+    runnerArgs[1] = "^lzw\\.";
+    System.arraycopy(args, 0, runnerArgs, 2, args.length);
+    BenchmarkRunner.main(runnerArgs);
+  }
+
+  /**
+   * @return A mérések listája (egy művelet: minden tizedik képkocka tömörítése).
+   */
+  public static List<Benchmark> create() {
+    List<Benchmark> benchmarks = new ArrayList<>();
+
+    benchmarks.add(new FramesBenchmark("lzw.reference") {
+      @Override
+      public Object run() throws IOException {
+        CountingOutputStream cos = new CountingOutputStream();
+        for (byte[] pixels : frames) {
+          Reference.encode(pixels, WIDTH, HEIGHT, cos);
+        }
+        return cos.getCount();
+      }
+    });
+
+    benchmarks.add(new FramesBenchmark("lzw.compressor") {
+      private final LzwCompressor compressor = new LzwCompressor();
+
+      @Override
+      public void setUp() throws Exception {
+        super.setUp();
+        CountingOutputStream reference = new CountingOutputStream();
+        CountingOutputStream current = new CountingOutputStream();
+        for (byte[] pixels : frames) {
+          Reference.encode(pixels, WIDTH, HEIGHT, reference);
+          compressor.encode(pixels, pixels.length, 8, current);
+        }
+        if (reference.getCount() != current.getCount()) {
+          throw new AssertionError("Different output sizes!");
+        }
+      }
+
+      @Override
+      public Object run() throws IOException {
+        CountingOutputStream cos = new CountingOutputStream();
+        for (byte[] pixels : frames) {
+          compressor.encode(pixels, pixels.length, 8, cos);
+        }
+        return cos.getCount();
+      }
+    });
+
+    return benchmarks;
+  }
+
+  /**
+   * Legenerált képkockákon dolgozó mérés.
+   */
+  private abstract static class FramesBenchmark extends Benchmark {
+
+    protected final List<byte[]> frames = new ArrayList<>();
+
+    FramesBenchmark(String name) {
+      super(name);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+      AnimParamsBuilder apb = new AnimParamsBuilder();
+      apb.setWidth(WIDTH).setHeight(HEIGHT).setShowGrid(true);
+      FrameGenerator fg = new FrameGenerator(apb.createAnimParams());
+      frames.clear();
+      for (int frame = 0; frame < fg.getNumberOfFrames(); frame += 10) {
+        BufferedImage image = fg.generateFrame(frame);
+        frames.add(((DataBufferByte) image.getRaster().getDataBuffer()).getData());
+      }
+    }
+
+    @Override
+    public void tearDown() {
+      frames.clear();
+    }
+  }
+
+  private LzwBenchmark() {
+  }
+}
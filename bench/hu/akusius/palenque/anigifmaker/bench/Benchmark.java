@@ -0,0 +1,46 @@
+package hu.akusius.palenque.anigifmaker.bench;
+
+/**
+ * Egy mérendő művelet.
+ * A {@link #run()} eredményét a futtató elnyeli, így a JIT nem tudja kioptimalizálni a műveletet.
+ * @author Bujdosó Ákos
+ */
+public abstract class Benchmark {
+
+  private final String name;
+
+  /**
+   * @param name A mérés neve (pontokkal tagolt, pl. {@code render.step.07}).
+   */
+  protected Benchmark(String name) {
+    this.name = name;
+  }
+
+  /**
+   * @return A mérés neve.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * A mérés előkészítése (a bemelegítés előtt fut le).
+   * @throws Exception Hiba történt az előkészítés során.
+   */
+  public void setUp() throws Exception {
+  }
+
+  /**
+   * A mérendő művelet egyszeri végrehajtása.
+   * @return A művelet eredménye (tetszőleges objektum).
+   * @throws Exception Hiba történt a végrehajtás során.
+   */
+  public abstract Object run() throws Exception;
+
+  /**
+   * Takarítás a mérés után.
+   * @throws Exception Hiba történt a takarítás során.
+   */
+  public void tearDown() throws Exception {
+  }
+}
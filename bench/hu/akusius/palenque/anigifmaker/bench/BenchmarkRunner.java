@@ -0,0 +1,227 @@
+package hu.akusius.palenque.anigifmaker.bench;
+
+import hu.akusius.palenque.anigifmaker.GenerateParams;
+import hu.akusius.palenque.anigifmaker.GeneratorBenchmarks;
+import hu.akusius.palenque.anigifmaker.LzwBenchmark;
+import hu.akusius.palenque.anigifmaker.rendering.RenderingBenchmarks;
+import java.io.*;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * A benchmarkok futtatása, az eredmények kiírása és összevetése egy korábban elmentett alapvonallal.
+ * <p>
+ * Minden mérés egy bemelegítő szakasszal indul, utána adott számú, adott hosszúságú mérési kör
+ * következik; az eredmény a körönkénti átlagos művelet-idő átlaga és szórása.
+ * <p>
+ * Paraméterek:
+ * <ul>
+ * <li>{@code --filter <regex>}: csak a nevükben a kifejezést tartalmazó mérések futnak;</li>
+ * <li>{@code --warmup <ms>}: a bemelegítés hossza (alapértelmezésben 1000);</li>
+ * <li>{@code --iterations <n>}: a mérési körök száma (alapértelmezésben 5);</li>
+ * <li>{@code --time <ms>}: egy mérési kör minimális hossza (alapértelmezésben 500);</li>
+ * <li>{@code --output <file>}: az eredmények mentése (properties formátumban);</li>
+ * <li>{@code --baseline <file>}: az összevetés alapja (egy korábbi {@code --output} eredménye);</li>
+ * <li>{@code --threshold <percent>}: ekkora lassulás felett regresszióként jelez (alapértelmezésben 10);</li>
+ * <li>{@code --fail-on-regression}: regresszió esetén hibakóddal lép ki.</li>
+ * </ul>
+ * @author Bujdosó Ákos
+ */
+public final class BenchmarkRunner {
+
+  private static volatile int sink;
+
+  private Pattern filter;
+
+  private long warmupMs = 1000;
+
+  private int iterations = 5;
+
+  private long timeMs = 500;
+
+  private File output;
+
+  private File baseline;
+
+  private double threshold = 10.0;
+
+  private boolean failOnRegression;
+
+  public static void main(String[] args) throws Exception {
+    BenchmarkRunner runner = new BenchmarkRunner();
+    try {
+      runner.parseArgs(args);
+    } catch (IllegalArgumentException ex) {
+      System.err.println("Invalid arguments: " + ex.getMessage());
+      System.exit(2);
+    }
+    int regressions = runner.run(createBenchmarks());
+    if (regressions > 0 && runner.failOnRegression) {
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Az összes benchmark létrehozása.
+   */
+  private static List<Benchmark> createBenchmarks() throws IOException {
+    Map<String, GenerateParams> corpus = Corpus.load();
+    List<Benchmark> benchmarks = new ArrayList<>();
+    benchmarks.addAll(RenderingBenchmarks.create());
+    benchmarks.addAll(GeneratorBenchmarks.create(corpus));
+    benchmarks.addAll(LzwBenchmark.create());
+    return benchmarks;
+  }
+
+  private void parseArgs(String[] args) {
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+      if (arg.isEmpty()) {
+        continue;
+      }
+      if (arg.equals("--fail-on-regression")) {
+        failOnRegression = true;
+        continue;
+      }
+      if (i + 1 >= args.length) {
+        throw new IllegalArgumentException(arg);
+      }
+      String value = args[++i];
+      switch (arg) {
+        case "--filter":
+          filter = Pattern.compile(value);
+          break;
+        case "--warmup":
+          warmupMs = Long.parseLong(value);
+          break;
+        case "--iterations":
+          iterations = Integer.parseInt(value);
+          break;
+        case "--time":
+          timeMs = Long.parseLong(value);
+          break;
+        case "--output":
+          output = value.isEmpty() ? null : new File(value);
+          break;
+        case "--baseline":
+          baseline = value.isEmpty() ? null : new File(value);
+          break;
+        case "--threshold":
+          threshold = Double.parseDouble(value);
+          break;
+        default:
+          throw new IllegalArgumentException(arg);
+      }
+    }
+    if (warmupMs < 0 || iterations < 1 || timeMs < 1 || threshold < 0.0) {
+      throw new IllegalArgumentException("Invalid value.");
+    }
+  }
+
+  /**
+   * A mérések futtatása.
+   * @return A regressziók száma.
+   */
+  private int run(List<Benchmark> benchmarks) throws Exception {
+    Properties base = new Properties();
+    if (baseline != null) {
+      if (baseline.isFile()) {
+        try (InputStream is = new FileInputStream(baseline)) {
+          base.load(is);
+        }
+      } else {
+        System.out.printf("Baseline %s not found, no comparison.%n", baseline);
+      }
+    }
+
+    Properties results = new Properties();
+    int regressions = 0;
+    System.out.printf("%-36s %14s %8s %14s %9s%n", "Benchmark", "ns/op", "error", "baseline", "change");
+    for (Benchmark b : benchmarks) {
+      if (filter != null && !filter.matcher(b.getName()).find()) {
+        continue;
+      }
+
+      double[] r = measure(b);
+      results.setProperty(b.getName(), String.format(Locale.ROOT, "%.1f", r[0]));
+      results.setProperty(b.getName() + ".error", String.format(Locale.ROOT, "%.1f", r[1]));
+
+      String line = String.format("%-36s %14.1f %7.1f%%", b.getName(), r[0], r[0] > 0 ? r[1] / r[0] * 100.0 : 0.0);
+      String baseValue = base.getProperty(b.getName());
+      if (baseValue != null) {
+        double bv = Double.parseDouble(baseValue);
+        double change = (r[0] - bv) / bv * 100.0;
+        String mark = "";
+        if (change > threshold) {
+          mark = "  REGRESSION";
+          regressions++;
+        } else if (change < -threshold) {
+          mark = "  improved";
+        }
+        line += String.format(" %14.1f %+8.1f%%%s", bv, change, mark);
+      }
+      System.out.println(line);
+    }
+
+    if (output != null) {
+      File dir = output.getAbsoluteFile().getParentFile();
+      if (dir != null) {
+        dir.mkdirs();
+      }
+      try (OutputStream os = new FileOutputStream(output)) {
+        results.store(os, "PalenqueAniGifMaker benchmark results (ns/op)");
+      }
+      System.out.printf("Results saved to %s.%n", output);
+    }
+    if (!base.isEmpty()) {
+      System.out.printf("%d regression(s) above %.1f%%.%n", regressions, threshold);
+    }
+    return regressions;
+  }
+
+  /**
+   * Egy mérés lefuttatása.
+   * @return Az átlagos művelet-idő (ns) és a körök közötti szórás.
+   */
+  private double[] measure(Benchmark b) throws Exception {
+    b.setUp();
+    try {
+      long warmupEnd = System.nanoTime() + warmupMs * 1000000L;
+      do {
+        consume(b.run());
+      } while (System.nanoTime() < warmupEnd);
+
+      double[] nsPerOp = new double[iterations];
+      long timeNs = timeMs * 1000000L;
+      for (int i = 0; i < iterations; i++) {
+        long ops = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+          consume(b.run());
+          ops++;
+          elapsed = System.nanoTime() - start;
+        } while (elapsed < timeNs);
+        nsPerOp[i] = (double) elapsed / ops;
+      }
+
+      double mean = 0.0;
+      for (double v : nsPerOp) {
+        mean += v;
+      }
+      mean /= iterations;
+      double var = 0.0;
+      for (double v : nsPerOp) {
+        var += (v - mean) * (v - mean);
+      }
+      double error = iterations > 1 ? Math.sqrt(var / (iterations - 1)) : 0.0;
+      return new double[]{mean, error};
+    } finally {
+      b.tearDown();
+    }
+  }
+
+  private static void consume(Object result) {
+    sink += System.identityHashCode(result);
+  }
+}
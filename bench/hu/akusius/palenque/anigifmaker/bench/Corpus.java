@@ -0,0 +1,46 @@
+package hu.akusius.palenque.anigifmaker.bench;
+
+import hu.akusius.palenque.anigifmaker.GenerateParams;
+import java.io.*;
+import java.util.Map;
+import java.util.TreeMap;
+import org.json.JSONObject;
+
+/**
+ * A méréseknél használt, rögzített generálási paraméterek (a {@code corpus.json} erőforrásból).
+ * @author Bujdosó Ákos
+ */
+public final class Corpus {
+
+  private static final String RESOURCE = "corpus.json";
+
+  /**
+   * A korpusz beolvasása.
+   * @return A paraméterek név szerint rendezve.
+   * @throws IOException Hiba történt a beolvasás során.
+   */
+  public static Map<String, GenerateParams> load() throws IOException {
+    StringBuilder sb = new StringBuilder();
+    try (InputStream is = Corpus.class.getResourceAsStream(RESOURCE)) {
+      if (is == null) {
+        throw new FileNotFoundException(RESOURCE);
+      }
+      Reader reader = new InputStreamReader(is, "UTF-8");
+      char[] buf = new char[4096];
+      int len;
+      while ((len = reader.read(buf)) >= 0) {
+        sb.append(buf, 0, len);
+      }
+    }
+
+    JSONObject jo = new JSONObject(sb.toString());
+    Map<String, GenerateParams> corpus = new TreeMap<>();
+    for (String name : jo.keySet()) {
+      corpus.put(name, GenerateParams.deserialize(jo.getJSONObject(name)));
+    }
+    return corpus;
+  }
+
+  private Corpus() {
+  }
+}
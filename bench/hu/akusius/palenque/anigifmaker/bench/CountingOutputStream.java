@@ -0,0 +1,29 @@
+package hu.akusius.palenque.anigifmaker.bench;
+
+import java.io.OutputStream;
+
+/**
+ * A kiírt adatokat eldobó, csak a méretüket számoló stream.
+ * @author Bujdosó Ákos
+ */
+public final class CountingOutputStream extends OutputStream {
+
+  private long count;
+
+  /**
+   * @return Az eddig kiírt bájtok száma.
+   */
+  public long getCount() {
+    return count;
+  }
+
+  @Override
+  public void write(int b) {
+    count++;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) {
+    count += len;
+  }
+}
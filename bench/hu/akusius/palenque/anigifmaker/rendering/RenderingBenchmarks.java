@@ -0,0 +1,259 @@
+package hu.akusius.palenque.anigifmaker.rendering;
+
+import hu.akusius.palenque.anigifmaker.bench.Benchmark;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.util.ArrayList;
+import java.util.List;
+import org.other.Matrix;
+
+/**
+ * A kirajzolás alapműveleteinek mérései (négyzetháló-műveletek, transzformáció és projekció,
+ * négyzetháló kirajzolása).
+ * @author Bujdosó Ákos
+ */
+public final class RenderingBenchmarks {
+
+  private static final int WIDTH = 400;
+
+  private static final int HEIGHT = 300;
+
+  private static final double ZOOM = 1.3;
+
+  /**
+   * @return A mérések listája.
+   */
+  public static List<Benchmark> create() {
+    List<Benchmark> benchmarks = new ArrayList<>();
+
+    benchmarks.add(new Benchmark("grid.rotate") {
+      private final Grid grid = createGrid();
+
+      @Override
+      public Object run() {
+        Grid g = grid.cloneGrid();
+        g.rotate(3, true);
+        return g;
+      }
+    });
+
+    benchmarks.add(new Benchmark("grid.octuple") {
+      private final Grid grid = createGrid();
+
+      @Override
+      public Object run() {
+        Grid g = grid.cloneGrid();
+        g.octuple();
+        return g;
+      }
+    });
+
+    benchmarks.add(new Benchmark("transformer.project") {
+      private final Matrix matrix = createMatrix();
+
+      private final RenderContext ctx = createContext();
+
+      @Override
+      public Object run() {
+        int visible = 0;
+        for (int x = -25; x <= 25; x++) {
+          for (int y = -25; y <= 25; y++) {
+            if (Transformer.project(x, y, matrix, ZOOM, ctx) != null) {
+              visible++;
+            }
+          }
+        }
+        return visible;
+      }
+    });
+
+    benchmarks.add(new Benchmark("transformer.projectLine") {
+      private final RenderContext ctx = createContext();
+
+      private double[][][] lines;
+
+      @Override
+      public void setUp() {
+        Matrix matrix = createMatrix();
+        lines = new double[51 * 2][][];
+        for (int i = 0; i <= 50; i++) {
+          int c = i - 25;
+          lines[i * 2] = Transformer.transform(toLine(Transformer.getPoints(c, -25, c, 25)), matrix);
+          lines[i * 2 + 1] = Transformer.transform(toLine(Transformer.getPoints(-25, c, 25, c)), matrix);
+        }
+      }
+
+      @Override
+      public Object run() {
+        int visible = 0;
+        for (double[][] line : lines) {
+          if (Transformer.projectLine(line, ZOOM, ctx) != null) {
+            visible++;
+          }
+        }
+        return visible;
+      }
+    });
+
+    benchmarks.add(new Benchmark("transformer.projectLines") {
+      private final RenderContext ctx = createContext();
+
+      private final int[] dest = new int[51 * 2 * 4];
+
+      private double[] xs;
+
+      private double[] ys;
+
+      private double[] zs;
+
+      @Override
+      public void setUp() {
+        Matrix matrix = createMatrix();
+        int n = 51 * 2 * 2;
+        xs = new double[n];
+        ys = new double[n];
+        zs = new double[n];
+        for (int i = 0; i <= 50; i++) {
+          int c = i - 25;
+          putLine(Transformer.getPoints(c, -25, c, 25), i * 4);
+          putLine(Transformer.getPoints(-25, c, 25, c), i * 4 + 2);
+        }
+        Transformer.transform(xs, ys, zs, n, matrix);
+      }
+
+      private void putLine(double[][] ps, int i) {
+        xs[i] = ps[0][0];
+        ys[i] = ps[0][1];
+        xs[i + 1] = ps[2][0];
+        ys[i + 1] = ps[2][1];
+      }
+
+      @Override
+      public Object run() {
+        return Transformer.projectLines(xs, ys, zs, 51 * 2, ZOOM, ctx, dest);
+      }
+    });
+
+    benchmarks.add(new Benchmark("gridGeometry.compile") {
+      private final Grid grid = createGrid();
+
+      @Override
+      public Object run() {
+        return GridGeometry.compile(grid);
+      }
+    });
+
+    benchmarks.add(new Benchmark("gridRenderer.render") {
+      private final Grid grid = createGrid().freeze();
+
+      private final Matrix matrix = createMatrix();
+
+      private final RenderContext ctx = createContext();
+
+      private BufferedImage image;
+
+      private Canvas canvas;
+
+      @Override
+      public void setUp() {
+        image = createImage();
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_DISABLE);
+        canvas = new Java2DCanvas(g);
+      }
+
+      @Override
+      public Object run() {
+        return renderGrid(canvas, grid, matrix, ctx, image);
+      }
+
+      @Override
+      public void tearDown() {
+        canvas.dispose();
+      }
+    });
+
+    benchmarks.add(new Benchmark("gridRenderer.render.raster") {
+      private final Grid grid = createGrid().freeze();
+
+      private final Matrix matrix = createMatrix();
+
+      private final RenderContext ctx = createContext();
+
+      private BufferedImage image;
+
+      private Canvas canvas;
+
+      @Override
+      public void setUp() {
+        image = createImage();
+        canvas = new RasterCanvas(((DataBufferByte) image.getRaster().getDataBuffer()).getData(), WIDTH, HEIGHT);
+      }
+
+      @Override
+      public Object run() {
+        return renderGrid(canvas, grid, matrix, ctx, image);
+      }
+    });
+
+    return benchmarks;
+  }
+
+  private static Object renderGrid(Canvas canvas, Grid grid, Matrix matrix, RenderContext ctx, BufferedImage image) {
+    canvas.setColor(Color.WHITE);
+    canvas.fillRect(0, 0, WIDTH, HEIGHT);
+    canvas.setColor(Color.BLACK);
+    GridRenderer.render(grid, matrix, canvas, ZOOM, ctx);
+    return image;
+  }
+
+  /**
+   * A 0–6. lépés négyzethálója.
+   */
+  private static Grid createGrid() {
+    Grid grid = new Grid(51);
+    grid.addTriplets(new int[]{-5, 6, -5, -4, 4, -4, -10, 1, 9, 1, -16, 17, 6, 20, 20, 20, 20, 5, -16, -23});
+    grid.addItem(Grid.ITEM_SUN, -11, -20);
+    grid.addItem(Grid.ITEM_STAR, 20, -2);
+    return grid;
+  }
+
+  private static Matrix createMatrix() {
+    Matrix cam = new Matrix();
+    cam.identity();
+    Matrix tmp = new Matrix();
+    tmp.identity();
+    tmp.rotateY(0.3);
+    cam.postMultiply(tmp);
+    tmp.identity();
+    tmp.rotateX(-0.2);
+    cam.postMultiply(tmp);
+    return cam;
+  }
+
+  private static RenderContext createContext() {
+    return new RenderContext(new Dimension(WIDTH, HEIGHT), ZOOM);
+  }
+
+  private static double[][] toLine(double[][] ps) {
+    return new double[][]{{ps[0][0], ps[0][1], 0.0}, {ps[2][0], ps[2][1], 0.0}};
+  }
+
+  private static BufferedImage createImage() {
+    byte[] gray = new byte[256];
+    for (int i = 0; i < gray.length; i++) {
+      gray[i] = (byte) i;
+    }
+    IndexColorModel cm = new IndexColorModel(8, gray.length, gray, gray, gray);
+    return new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_BYTE_INDEXED, cm);
+  }
+
+  private RenderingBenchmarks() {
+  }
+}
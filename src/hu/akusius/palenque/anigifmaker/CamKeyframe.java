@@ -0,0 +1,120 @@
+package hu.akusius.palenque.anigifmaker;
+
+/**
+ * A kamerapálya egy kulcspontja: a kamera beállításai a program egy adott pontján.
+ * A kulcspontok között a beállítások (négyzetes gyorsítással/lassítással) interpolálódnak.
+ * @author Bujdosó Ákos
+ */
+public final class CamKeyframe {
+
+  private final int step;
+
+  private final double percent;
+
+  private final double translateX;
+
+  private final double translateY;
+
+  private final double theta;
+
+  private final double phi;
+
+  private final double zoom;
+
+  /**
+   * Alaphelyzetű kamerájú kulcspont létrehozása (eltolás és forgatás nélkül, 1-es nagyítással).
+   * @param step A lépés.
+   * @param percent A lépésen belüli pozíció százalékban.
+   */
+  public CamKeyframe(int step, double percent) {
+    this(step, percent, 0.0, 0.0, 0.0, 0.0, 1.0);
+  }
+
+  /**
+   * Új kulcspont létrehozása.
+   * @param step A lépés.
+   * @param percent A lépésen belüli pozíció százalékban.
+   * @param translateX Az X irányú eltolás.
+   * @param translateY Az Y irányú eltolás.
+   * @param theta Az Y tengely körüli forgatás.
+   * @param phi Az X tengely körüli forgatás.
+   * @param zoom A nagyítás.
+   */
+  public CamKeyframe(int step, double percent, double translateX, double translateY, double theta, double phi, double zoom) {
+    if (step < 0 || !(percent >= 0.0 && percent <= 100.0) || !(zoom > 0.0)) {
+      throw new IllegalArgumentException();
+    }
+    this.step = step;
+    this.percent = percent;
+    this.translateX = translateX;
+    this.translateY = translateY;
+    this.theta = theta;
+    this.phi = phi;
+    this.zoom = zoom;
+  }
+
+  /**
+   * @return A lépés.
+   */
+  public int getStep() {
+    return step;
+  }
+
+  /**
+   * @return A lépésen belüli pozíció százalékban.
+   */
+  public double getPercent() {
+    return percent;
+  }
+
+  /**
+   * @return Az X irányú eltolás.
+   */
+  public double getTranslateX() {
+    return translateX;
+  }
+
+  /**
+   * @return Az Y irányú eltolás.
+   */
+  public double getTranslateY() {
+    return translateY;
+  }
+
+  /**
+   * @return Az Y tengely körüli forgatás.
+   */
+  public double getTheta() {
+    return theta;
+  }
+
+  /**
+   * @return Az X tengely körüli forgatás.
+   */
+  public double getPhi() {
+    return phi;
+  }
+
+  /**
+   * @return A nagyítás.
+   */
+  public double getZoom() {
+    return zoom;
+  }
+
+  /**
+   * @param step A lépés.
+   * @param percent A lépésen belüli pozíció százalékban.
+   * @return Negatív, ha a kulcspont a megadott pozíció előtt van; 0, ha azon; pozitív, ha utána.
+   */
+  int compareTo(int step, double percent) {
+    int c = Integer.compare(this.step, step);
+    return c != 0 ? c : Double.compare(this.percent, percent);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("CamKeyframe[%d/%s: tx=%s, ty=%s, th=%s, ph=%s, zo=%s]",
+            step, percent, translateX, translateY, theta, phi, zoom);
+  }
+}
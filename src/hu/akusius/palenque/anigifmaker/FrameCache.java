@@ -0,0 +1,283 @@
+package hu.akusius.palenque.anigifmaker;
+
+import hu.akusius.palenque.anigifmaker.rendering.RenderBackend;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A legenerált képkockák gyorsítótára, amely a generálások (és a {@link FrameGenerator} példányok) között is megosztható.
+ * <p>
+ * A kulcs a kirajzolás teljes állapota (méret, lépés, százalék, átlátszóság, kamera, négyzetrács),
+ * így pl. a csak a kitartásban, az áttűnésben, az FPS-ben vagy a GIF-paraméterekben eltérő generálások,
+ * illetve a kitartott képkockák is egymás eredményét használhatják.
+ * A képkockák színindexei a Java kupacon kívül (direkt {@link ByteBuffer}-ekben) tárolódnak;
+ * a megadott bájtkeret túllépésekor a legrégebben használt kockák törlődnek.
+ * A példány szálbiztos.
+ * @author Bujdosó Ákos
+ */
+public final class FrameCache {
+
+  /**
+   * A megosztott gyorsítótár alapértelmezett mérete (MB), a {@code palenque.frameCacheMB}
+   * rendszertulajdonsággal felülírható (0: nincs gyorsítótár).
+   */
+  private static final long DEFAULT_BUDGET_MB = 64;
+
+  private static final FrameCache shared = new FrameCache(Long.getLong("palenque.frameCacheMB", DEFAULT_BUDGET_MB) * 1024L * 1024L);
+
+  private final long budget;
+
+  /**
+   * A tárolt kockák, a legrégebben használttól a legutóbb használtig.
+   */
+  private final LinkedHashMap<Key, ByteBuffer> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+  private long usedBytes;
+
+  private long hits;
+
+  private long misses;
+
+  private long evictions;
+
+  /**
+   * @return A {@link FrameGenerator} példányok által alapértelmezésben használt, megosztott gyorsítótár.
+   */
+  public static FrameCache getShared() {
+    return shared;
+  }
+
+  /**
+   * Új gyorsítótár létrehozása.
+   * @param budget A tárolt képkockák maximális összmérete bájtban (0: nem tárol semmit).
+   */
+  public FrameCache(long budget) {
+    if (budget < 0) {
+      throw new IllegalArgumentException();
+    }
+    this.budget = budget;
+  }
+
+  /**
+   * Egy képkocka kikeresése.
+   * @param key A képkocka kulcsa.
+   * @param dest A képkocka színindexeinek célja (a mérete a kulcs szerinti).
+   * @return {@code true}, ha a képkocka megvolt és be lett másolva.
+   */
+  boolean get(Key key, byte[] dest) {
+    ByteBuffer buffer;
+    synchronized (this) {
+      buffer = entries.get(key);
+      if (buffer == null) {
+        misses++;
+        return false;
+      }
+      hits++;
+      // A tartalom nem változik, a kiolvasás mehet a zároláson kívül is
+      buffer = buffer.duplicate();
+    }
+    buffer.rewind();
+    buffer.get(dest, 0, dest.length);
+    return true;
+  }
+
+  /**
+   * Egy képkocka eltárolása.
+   * @param key A képkocka kulcsa.
+   * @param pixels A képkocka színindexei.
+   */
+  void put(Key key, byte[] pixels) {
+    int size = pixels.length;
+    if (size > budget) {
+      return;
+    }
+    synchronized (this) {
+      if (entries.containsKey(key)) {
+        return;
+      }
+    }
+
+    ByteBuffer buffer;
+    try {
+      buffer = ByteBuffer.allocateDirect(size);
+    } catch (OutOfMemoryError ex) {
+      // Elfogyott a direkt memória: ezt a kockát nem tároljuk
+      return;
+    }
+    buffer.put(pixels);
+
+    synchronized (this) {
+      if (entries.containsKey(key)) {
+        return;
+      }
+      entries.put(key, buffer);
+      usedBytes += size;
+      Iterator<ByteBuffer> it = entries.values().iterator();
+      while (usedBytes > budget && it.hasNext()) {
+        ByteBuffer evicted = it.next();
+        usedBytes -= evicted.capacity();
+        evictions++;
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * Az összes tárolt képkocka törlése (a statisztikák megmaradnak).
+   */
+  public synchronized void clear() {
+    entries.clear();
+    usedBytes = 0;
+  }
+
+  /**
+   * @return A tárolt képkockák maximális összmérete bájtban.
+   */
+  public long getBudget() {
+    return budget;
+  }
+
+  /**
+   * @return A tárolt képkockák összmérete bájtban.
+   */
+  public synchronized long getUsedBytes() {
+    return usedBytes;
+  }
+
+  /**
+   * @return A tárolt képkockák száma.
+   */
+  public synchronized int getEntryCount() {
+    return entries.size();
+  }
+
+  /**
+   * @return A találatok száma.
+   */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * @return A hiányok (kirajzolt kockák) száma.
+   */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /**
+   * @return A helyhiány miatt törölt kockák száma.
+   */
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("FrameCache[%d frames, %d/%d bytes, %d hits, %d misses, %d evictions]",
+            entries.size(), usedBytes, budget, hits, misses, evictions);
+  }
+
+  /**
+   * Egy képkocka kirajzolásának teljes állapota.
+   */
+  static final class Key {
+
+    private final int width;
+
+    private final int height;
+
+    private final int stepNum;
+
+    private final double percent;
+
+    private final double opacity;
+
+    private final boolean showGrid;
+
+    private final double baseZoom;
+
+    private final double theta;
+
+    private final double phi;
+
+    private final double translateX;
+
+    private final double translateY;
+
+    private final double zoom;
+
+    private final RenderBackend backend;
+
+    private final boolean gray;
+
+    private final int hash;
+
+    Key(int width, int height, int stepNum, double percent, double opacity, boolean showGrid, double baseZoom,
+            double theta, double phi, double translateX, double translateY, double zoom, RenderBackend backend,
+            boolean gray) {
+      this.width = width;
+      this.height = height;
+      this.stepNum = stepNum;
+      this.percent = percent;
+      this.opacity = opacity;
+      this.showGrid = showGrid;
+      this.baseZoom = baseZoom;
+      this.theta = theta;
+      this.phi = phi;
+      this.translateX = translateX;
+      this.translateY = translateY;
+      this.zoom = zoom;
+      this.backend = backend;
+      this.gray = gray;
+
+      int h = 7;
+      h = 31 * h + width;
+      h = 31 * h + height;
+      h = 31 * h + stepNum;
+      h = 31 * h + hashDouble(percent);
+      h = 31 * h + hashDouble(opacity);
+      h = 31 * h + (showGrid ? 1 : 0);
+      h = 31 * h + hashDouble(baseZoom);
+      h = 31 * h + hashDouble(theta);
+      h = 31 * h + hashDouble(phi);
+      h = 31 * h + hashDouble(translateX);
+      h = 31 * h + hashDouble(translateY);
+      h = 31 * h + hashDouble(zoom);
+      h = 31 * h + backend.ordinal();
+      h = 31 * h + (gray ? 1 : 0);
+      this.hash = h;
+    }
+
+    private static int hashDouble(double d) {
+      long bits = Double.doubleToLongBits(d);
+      return (int) (bits ^ (bits >>> 32));
+    }
+
+    private static boolean same(double d1, double d2) {
+      return Double.doubleToLongBits(d1) == Double.doubleToLongBits(d2);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key o = (Key) obj;
+      return hash == o.hash && width == o.width && height == o.height && stepNum == o.stepNum
+              && same(percent, o.percent) && same(opacity, o.opacity) && showGrid == o.showGrid
+              && same(baseZoom, o.baseZoom) && same(theta, o.theta) && same(phi, o.phi)
+              && same(translateX, o.translateX) && same(translateY, o.translateY) && same(zoom, o.zoom)
+              && backend == o.backend && gray == o.gray;
+    }
+  }
+}
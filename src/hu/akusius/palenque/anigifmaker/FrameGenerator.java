@@ -1,13 +1,21 @@
 package hu.akusius.palenque.anigifmaker;
 
+import hu.akusius.palenque.anigifmaker.rendering.Canvas;
 import hu.akusius.palenque.anigifmaker.rendering.FrameRenderer;
 import hu.akusius.palenque.anigifmaker.rendering.GridSystemRenderer;
-import hu.akusius.palenque.anigifmaker.rendering.Transformer;
+import hu.akusius.palenque.anigifmaker.rendering.Java2DCanvas;
+import hu.akusius.palenque.anigifmaker.rendering.RasterCanvas;
+import hu.akusius.palenque.anigifmaker.rendering.RenderBackend;
+import hu.akusius.palenque.anigifmaker.rendering.RenderContext;
+import hu.akusius.palenque.anigifmaker.util.CancelUtils;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
 import java.awt.image.IndexColorModel;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import org.other.Matrix;
 
 /**
@@ -74,16 +82,93 @@ public class FrameGenerator {
 
   private final int fps;
 
-  private final Map<Integer, FrameInfo> frameInfoCache;
+  /*
+   * Az idővonal: a képkockák adatai kockaszám szerint indexelt tömbökben (a konstruktorban kiszámolva,
+   * utána csak olvasott, így szálbiztos).
+   */
+  private final int[] frameStepNums;
+
+  private final double[] framePercents;
+
+  private final double[] frameOpacities;
+
+  private final boolean[] framesFaded;
+
+  private final boolean[] framesHeld;
+
+  /**
+   * Az egyes lépések első (nem kitartott) képkockája; -1, ha a lépés nincs a programban.
+   */
+  private final int[] stepFirstFrames;
+
+  /**
+   * Az egyes lépések utolsó (nem kitartott) képkockája; -1, ha a lépés nincs a programban.
+   */
+  private final int[] stepLastFrames;
+
+  /**
+   * A kamera kulcspontjai ({@code null}: rögzített kamera).
+   */
+  private final CamKeyframe[] camKeyframes;
+
+  /**
+   * A kamera beállításai és mátrixai.
+   */
+  private final CameraTrack camera;
+
+  /**
+   * A legenerált képkockák gyorsítótára ({@code null}: nincs).
+   */
+  private volatile FrameCache frameCache = FrameCache.getShared();
 
-  private final AutoCam autoCam;
+  /**
+   * Az alapértelmezett kirajzolási mód (a {@code palenque.renderBackend} rendszertulajdonsággal állítható).
+   */
+  private static final RenderBackend DEFAULT_BACKEND
+          = RenderBackend.parse(System.getProperty("palenque.renderBackend"), RenderBackend.JAVA2D);
+
+  /**
+   * A kirajzolás módja.
+   */
+  private volatile RenderBackend renderBackend = DEFAULT_BACKEND;
+
+  /**
+   * Az alapértelmezett képtípus (a {@code palenque.grayFrames} rendszertulajdonsággal állítható).
+   */
+  private static final boolean DEFAULT_GRAY_FRAMES = Boolean.getBoolean("palenque.grayFrames");
+
+  /**
+   * {@code true}, ha a képkockák {@link BufferedImage#TYPE_BYTE_GRAY} típusúak.
+   */
+  private volatile boolean grayFrames = DEFAULT_GRAY_FRAMES;
+
+  /**
+   * A legfeljebb ennyi szabad kirajzolási kontextust tartunk meg újrafelhasználásra.
+   */
+  private static final int MAX_IDLE_CONTEXTS = 16;
+
+  /**
+   * A szabad (éppen nem használt) kirajzolási kontextusok.
+   * Minden generálás egy saját kontextust kap, így a generálások párhuzamosan is futhatnak.
+   */
+  private final Queue<RenderContext> idleContexts = new ConcurrentLinkedQueue<>();
 
   /**
    * Egy új példány létrehozása a megadott animációs paraméterekkel és az alapértelmezett lépéshosszokkal.
    * @param ap Az animáció összeállításához szükséges paraméterek.
    */
   public FrameGenerator(AnimParams ap) {
-    this(ap, STEPS_ANIM_LENGTH);
+    this(ap, STEPS_ANIM_LENGTH, null);
+  }
+
+  /**
+   * Egy új példány létrehozása a megadott animációs paraméterekkel és saját kamerapályával.
+   * A kamera a paraméterek kamerabeállításai (és az automatikus kamera) helyett a megadott kulcspontok szerint mozog.
+   * @param ap Az animáció összeállításához szükséges paraméterek.
+   * @param camKeyframes A kamerapálya kulcspontjai (az első a 0. lépés elején kell legyen).
+   */
+  public FrameGenerator(AnimParams ap, List<CamKeyframe> camKeyframes) {
+    this(ap, STEPS_ANIM_LENGTH, checkKeyframes(camKeyframes));
   }
 
   /**
@@ -92,6 +177,10 @@ public class FrameGenerator {
    * @param stepsAnimLength Az egyes lépések hosszai animációs időben (speed=10, FPS=40).
    */
   FrameGenerator(AnimParams ap, int[] stepsAnimLength) {
+    this(ap, stepsAnimLength, null);
+  }
+
+  private FrameGenerator(AnimParams ap, int[] stepsAnimLength, CamKeyframe[] camKeyframes) {
     if (ap == null || stepsAnimLength == null || stepsAnimLength.length != FrameRenderer.MAX_STEP + 1) {
       throw new IllegalArgumentException();
     }
@@ -125,9 +214,21 @@ public class FrameGenerator {
     assert 0 <= firstNonHeldFrame && firstNonHeldFrame < numberOfFrames;
     assert 0 <= lastNonHeldFrame && lastNonHeldFrame < numberOfFrames;
 
-    this.frameInfoCache = new HashMap<>(numberOfFrames);
-
-    this.autoCam = ap.isAutoCam() ? new AutoCam() : null;
+    this.frameStepNums = new int[numberOfFrames];
+    this.framePercents = new double[numberOfFrames];
+    this.frameOpacities = new double[numberOfFrames];
+    this.framesFaded = new boolean[numberOfFrames];
+    this.framesHeld = new boolean[numberOfFrames];
+    this.stepFirstFrames = new int[stepsAnimLength.length];
+    this.stepLastFrames = new int[stepsAnimLength.length];
+    buildTimeline();
+
+    if (camKeyframes == null && ap.isAutoCam()) {
+      camKeyframes = AUTO_CAM_KEYFRAMES;
+    }
+    this.camKeyframes = camKeyframes;
+    this.camera = camKeyframes != null ? new CameraTrack(numberOfFrames) : new CameraTrack(1);
+    buildCameraTrack();
   }
 
   /**
@@ -137,6 +238,70 @@ public class FrameGenerator {
     return ap;
   }
 
+  /**
+   * @return A legenerált képkockák gyorsítótára ({@code null}, ha nincs).
+   */
+  public FrameCache getFrameCache() {
+    return frameCache;
+  }
+
+  /**
+   * A legenerált képkockák gyorsítótárának beállítása.
+   * Alapértelmezésben a {@link FrameCache#getShared() megosztott} gyorsítótár van használatban.
+   * @param frameCache Az új gyorsítótár ({@code null}: a képkockák mindig kirajzolódnak).
+   */
+  public void setFrameCache(FrameCache frameCache) {
+    this.frameCache = frameCache;
+  }
+
+  /**
+   * @return A kirajzolás módja.
+   */
+  public RenderBackend getRenderBackend() {
+    return renderBackend;
+  }
+
+  /**
+   * A kirajzolás módjának beállítása.
+   * Alapértelmezésben a {@code palenque.renderBackend} rendszertulajdonságban megadott mód,
+   * ennek hiányában a {@link RenderBackend#JAVA2D}.
+   * @param renderBackend A kirajzolás módja.
+   */
+  public void setRenderBackend(RenderBackend renderBackend) {
+    if (renderBackend == null) {
+      throw new IllegalArgumentException();
+    }
+    this.renderBackend = renderBackend;
+  }
+
+  /**
+   * @return Az új példányok kirajzolási módja (a {@code palenque.renderBackend} rendszertulajdonság szerint).
+   */
+  public static RenderBackend getDefaultRenderBackend() {
+    return DEFAULT_BACKEND;
+  }
+
+  /**
+   * @return {@code true}, ha a képkockák {@link BufferedImage#TYPE_BYTE_GRAY} típusúak.
+   */
+  public boolean isGrayFrames() {
+    return grayFrames;
+  }
+
+  /**
+   * A legenerált képkockák típusának beállítása.
+   * A szürkeárnyalatos kép szürke szintjei megegyeznek az indexelt kép színindexeivel (a paletta az identitás),
+   * így a képpontok konverzió nélkül kerülhetnek a {@link PalenqueGifEncoder}-be, a Java2D pedig
+   * szürkeárnyalatos képre gyorsabban rajzol.
+   * Alapértelmezésben a {@code palenque.grayFrames} rendszertulajdonság határozza meg,
+   * ennek hiányában a képkockák indexeltek.
+   * @param grayFrames {@code true}: {@link BufferedImage#TYPE_BYTE_GRAY},
+   * {@code false}: {@link BufferedImage#TYPE_BYTE_INDEXED} típusú képkockák.
+   */
+  public void setGrayFrames(boolean grayFrames) {
+    this.grayFrames = grayFrames;
+  }
+
   /**
    * @return Az egyes lépések hosszai animációs időben.
    */
@@ -186,6 +351,55 @@ public class FrameGenerator {
     return lastNonHeldFrame;
   }
 
+  /**
+   * Az idővonal kiszámítása.
+   */
+  private void buildTimeline() {
+    Arrays.fill(stepFirstFrames, -1);
+    Arrays.fill(stepLastFrames, -1);
+
+    for (int frame = 0; frame < numberOfFrames; frame++) {
+      double animTime = toAnimTime((double) frame);
+      ProgramEntry entry = program.getEntryForAnimTime(animTime);
+
+      boolean held = entry.holdType != null;
+      double percent = !held ? getPercent(entry.start, entry.end, animTime) : entry.holdType == HoldType.HoldIn ? 0.0 : 100.0;
+      boolean faded = false;
+      double opacity = 1.0;
+      if (frame < firstNonFadedFrame) {
+        faded = true;
+        opacity = getPercent(0, firstNonFadedFrame - 1, frame) / 100.0 * FADE_RATE;
+      } else if (frame > lastNonFadedFrame) {
+        faded = true;
+        opacity = 1 - getPercent(lastNonFadedFrame + 1, numberOfFrames - 1, frame) / 100.0 * FADE_RATE;
+      }
+
+      if (opacity < 0.0) {
+        opacity = 0.0;
+      } else if (opacity > 1.0) {
+        opacity = 1.0;
+      }
+
+      assert percent >= 0.0 && percent <= 100.0;
+      assert opacity >= 0.0 && opacity <= 1.0;
+      assert frame >= firstNonHeldFrame || entry.holdType == HoldType.HoldIn;
+      assert frame <= lastNonHeldFrame || entry.holdType == HoldType.HoldOut;
+
+      frameStepNums[frame] = entry.stepNum;
+      framePercents[frame] = percent;
+      frameOpacities[frame] = opacity;
+      framesFaded[frame] = faded;
+      framesHeld[frame] = held;
+
+      if (!held) {
+        if (stepFirstFrames[entry.stepNum] < 0) {
+          stepFirstFrames[entry.stepNum] = frame;
+        }
+        stepLastFrames[entry.stepNum] = frame;
+      }
+    }
+  }
+
   /**
    * A megadott képkockához a {@link FrameInfo} visszaadása.
    * @param frame A képkocka.
@@ -196,42 +410,30 @@ public class FrameGenerator {
       throw new IllegalArgumentException();
     }
 
-    if (frameInfoCache.containsKey(frame)) {
-      return frameInfoCache.get(frame);
-    }
-
-    double animTime = toAnimTime((double) frame);
-    ProgramEntry entry = program.getEntryForAnimTime(animTime);
+    return new FrameInfo(frame, (double) frame / fps, frameStepNums[frame], framePercents[frame],
+            toAnimTime((double) frame), frameOpacities[frame], framesFaded[frame], framesHeld[frame]);
+  }
 
-    double seconds = (double) frame / fps;
-    int stepNum = entry.stepNum;
-    boolean held = entry.holdType != null;
-    double percent = !held ? getPercent(entry.start, entry.end, animTime) : entry.holdType == HoldType.HoldIn ? 0.0 : 100.0;
-    boolean faded = false;
-    double opacity = 1.0;
-    if (frame < firstNonFadedFrame) {
-      faded = true;
-      opacity = getPercent(0, firstNonFadedFrame - 1, frame) / 100.0 * FADE_RATE;
-    } else if (frame > lastNonFadedFrame) {
-      faded = true;
-      opacity = 1 - getPercent(lastNonFadedFrame + 1, numberOfFrames - 1, frame) / 100.0 * FADE_RATE;
+  /**
+   * @param step A lépés.
+   * @return A lépés első (nem kitartott) képkockája; -1, ha a lépéshez nem tartozik képkocka.
+   */
+  public int getFirstFrameOfStep(int step) {
+    if (step < 0 || step >= stepFirstFrames.length) {
+      throw new IllegalArgumentException();
     }
+    return stepFirstFrames[step];
+  }
 
-    if (opacity < 0.0) {
-      opacity = 0.0;
-    } else if (opacity > 1.0) {
-      opacity = 1.0;
+  /**
+   * @param step A lépés.
+   * @return A lépés utolsó (nem kitartott) képkockája; -1, ha a lépéshez nem tartozik képkocka.
+   */
+  public int getLastFrameOfStep(int step) {
+    if (step < 0 || step >= stepLastFrames.length) {
+      throw new IllegalArgumentException();
     }
-
-    assert percent >= 0.0 && percent <= 100.0;
-    assert opacity >= 0.0 && opacity <= 1.0;
-    assert frame >= firstNonHeldFrame || entry.holdType == HoldType.HoldIn;
-    assert frame <= lastNonHeldFrame || entry.holdType == HoldType.HoldOut;
-
-    FrameInfo fi = new FrameInfo(frame, seconds, stepNum, percent, animTime, opacity, faded, held);
-    frameInfoCache.put(frame, fi);
-
-    return fi;
+    return stepLastFrames[step];
   }
 
   /**
@@ -245,62 +447,111 @@ public class FrameGenerator {
 
   /**
    * A megadott képkocka legenerálása a megadott méretben.
+   * A metódus szálbiztos, több képkocka (akár eltérő méretben is) generálható párhuzamosan.
+   * Ha a hívó szálat megszakítják, a kirajzolás {@link java.util.concurrent.CancellationException} kivétellel leáll.
    * @param frame A legenerálandó képkocka.
    * @param width A képkocka szélessége.
    * @param height A képkocka magassága.
-   * @return A legenerált képkocka.
+   * @return A legenerált (a {@link #isGrayFrames()} szerint indexelt vagy szürkeárnyalatos) képkocka.
    */
   public BufferedImage generateFrame(int frame, int width, int height) {
-    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, colorModel);
-    Dimension d = new Dimension(image.getWidth(), image.getHeight());
+    if (frame < 0 || frame >= numberOfFrames) {
+      throw new IllegalArgumentException();
+    }
+    boolean gray = grayFrames;
+    BufferedImage image = gray
+            ? new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY)
+            : new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, colorModel);
+    double baseZoom = camKeyframes != null ? 1.0 : ap.getZoom();
+    int ci = camKeyframes != null ? frame : 0;
+    RenderBackend backend = renderBackend;
+
+    FrameCache cache = frameCache;
+    FrameCache.Key key = null;
+    byte[] pixels = null;
+    if (cache != null) {
+      key = new FrameCache.Key(width, height, frameStepNums[frame], framePercents[frame], frameOpacities[frame],
+              ap.isShowGrid(), baseZoom, camera.theta[ci], camera.phi[ci], camera.translateX[ci], camera.translateY[ci],
+              camera.zoom[ci], backend, gray);
+      pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+      if (cache.get(key, pixels)) {
+        return image;
+      }
+    }
+
+    Canvas canvas;
+    if (backend == RenderBackend.RASTER) {
+      // A paletta az identitás, így a szürke szintek közvetlenül a pixeltömbbe írhatók
+      canvas = new RasterCanvas(((DataBufferByte) image.getRaster().getDataBuffer()).getData(), width, height);
+    } else {
+      canvas = new Java2DCanvas(createGraphics(image));
+    }
+
+    RenderContext ctx = acquireContext(width, height, baseZoom);
+    try {
+      drawFrame(frame, canvas, ctx, camera.getMatrix(ci), camera.zoom[ci]);
+    } finally {
+      releaseContext(ctx);
+    }
+    canvas.dispose();
+
+    if (FOOTER_TEXT != null) {
+      Graphics2D g = createGraphics(image);
+      double opacity = frameOpacities[frame];
+      if (opacity < 1.0) {
+        g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, (float) opacity));
+      }
+      drawFooterText(g, new Dimension(width, height), FOOTER_TEXT);
+      g.dispose();
+    }
+
+    if (cache != null) {
+      cache.put(key, pixels);
+    }
+
+    return image;
+  }
+
+  private static Graphics2D createGraphics(BufferedImage image) {
     Graphics2D g = image.createGraphics();
     g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
     g.setRenderingHint(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_DISABLE);
+    return g;
+  }
 
-    Transformer.adjustFL(d, autoCam == null ? ap.getZoom() : 1.0);
-    drawFrame(frame, g, d);
+  private RenderContext acquireContext(int width, int height, double baseZoom) {
+    for (RenderContext ctx : idleContexts) {
+      if (ctx.matches(width, height, baseZoom) && idleContexts.remove(ctx)) {
+        return ctx;
+      }
+    }
+    return new RenderContext(new Dimension(width, height), baseZoom);
+  }
 
-    return image;
+  private void releaseContext(RenderContext ctx) {
+    if (idleContexts.size() < MAX_IDLE_CONTEXTS) {
+      idleContexts.add(ctx);
+    }
   }
 
-  private void drawFrame(int frame, Graphics2D g, Dimension d) {
-    FrameInfo fi = getFrameInfo(frame);
+  private void drawFrame(int frame, Canvas g, RenderContext ctx, Matrix cam, double zoom) {
+    Dimension d = ctx.getDim();
 
     g.setColor(Color.WHITE);
     g.fillRect(0, 0, d.width, d.height);
 
-    boolean ac = autoCam != null;
-
-    Matrix cam = new Matrix();
-    cam.identity();
-    Matrix tmp = new Matrix();
-    tmp.identity();
-    tmp.rotateY(ac ? autoCam.getTheta(fi) : ap.getTheta());
-    cam.postMultiply(tmp);
-    tmp.identity();
-    tmp.rotateX(ac ? autoCam.getPhi(fi) : ap.getPhi());
-    cam.postMultiply(tmp);
-    tmp.identity();
-    tmp.translate(ac ? autoCam.getTranslateX(fi) : ap.getTranslateX(),
-            ac ? autoCam.getTranslateY(fi) : ap.getTranslateY(), 0.0);
-    cam.postMultiply(tmp);
-
-    if (fi.getOpacity() < 1.0) {
-      g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, (float) fi.getOpacity()));
+    double opacity = frameOpacities[frame];
+    if (opacity < 1.0) {
+      g.setAlpha((float) opacity);
     }
 
-    double zoom = ac ? autoCam.getZoom(fi) : ap.getZoom();
-
     if (ap.isShowGrid()) {
-      GridSystemRenderer.render(g, cam, zoom, d);
+      GridSystemRenderer.render(g, cam, zoom, ctx);
     }
 
+    CancelUtils.checkCancelled();
     g.setColor(Color.BLACK);
-    FrameRenderer.renderFrame(fi.getStepNum(), fi.getPercent(), g, cam, zoom, d, (float) fi.getOpacity());
-
-    if (FOOTER_TEXT != null) {
-      drawFooterText(g, d, FOOTER_TEXT);
-    }
+    FrameRenderer.renderFrame(frameStepNums[frame], framePercents[frame], g, cam, zoom, ctx, (float) opacity);
   }
 
   private static final IndexColorModel colorModel;
@@ -322,15 +573,10 @@ public class FrameGenerator {
 
   private static final Color footerColor = new Color(100, 100, 255, 65);
 
-  private static Font footerFont;
-
   private static void drawFooterText(Graphics g, Dimension d, String footerText) {
     g = g.create();
     int fontSize = Math.min(d.height, d.width) / 30;
-    if (footerFont == null || footerFont.getSize() != fontSize) {
-      footerFont = g.getFont().deriveFont(Font.ITALIC, (float) fontSize);
-    }
-    g.setFont(footerFont);
+    g.setFont(g.getFont().deriveFont(Font.ITALIC, (float) fontSize));
 
     FontMetrics fm = g.getFontMetrics();
     int width = fm.stringWidth(footerText);
@@ -406,12 +652,23 @@ public class FrameGenerator {
     }
 
     ProgramEntry getEntryForAnimTime(double animTime) {
-      for (ProgramEntry entry : entries) {
-        if (entry.start <= animTime && animTime < entry.end) {
-          return entry;
+      if (animTime < 0 || animTime >= programLength) {
+        return null;
+      }
+      // Bináris keresés a bejegyzések határai között (a bejegyzések folytonosan követik egymást)
+      int low = 0;
+      int high = entries.size() - 1;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (animTime < entries.get(mid).end) {
+          high = mid;
+        } else {
+          low = mid + 1;
         }
       }
-      return null;
+      ProgramEntry entry = entries.get(low);
+      assert entry.start <= animTime && animTime < entry.end;
+      return entry;
     }
 
     ProgramEntry getEntryForRealTime(double realTime) {
@@ -453,179 +710,186 @@ public class FrameGenerator {
     }
   }
 
-  private class AutoCam {
-
-    final private CamPoint[] camPoints = new CamPoint[]{
-      new CamPoint(0, 0.0, 0.0, 20.0, 0.0, 0.0, .5),
-      new CamPoint(0, 75.0),
-      new CamPoint(9, 0.0),
-      new CamPoint(10, 0.0, 0.0, 0.0, 0.0, -1.0, 1.25),
-      new CamPoint(11, 0.0, 0.0, 0.0, 0.0, -1.0, 1.25),
-      new CamPoint(12, 30.0, 0.0, 0.0, 0.0, -1.0, 1.75),
-      new CamPoint(15, 50.0, 0.0, 0.0, 0.0, -1.0, 1.75),
-      new CamPoint(17, 15.0, 0.0, 0.0, 0.0, 0.0, 1.75),
-      new CamPoint(18, 40.0, 6.0, -6.0, 0.0, 0.0, 3.0)
-    };
-
-    final int[] stepsCumulatedLength;
-
-    AutoCam() {
-      Arrays.sort(camPoints, new Comparator<CamPoint>() {
-        @Override
-        public int compare(CamPoint cp1, CamPoint cp2) {
-          int c = Integer.compare(cp1.step, cp2.step);
-          if (c == 0) {
-            c = Double.compare(cp1.percent, cp2.percent);
-          }
-          if (c == 0) {
-            throw new IllegalArgumentException();
-          }
-          return c;
-        }
-      });
-      if (camPoints.length == 0 || camPoints[0].step != 0 || camPoints[0].percent != 0) {
-        throw new IllegalArgumentException();
-      }
-      for (int i = 0; i < camPoints.length - 1; i++) {
-        CamPoint cp = camPoints[i];
-        cp.next = camPoints[i + 1];
-      }
+  /**
+   * Az automatikus kamera kulcspontjai.
+   */
+  private static final CamKeyframe[] AUTO_CAM_KEYFRAMES = new CamKeyframe[]{
+    new CamKeyframe(0, 0.0, 0.0, 20.0, 0.0, 0.0, .5),
+    new CamKeyframe(0, 75.0),
+    new CamKeyframe(9, 0.0),
+    new CamKeyframe(10, 0.0, 0.0, 0.0, 0.0, -1.0, 1.25),
+    new CamKeyframe(11, 0.0, 0.0, 0.0, 0.0, -1.0, 1.25),
+    new CamKeyframe(12, 30.0, 0.0, 0.0, 0.0, -1.0, 1.75),
+    new CamKeyframe(15, 50.0, 0.0, 0.0, 0.0, -1.0, 1.75),
+    new CamKeyframe(17, 15.0, 0.0, 0.0, 0.0, 0.0, 1.75),
+    new CamKeyframe(18, 40.0, 6.0, -6.0, 0.0, 0.0, 3.0)
+  };
 
-      stepsCumulatedLength = new int[stepsAnimLength.length];
-      int length = 0;
-      for (int i = 0; i < stepsAnimLength.length; i++) {
-        stepsCumulatedLength[i] = length;
-        length += stepsAnimLength[i];
-      }
-    }
+  /**
+   * @return Az automatikus kamera kulcspontjai.
+   */
+  public static List<CamKeyframe> getAutoCamKeyframes() {
+    return Collections.unmodifiableList(Arrays.asList(AUTO_CAM_KEYFRAMES));
+  }
 
-    double getTranslateX(FrameInfo fi) {
-      return getInterpolatedValue(fi, "tx");
+  /**
+   * A kamera kulcspontjainak ellenőrzése és rendezése.
+   * @param keyframes A kulcspontok.
+   * @return A kulcspontok pozíció szerint rendezve.
+   */
+  private static CamKeyframe[] checkKeyframes(List<CamKeyframe> keyframes) {
+    if (keyframes == null || keyframes.isEmpty()) {
+      throw new IllegalArgumentException();
     }
-
-    double getTranslateY(FrameInfo fi) {
-      return getInterpolatedValue(fi, "ty");
+    CamKeyframe[] sorted = keyframes.toArray(new CamKeyframe[keyframes.size()]);
+    Arrays.sort(sorted, new Comparator<CamKeyframe>() {
+      @Override
+      public int compare(CamKeyframe kf1, CamKeyframe kf2) {
+        int c = kf1.compareTo(kf2.getStep(), kf2.getPercent());
+        if (c == 0) {
+          throw new IllegalArgumentException();
+        }
+        return c;
+      }
+    });
+    if (sorted[0].getStep() != 0 || sorted[0].getPercent() != 0
+            || sorted[sorted.length - 1].getStep() > FrameRenderer.MAX_STEP) {
+      throw new IllegalArgumentException();
     }
+    return sorted;
+  }
 
-    double getTheta(FrameInfo fi) {
-      return getInterpolatedValue(fi, "th");
+  /**
+   * A kamerapálya kiszámítása: rögzített kamera esetén az egyetlen beállítás,
+   * egyébként minden képkockára a kulcspontok közötti interpoláció.
+   */
+  private void buildCameraTrack() {
+    if (camKeyframes == null) {
+      camera.set(0, ap.getTranslateX(), ap.getTranslateY(), ap.getTheta(), ap.getPhi(), ap.getZoom());
+      return;
     }
 
-    double getPhi(FrameInfo fi) {
-      return getInterpolatedValue(fi, "ph");
+    int[] stepsCumulatedLength = new int[stepsAnimLength.length];
+    int length = 0;
+    for (int i = 0; i < stepsAnimLength.length; i++) {
+      stepsCumulatedLength[i] = length;
+      length += stepsAnimLength[i];
     }
 
-    double getZoom(FrameInfo fi) {
-      return getInterpolatedValue(fi, "zo");
-    }
+    int k = 0;
+    for (int frame = 0; frame < numberOfFrames; frame++) {
+      int step = frameStepNums[frame];
+      double percent = framePercents[frame];
 
-    private CamPoint[] getCamPoints(FrameInfo fi) {
-      for (CamPoint cp : camPoints) {
-        if (cp.isBefore(fi)
-                && (cp.next == null || cp.next.isAfter(fi))) {
-          return new CamPoint[]{cp, cp.next == null ? cp : cp.next};
-        }
+      // Az utolsó kulcspont, ami nem a kocka után van (a kockák pozíciója többnyire növekvő)
+      if (camKeyframes[k].compareTo(step, percent) > 0) {
+        k = 0;
       }
-      throw new IllegalStateException();
-    }
-
-    private double getInterpolatedValue(FrameInfo fi, String variable) {
-      CamPoint[] cps = getCamPoints(fi);
-      if (cps[0] == cps[1]) {
-        return cps[0].getValue(variable);
+      while (k + 1 < camKeyframes.length && camKeyframes[k + 1].compareTo(step, percent) <= 0) {
+        k++;
       }
-      return interpolate(getPos(fi), getPos(cps[0]), getPos(cps[1]),
-              cps[0].getValue(variable), cps[1].getValue(variable));
-    }
-
-    private int getPos(FrameInfo fi) {
-      return getPos(fi.getStepNum(), fi.getPercent());
-    }
 
-    private int getPos(CamPoint cp) {
-      return getPos(cp.step, cp.percent);
-    }
+      CamKeyframe kf1 = camKeyframes[k];
+      if (k + 1 == camKeyframes.length) {
+        camera.set(frame, kf1.getTranslateX(), kf1.getTranslateY(), kf1.getTheta(), kf1.getPhi(), kf1.getZoom());
+        continue;
+      }
 
-    private int getPos(int step, double percent) {
-      return stepsCumulatedLength[step] + (int) (stepsAnimLength[step] * percent / 100.0);
+      CamKeyframe kf2 = camKeyframes[k + 1];
+      int pos = getPos(stepsCumulatedLength, step, percent);
+      int start = getPos(stepsCumulatedLength, kf1.getStep(), kf1.getPercent());
+      int end = getPos(stepsCumulatedLength, kf2.getStep(), kf2.getPercent());
+      camera.set(frame,
+              interpolate(pos, start, end, kf1.getTranslateX(), kf2.getTranslateX()),
+              interpolate(pos, start, end, kf1.getTranslateY(), kf2.getTranslateY()),
+              interpolate(pos, start, end, kf1.getTheta(), kf2.getTheta()),
+              interpolate(pos, start, end, kf1.getPhi(), kf2.getPhi()),
+              interpolate(pos, start, end, kf1.getZoom(), kf2.getZoom()));
     }
+  }
 
-    private double interpolate(int pos, int start, int end, double startValue, double endValue) {
-      assert start < end && pos >= start && pos <= end;
-
-      if (startValue == endValue) {
-        return startValue;
-      }
+  private int getPos(int[] stepsCumulatedLength, int step, double percent) {
+    return stepsCumulatedLength[step] + (int) (stepsAnimLength[step] * percent / 100.0);
+  }
 
-      double c = endValue - startValue;
-      double d = end - start;
-      double t = pos - start;
+  private static double interpolate(int pos, int start, int end, double startValue, double endValue) {
+    assert start < end && pos >= start && pos <= end;
 
-      // Quadratic easing in/out
-      t /= d / 2;
-      if (t < 1) {
-        return c / 2 * t * t + startValue;
-      }
-      t--;
-      return -c / 2 * (t * (t - 2) - 1) + startValue;
+    if (startValue == endValue) {
+      return startValue;
     }
 
-    private class CamPoint {
-
-      final int step;
+    double c = endValue - startValue;
+    double d = end - start;
+    double t = pos - start;
 
-      final double percent;
-
-      final double translateX;
+    // Quadratic easing in/out
+    t /= d / 2;
+    if (t < 1) {
+      return c / 2 * t * t + startValue;
+    }
+    t--;
+    return -c / 2 * (t * (t - 2) - 1) + startValue;
+  }
 
-      final double translateY;
+  /**
+   * A kamera beállításai képkockánként (rögzített kamera esetén egyetlen elem),
+   * valamint az ezekből számolt, első használatkor eltárolt kameramátrixok.
+   */
+  private static final class CameraTrack {
 
-      final double theta;
+    final double[] translateX;
 
-      final double phi;
+    final double[] translateY;
 
-      final double zoom;
+    final double[] theta;
 
-      CamPoint next;
+    final double[] phi;
 
-      CamPoint(int step, double percent) {
-        this(step, percent, 0.0, 0.0, 0.0, 0.0, 1.0);
-      }
+    final double[] zoom;
 
-      CamPoint(int step, double percent, double translateX, double translateY, double theta, double phi, double zoom) {
-        this.step = step;
-        this.percent = percent;
-        this.translateX = translateX;
-        this.translateY = translateY;
-        this.theta = theta;
-        this.phi = phi;
-        this.zoom = zoom;
-      }
+    /**
+     * A kameramátrixok; a párhuzamos generálás miatt szálbiztos tömbben (a mátrixok nem módosulnak).
+     */
+    private final AtomicReferenceArray<Matrix> matrices;
+
+    CameraTrack(int size) {
+      translateX = new double[size];
+      translateY = new double[size];
+      theta = new double[size];
+      phi = new double[size];
+      zoom = new double[size];
+      matrices = new AtomicReferenceArray<>(size);
+    }
 
-      boolean isBefore(FrameInfo fi) {
-        return fi.getStepNum() > step || (fi.getStepNum() == step && fi.getPercent() >= percent);
-      }
+    void set(int index, double translateX, double translateY, double theta, double phi, double zoom) {
+      this.translateX[index] = translateX;
+      this.translateY[index] = translateY;
+      this.theta[index] = theta;
+      this.phi[index] = phi;
+      this.zoom[index] = zoom;
+    }
 
-      boolean isAfter(FrameInfo fi) {
-        return fi.getStepNum() < step || (fi.getStepNum() == step && fi.getPercent() < percent);
+    Matrix getMatrix(int index) {
+      Matrix cam = matrices.get(index);
+      if (cam != null) {
+        return cam;
       }
 
-      double getValue(String variable) {
-        switch (variable) {
-          case "tx":
-            return translateX;
-          case "ty":
-            return translateY;
-          case "th":
-            return theta;
-          case "ph":
-            return phi;
-          case "zo":
-            return zoom;
-          default:
-            throw new AssertionError();
-        }
-      }
+      cam = new Matrix();
+      cam.identity();
+      Matrix tmp = new Matrix();
+      tmp.identity();
+      tmp.rotateY(theta[index]);
+      cam.postMultiply(tmp);
+      tmp.identity();
+      tmp.rotateX(phi[index]);
+      cam.postMultiply(tmp);
+      tmp.identity();
+      tmp.translate(translateX[index], translateY[index], 0.0);
+      cam.postMultiply(tmp);
+
+      return matrices.compareAndSet(index, null, cam) ? cam : matrices.get(index);
     }
   }
 
@@ -0,0 +1,127 @@
+package hu.akusius.palenque.anigifmaker;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.*;
+
+/**
+ * A képkockák legenerálása egy szálkészleten, sorrendhelyes kiadással.
+ * A munkaszálak párhuzamosan generálják a kockákat, a hívó pedig (egyetlen író)
+ * mindig a soron következő kockát kapja meg. Az előre legenerált kockák számát
+ * egy korlátos átrendező puffer határolja.
+ * @author Bujdosó Ákos
+ */
+final class FramePipeline implements AutoCloseable {
+
+  private final FrameGenerator fg;
+
+  private final GrayQuantizer quantizer;
+
+  private final int numberOfFrames;
+
+  private final ExecutorService executor;
+
+  private final int bufferSize;
+
+  private final Deque<Future<BufferedImage>> pending;
+
+  private int nextToSubmit;
+
+  private int nextToTake;
+
+  /**
+   * Új futószalag létrehozása.
+   * @param fg A képkockákat generáló objektum.
+   * @param quantizer A legenerált képkockák kvantálását végző objektum, vagy {@code null}, ha nincs kvantálás.
+   * @param executor A generálást végző szálkészlet. {@code null} esetén a generálás a hívó szálán történik.
+   * A szálkészletet nem a futószalag állítja le.
+   * @param bufferSize Az előre legenerálható (még ki nem adott) kockák maximális száma.
+   */
+  FramePipeline(FrameGenerator fg, GrayQuantizer quantizer, ExecutorService executor, int bufferSize) {
+    if (fg == null || (executor != null && bufferSize < 1)) {
+      throw new IllegalArgumentException();
+    }
+    this.fg = fg;
+    this.quantizer = quantizer;
+    this.numberOfFrames = fg.getNumberOfFrames();
+    if (executor != null) {
+      this.executor = executor;
+      this.bufferSize = bufferSize;
+      this.pending = new ArrayDeque<>(bufferSize);
+    } else {
+      this.executor = null;
+      this.bufferSize = 0;
+      this.pending = null;
+    }
+  }
+
+  /**
+   * @return {@code true}, ha van még kiadandó képkocka.
+   */
+  boolean hasNext() {
+    return nextToTake < numberOfFrames;
+  }
+
+  /**
+   * @return A következő képkocka sorszáma.
+   */
+  int getNextFrame() {
+    return nextToTake;
+  }
+
+  /**
+   * A soron következő képkocka visszaadása. Szükség esetén megvárja, amíg elkészül.
+   * @return A legenerált képkocka.
+   * @throws InterruptedException A várakozás meg lett szakítva.
+   * @throws ExecutionException Hiba történt a generálás során.
+   */
+  BufferedImage next() throws InterruptedException, ExecutionException {
+    if (!hasNext()) {
+      throw new IllegalStateException();
+    }
+
+    if (executor == null) {
+      return generateFrame(nextToTake++);
+    }
+
+    fill();
+    BufferedImage image = pending.poll().get();
+    nextToTake++;
+    fill();
+    return image;
+  }
+
+  private void fill() {
+    while (nextToSubmit < numberOfFrames && pending.size() < bufferSize) {
+      final int frame = nextToSubmit++;
+      pending.add(executor.submit(new Callable<BufferedImage>() {
+        @Override
+        public BufferedImage call() throws Exception {
+          return generateFrame(frame);
+        }
+      }));
+    }
+  }
+
+  private BufferedImage generateFrame(int frame) {
+    BufferedImage image = fg.generateFrame(frame);
+    if (quantizer != null) {
+      quantizer.apply(image);
+    }
+    return image;
+  }
+
+  /**
+   * A futószalag leállítása. A még függőben levő generálások megszakításra kerülnek.
+   */
+  @Override
+  public void close() {
+    if (executor != null) {
+      for (Future<BufferedImage> f : pending) {
+        f.cancel(true);
+      }
+      pending.clear();
+    }
+  }
+}
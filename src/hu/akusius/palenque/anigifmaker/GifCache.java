@@ -0,0 +1,485 @@
+package hu.akusius.palenque.anigifmaker;
+
+import hu.akusius.palenque.anigifmaker.rendering.RenderBackend;
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A legenerált GIF-ek tartalom szerint címzett lemezes gyorsítótára.
+ * <p>
+ * A kulcs a generálási paraméterek bináris szerializált formájának
+ * ({@link GenerateParams#serialize(DataOutputStream)}) SHA-256 hash-e.
+ * A fájlok egy ideiglenes fájlba készülnek, és atomi átnevezéssel kerülnek a helyükre,
+ * így félkész fájl soha nem látszik. A gyorsítótár méretét a legrégebben használt
+ * fájlok törlése korlátozza (a használat idejét a fájlok módosítási ideje őrzi, így újraindítás után is megmarad).
+ * Ugyanazon paraméterek egyidejű kérésekor csak egy generálás fut.
+ * A példány szálbiztos; ugyanazt a könyvtárat egyszerre csak egy példány használhatja.
+ * @author Bujdosó Ákos
+ */
+public final class GifCache {
+
+  /**
+   * A kulcs része, a GIF-ek formátumának megváltozásakor növelendő.
+   */
+  private static final int FORMAT_VERSION = 1;
+
+  private static final String EXTENSION = ".gif";
+
+  private static final String TEMP_EXTENSION = ".tmp";
+
+  private final Path dir;
+
+  private final long maxBytes;
+
+  /**
+   * A fájlok mérete kulcs szerint, a legrégebben használttól a legutóbb használtig.
+   */
+  private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+  private long totalBytes;
+
+  private final ConcurrentHashMap<String, FutureTask<Path>> inProgress = new ConcurrentHashMap<>();
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * Gyorsítótár megnyitása (szükség esetén létrehozása) a megadott könyvtárban.
+   * A félbemaradt ideiglenes fájlok törlésre kerülnek.
+   * @param dir A gyorsítótár könyvtára.
+   * @param maxBytes A gyorsítótár maximális mérete bájtban.
+   * @throws IOException Hiba történt a könyvtár beolvasása során.
+   */
+  public GifCache(Path dir, long maxBytes) throws IOException {
+    if (dir == null || maxBytes < 1) {
+      throw new IllegalArgumentException();
+    }
+    this.dir = dir;
+    this.maxBytes = maxBytes;
+    Files.createDirectories(dir);
+
+    final List<Object[]> found = new ArrayList<>();
+    try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+      for (Path p : ds) {
+        String name = p.getFileName().toString();
+        if (name.endsWith(TEMP_EXTENSION)) {
+          Files.deleteIfExists(p);
+        } else if (name.endsWith(EXTENSION)) {
+          BasicFileAttributes attrs = Files.readAttributes(p, BasicFileAttributes.class);
+          found.add(new Object[]{name.substring(0, name.length() - EXTENSION.length()),
+            attrs.size(), attrs.lastModifiedTime()});
+        }
+      }
+    }
+    Collections.sort(found, new Comparator<Object[]>() {
+      @Override
+      public int compare(Object[] o1, Object[] o2) {
+        return ((FileTime) o1[2]).compareTo((FileTime) o2[2]);
+      }
+    });
+    synchronized (entries) {
+      for (Object[] f : found) {
+        entries.put((String) f[0], (Long) f[1]);
+        totalBytes += (Long) f[1];
+      }
+    }
+    evict(null);
+  }
+
+  /**
+   * A paraméterekhez tartozó kulcs kiszámítása.
+   * A kulcs a képkockák (alapértelmezett) kirajzolási módjától is függ, mert az eltérő módok
+   * képpontjai eltérhetnek.
+   * @param params A generálási paraméterek.
+   * @return A kulcs (hexadecimális SHA-256).
+   * @throws IOException Hiba történt a szerializálás során.
+   */
+  public static String getKey(GenerateParams params) throws IOException {
+    return getKey(params, FrameGenerator.getDefaultRenderBackend());
+  }
+
+  /**
+   * A paraméterekhez tartozó kulcs kiszámítása a megadott kirajzolási mód esetén.
+   * @param params A generálási paraméterek.
+   * @param backend A képkockák kirajzolási módja.
+   * @return A kulcs (hexadecimális SHA-256).
+   * @throws IOException Hiba történt a szerializálás során.
+   */
+  static String getKey(GenerateParams params, RenderBackend backend) throws IOException {
+    MessageDigest md;
+    try {
+      md = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IllegalStateException(ex);
+    }
+    try (DataOutputStream dos = new DataOutputStream(new DigestOutputStream(md))) {
+      dos.writeInt(FORMAT_VERSION);
+      dos.writeUTF(backend.name());
+      params.serialize(dos);
+    }
+    StringBuilder sb = new StringBuilder(64);
+    for (byte b : md.digest()) {
+      sb.append(String.format("%02x", b));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * A paraméterekhez tartozó GIF-fájl lekérdezése.
+   * @param params A generálási paraméterek.
+   * @return A GIF-fájl útvonala, vagy {@code null}, ha nincs a gyorsítótárban.
+   * @throws IOException Hiba történt a kulcs kiszámítása során.
+   */
+  public Path get(GenerateParams params) throws IOException {
+    String key = getKey(params);
+    Path file = lookup(key);
+    if (file != null) {
+      hits.incrementAndGet();
+    }
+    return file;
+  }
+
+  /**
+   * Megvizsgálja, hogy a paraméterekhez tartozó GIF a gyorsítótárban van-e.
+   * A találatok és a tévedések száma nem változik, és a bejegyzés sem frissül.
+   * @param params A generálási paraméterek.
+   * @return {@code true}, ha a GIF a gyorsítótárban van.
+   * @throws IOException Hiba történt a kulcs kiszámítása során.
+   */
+  public boolean contains(GenerateParams params) throws IOException {
+    String key = getKey(params);
+    synchronized (entries) {
+      return entries.containsKey(key);
+    }
+  }
+
+  /**
+   * A paraméterekhez tartozó GIF-fájl lekérdezése, szükség esetén legenerálása.
+   * @param params A generálási paraméterek.
+   * @param threads A generáláshoz használt szálak száma.
+   * @return A GIF-fájl útvonala.
+   * @throws Exception Hiba történt a generálás során.
+   */
+  public Path getOrCreate(final GenerateParams params, final int threads) throws Exception {
+    final String key = getKey(params);
+    Path file = lookup(key);
+    if (file != null) {
+      hits.incrementAndGet();
+      return file;
+    }
+
+    FutureTask<Path> task = new FutureTask<>(new Callable<Path>() {
+      @Override
+      public Path call() throws Exception {
+        // Közben (egy korábbi generálás által) elkészülhetett
+        Path file = lookup(key);
+        if (file != null) {
+          hits.incrementAndGet();
+          return file;
+        }
+        misses.incrementAndGet();
+        return create(key, params, threads);
+      }
+    });
+    FutureTask<Path> running = inProgress.putIfAbsent(key, task);
+    if (running != null) {
+      // Más is éppen ezt generálja
+      hits.incrementAndGet();
+      return getResult(running);
+    }
+    try {
+      task.run();
+      return getResult(task);
+    } finally {
+      inProgress.remove(key, task);
+    }
+  }
+
+  /**
+   * A paraméterekhez tartozó GIF kiírása a megadott csatornába, szükség esetén legenerálása.
+   * A kiírás {@link FileChannel#transferTo(long, long, WritableByteChannel)} révén történik.
+   * @param params A generálási paraméterek.
+   * @param threads A generáláshoz használt szálak száma.
+   * @param target A kiírás célja.
+   * @return A kiírt bájtok száma.
+   * @throws Exception Hiba történt a generálás vagy a kiírás során.
+   */
+  public long transferTo(GenerateParams params, int threads, WritableByteChannel target) throws Exception {
+    try {
+      return transfer(getOrCreate(params, threads), target);
+    } catch (NoSuchFileException ex) {
+      // Közben törlődött (a méretkorlát miatt): újra legeneráljuk
+      remove(getKey(params));
+      return transfer(getOrCreate(params, threads), target);
+    }
+  }
+
+  /**
+   * A paraméterekhez tartozó GIF kiírása a megadott stream-be, szükség esetén legenerálása.
+   * @param params A generálási paraméterek.
+   * @param threads A generáláshoz használt szálak száma.
+   * @param os A kiírás célja (nem kerül lezárásra).
+   * @return A kiírt bájtok száma.
+   * @throws Exception Hiba történt a generálás vagy a kiírás során.
+   */
+  public long transferTo(GenerateParams params, int threads, OutputStream os) throws Exception {
+    long n = transferTo(params, threads, Channels.newChannel(os));
+    os.flush();
+    return n;
+  }
+
+  /**
+   * A fájl teljes tartalmának kiírása a megadott csatornába.
+   * @param file A kiírandó fájl.
+   * @param target A kiírás célja.
+   * @return A kiírt bájtok száma.
+   * @throws IOException Hiba történt a kiírás során.
+   */
+  public static long transfer(Path file, WritableByteChannel target) throws IOException {
+    try (FileChannel fc = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = fc.size();
+      long pos = 0;
+      while (pos < size) {
+        pos += fc.transferTo(pos, size - pos, target);
+      }
+      return size;
+    }
+  }
+
+  /**
+   * @return A gyorsítótár találatainak száma.
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * @return A gyorsítótár hiányainak (generálásoknak) száma.
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * @return A gyorsítótárban levő fájlok száma.
+   */
+  public int getSize() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  /**
+   * @return A gyorsítótárban levő fájlok összmérete bájtban.
+   */
+  public long getTotalBytes() {
+    synchronized (entries) {
+      return totalBytes;
+    }
+  }
+
+  private Path getFile(String key) {
+    return dir.resolve(key + EXTENSION);
+  }
+
+  /**
+   * Egy kulcs megkeresése; találat esetén a használat idejének frissítése.
+   */
+  private Path lookup(String key) {
+    synchronized (entries) {
+      if (entries.get(key) == null) {
+        return null;
+      }
+    }
+    Path file = getFile(key);
+    try {
+      Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+      return file;
+    } catch (IOException ex) {
+      // Kívülről törölték
+      remove(key);
+      return null;
+    }
+  }
+
+  private Path create(String key, GenerateParams params, int threads) throws Exception {
+    Path tmp = Files.createTempFile(dir, key, TEMP_EXTENSION);
+    try {
+      GifMaker.makeGif(params, tmp.toFile(), threads);
+      return publish(key, tmp);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  /**
+   * Egy elkészült ideiglenes fájl közzététele atomi átnevezéssel.
+   */
+  private Path publish(String key, Path tmp) throws IOException {
+    Path file = getFile(key);
+    try {
+      Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException ex) {
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+    long size = Files.size(file);
+    synchronized (entries) {
+      Long old = entries.put(key, size);
+      totalBytes += size - (old != null ? old : 0L);
+    }
+    evict(key);
+    return file;
+  }
+
+  /**
+   * Új bejegyzés írásának megkezdése (pl. ha a GIF közben máshová is kiírásra kerül).
+   * A bejegyzés csak a {@link PendingEntry#commit()} után válik láthatóvá;
+   * {@code commit()} nélküli lezáráskor eldobásra kerül.
+   * @param params A generálási paraméterek.
+   * @return A bejegyzés írására szolgáló stream.
+   * @throws IOException Hiba történt az ideiglenes fájl létrehozása során.
+   */
+  public PendingEntry newEntry(GenerateParams params) throws IOException {
+    String key = getKey(params);
+    return new PendingEntry(key, Files.createTempFile(dir, key, TEMP_EXTENSION));
+  }
+
+  private void remove(String key) {
+    synchronized (entries) {
+      Long size = entries.remove(key);
+      if (size != null) {
+        totalBytes -= size;
+      }
+    }
+  }
+
+  /**
+   * A legrégebben használt fájlok törlése, amíg a méret a korlát fölött van.
+   * @param keep Az éppen elkészült fájl kulcsa (ez nem kerül törlésre), vagy {@code null}.
+   */
+  private void evict(String keep) {
+    List<String> removed = new ArrayList<>();
+    synchronized (entries) {
+      Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+      while (totalBytes > maxBytes && it.hasNext()) {
+        Map.Entry<String, Long> e = it.next();
+        if (e.getKey().equals(keep)) {
+          continue;
+        }
+        totalBytes -= e.getValue();
+        removed.add(e.getKey());
+        it.remove();
+      }
+    }
+    for (String key : removed) {
+      try {
+        Files.deleteIfExists(getFile(key));
+      } catch (IOException ex) {
+        // Legközelebb újra megpróbáljuk (a könyvtár beolvasásakor)
+      }
+    }
+  }
+
+  private static Path getResult(FutureTask<Path> task) throws Exception {
+    try {
+      return task.get();
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw ex;
+    }
+  }
+
+  /**
+   * Egy írás alatt álló bejegyzés (ideiglenes fájl).
+   */
+  public final class PendingEntry extends FilterOutputStream {
+
+    private final String key;
+
+    private final Path tmp;
+
+    private boolean closed;
+
+    private PendingEntry(String key, Path tmp) throws IOException {
+      super(new BufferedOutputStream(Files.newOutputStream(tmp)));
+      this.key = key;
+      this.tmp = tmp;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+    }
+
+    /**
+     * A bejegyzés lezárása és közzététele.
+     * @return A közzétett GIF-fájl útvonala.
+     * @throws IOException Hiba történt a lezárás vagy az átnevezés során.
+     */
+    public Path commit() throws IOException {
+      if (closed) {
+        throw new IllegalStateException();
+      }
+      closed = true;
+      try {
+        out.close();
+        return publish(key, tmp);
+      } finally {
+        Files.deleteIfExists(tmp);
+      }
+    }
+
+    /**
+     * A bejegyzés eldobása (ha még nem lett közzétéve).
+     */
+    @Override
+    public void close() throws IOException {
+      if (!closed) {
+        closed = true;
+        try {
+          out.close();
+        } finally {
+          Files.deleteIfExists(tmp);
+        }
+      }
+    }
+  }
+
+  /**
+   * A kiírt bájtokat csak a hash-be továbbító stream.
+   */
+  private static final class DigestOutputStream extends OutputStream {
+
+    private final MessageDigest md;
+
+    DigestOutputStream(MessageDigest md) {
+      this.md = md;
+    }
+
+    @Override
+    public void write(int b) {
+      md.update((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      md.update(b, off, len);
+    }
+  }
+}
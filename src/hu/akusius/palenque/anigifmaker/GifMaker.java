@@ -1,6 +1,13 @@
 package hu.akusius.palenque.anigifmaker;
 
+import hu.akusius.palenque.anigifmaker.util.CancelUtils;
 import java.io.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.swing.SwingWorker;
 
 /**
@@ -10,25 +17,57 @@ import javax.swing.SwingWorker;
 public class GifMaker {
 
   /**
-   * A GIF legenerálása a megadott célfájlba.
+   * A képkockák generálásához alapértelmezésben használt szálak száma (a processzormagok száma).
+   */
+  public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * Szálanként ennyi képkocka lehet egyszerre generálás, illetve tömörítés alatt.
+   */
+  private static final int PENDING_FRAMES_PER_THREAD = 2;
+
+  /**
+   * A GIF legenerálása a megadott célfájlba, a hívó szálán (Swing nélkül, headless környezetben is).
    * @param params A generálási paraméterek.
    * @param dest A célfájl.
    * @throws Exception
    */
   public static void makeGif(GenerateParams params, File dest) throws Exception {
-    SwingWorker<Void, Void> sw = makeGifAsyncInternal(params, new BufferedOutputStream(new FileOutputStream(dest)), true);
-    sw.get();
+    makeGif(params, dest, DEFAULT_THREADS);
+  }
+
+  /**
+   * A GIF legenerálása a megadott célfájlba, a hívó szálán (Swing nélkül, headless környezetben is).
+   * @param params A generálási paraméterek.
+   * @param dest A célfájl.
+   * @param threads A képkockák generálásához használt szálak száma.
+   * @throws Exception
+   */
+  public static void makeGif(GenerateParams params, File dest, int threads) throws Exception {
+    checkThreads(threads);
+    new GifTask(params, new BufferedOutputStream(new FileOutputStream(dest)), true, threads, null).execute();
   }
 
   /**
-   * A GIF legenerálása a megadott célstream-be.
+   * A GIF legenerálása a megadott célstream-be, a hívó szálán (Swing nélkül, headless környezetben is).
    * @param params A generálási paraméterek.
    * @param os A célstream.
    * @throws Exception
    */
   public static void makeGif(GenerateParams params, OutputStream os) throws Exception {
-    SwingWorker<Void, Void> sw = makeGifAsyncInternal(params, os, false);
-    sw.get();
+    makeGif(params, os, DEFAULT_THREADS);
+  }
+
+  /**
+   * A GIF legenerálása a megadott célstream-be, a hívó szálán (Swing nélkül, headless környezetben is).
+   * @param params A generálási paraméterek.
+   * @param os A célstream.
+   * @param threads A képkockák generálásához használt szálak száma.
+   * @throws Exception
+   */
+  public static void makeGif(GenerateParams params, OutputStream os, int threads) throws Exception {
+    checkThreads(threads);
+    new GifTask(params, os, false, threads, null).execute();
   }
 
   /**
@@ -39,7 +78,19 @@ public class GifMaker {
    * @throws IOException
    */
   public static SwingWorker<Void, Void> makeGifAsync(GenerateParams params, File dest) throws IOException {
-    return makeGifAsyncInternal(params, new BufferedOutputStream(new FileOutputStream(dest)), true);
+    return makeGifAsync(params, dest, DEFAULT_THREADS);
+  }
+
+  /**
+   * A GIF legenerálásának aszinkron elindítása a megadott célfájlba.
+   * @param params A generálási paraméterek.
+   * @param dest A célfájl.
+   * @param threads A képkockák generálásához használt szálak száma.
+   * @return A {@link SwingWorker} a legeneráláshoz.
+   * @throws IOException
+   */
+  public static SwingWorker<Void, Void> makeGifAsync(GenerateParams params, File dest, int threads) throws IOException {
+    return makeGifAsyncInternal(params, new BufferedOutputStream(new FileOutputStream(dest)), true, threads);
   }
 
   /**
@@ -49,43 +100,87 @@ public class GifMaker {
    * @return A {@link SwingWorker} a legeneráláshoz.
    */
   public static SwingWorker<Void, Void> makeGifAsync(GenerateParams params, OutputStream os) {
-    return makeGifAsyncInternal(params, os, false);
+    return makeGifAsync(params, os, DEFAULT_THREADS);
+  }
+
+  /**
+   * A GIF legenerálásának aszinkron elindítása a megadott célstream-be.
+   * @param params A generálási paraméterek.
+   * @param os A célstream.
+   * @param threads A képkockák generálásához és tömörítéséhez használt szálak száma.
+   * 1 esetén a kockák generálása és kódolása egyetlen szálon, sorban történik.
+   * @return A {@link SwingWorker} a legeneráláshoz.
+   */
+  public static SwingWorker<Void, Void> makeGifAsync(GenerateParams params, OutputStream os, int threads) {
+    return makeGifAsyncInternal(params, os, false, threads);
+  }
+
+  /**
+   * A GIF legenerálásának aszinkron elindítása a megadott célfájlba, a megadott végrehajtón.
+   * @param params A generálási paraméterek.
+   * @param dest A célfájl.
+   * @param threads A képkockák generálásához és tömörítéséhez használt szálak száma.
+   * @param executor A generálást vezérlő végrehajtó.
+   * @param listener Az előrehaladás figyelője, vagy {@code null}.
+   * @return A generálás kezelője.
+   * @throws IOException A célfájl nem hozható létre.
+   */
+  public static GifTask makeGifAsync(GenerateParams params, File dest, int threads,
+          Executor executor, GifProgressListener listener) throws IOException {
+    checkThreads(threads);
+    if (executor == null) {
+      throw new IllegalArgumentException();
+    }
+    GifTask task = new GifTask(params, new BufferedOutputStream(new FileOutputStream(dest)), true, threads, listener);
+    task.start(executor);
+    return task;
+  }
+
+  /**
+   * A GIF legenerálásának aszinkron elindítása a megadott célstream-be, a megadott végrehajtón.
+   * A generálás nem függ a Swingtől, így headless környezetben is használható.
+   * @param params A generálási paraméterek.
+   * @param os A célstream (nem kerül lezárásra).
+   * @param threads A képkockák generálásához és tömörítéséhez használt szálak száma.
+   * 1 esetén a kockák generálása és kódolása a végrehajtó szálán, sorban történik.
+   * @param executor A generálást vezérlő végrehajtó.
+   * @param listener Az előrehaladás figyelője, vagy {@code null}.
+   * @return A generálás kezelője.
+   */
+  public static GifTask makeGifAsync(GenerateParams params, OutputStream os, int threads,
+          Executor executor, GifProgressListener listener) {
+    checkThreads(threads);
+    if (executor == null) {
+      throw new IllegalArgumentException();
+    }
+    GifTask task = new GifTask(params, os, false, threads, listener);
+    task.start(executor);
+    return task;
   }
 
+  /**
+   * A {@link SwingWorker}-es változat: a generálás a worker szálán fut,
+   * az előrehaladás a worker {@code progress} tulajdonságában jelenik meg.
+   * A worker {@code cancel(false)} hívása után a generálás a következő képkocka előtt leáll, és a már kiírt
+   * kockákból lezárt GIF készül; a {@code cancel(true)} a képkockák kirajzolása és tömörítése közben is
+   * megszakítja a generálást (a GIF lezárása nélkül).
+   */
   private static SwingWorker<Void, Void> makeGifAsyncInternal(final GenerateParams params,
-          final OutputStream os, final boolean closeStream) {
+          final OutputStream os, final boolean closeStream, final int threads) {
+    checkThreads(threads);
+
     SwingWorker<Void, Void> sw = new SwingWorker<Void, Void>() {
       @Override
       protected Void doInBackground() throws Exception {
-        AnimParams ap = params.getAnimParams();
-        GifParams gp = params.getGifParams();
-
-        PalenqueGifEncoder encoder = new PalenqueGifEncoder();
-        encoder.start(os);
-        encoder.setFrameRate((float) ap.getFramesPerSecond());
-        if (gp.isRepeat()) {
-          encoder.setRepeat(0);
-        }
-        if (gp.isEmbedParams()) {
-          encoder.setComment(params.serializeBinaryASCII());
-        }
-        encoder.setQuality(gp.getQuality());
-
-        FrameGenerator fg = new FrameGenerator(ap);
-
-        int numberOfFrames = fg.getNumberOfFrames();
-        for (int frame = 0; frame < numberOfFrames; frame++) {
-          if (isCancelled()) {
-            break;
+        GifTask task = new GifTask(params, os, closeStream, threads, new GifProgressListener() {
+          @Override
+          public void progressChanged(GifProgress progress) {
+            setProgress(progress.getPercent());
           }
-          encoder.addFrame(fg.generateFrame(frame));
-          setProgress(frame * 100 / numberOfFrames);
-        }
-        encoder.finish();
-        if (closeStream) {
-          os.close();
-        }
-
+        });
+        // A worker megszakítását is figyelje
+        task.setOwner(this);
+        task.execute();
         return null;
       }
     };
@@ -94,6 +189,127 @@ public class GifMaker {
     return sw;
   }
 
+  private static void checkThreads(int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException();
+    }
+  }
+
+  /**
+   * A GIF legenerálása a hívó szálán.
+   * @param params A generálási paraméterek.
+   * @param os A célstream (nem kerül lezárásra).
+   * @param threads A képkockák generálásához és tömörítéséhez használt szálak száma.
+   * @param task A generálás kezelője (megszakítás és előrehaladás).
+   * @throws Exception Hiba történt a generálás során.
+   */
+  static void writeGif(GenerateParams params, OutputStream os, int threads, GifTask task) throws Exception {
+    AnimParams ap = params.getAnimParams();
+    GifParams gp = params.getGifParams();
+
+    CountingOutputStream cos = new CountingOutputStream(os);
+    PalenqueGifEncoder encoder = new PalenqueGifEncoder();
+    encoder.start(cos);
+    encoder.setFrameRate((float) ap.getFramesPerSecond());
+    if (gp.isRepeat()) {
+      encoder.setRepeat(0);
+    }
+    if (gp.isEmbedParams()) {
+      encoder.setComment(params.serializeBinaryASCII());
+    }
+    encoder.setQuality(gp.getQuality());
+
+    GrayQuantizer quantizer = null;
+    if (gp.isQuantized()) {
+      quantizer = new GrayQuantizer(gp.getGrayLevels(), gp.isDither());
+      encoder.setUsedColors(quantizer.getUsedColors());
+    }
+
+    FrameGenerator fg = new FrameGenerator(ap);
+
+    // A generálás és a tömörítés ugyanazon a szálkészleten fut
+    ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads, new WorkerThreadFactory()) : null;
+    int pendingFrames = threads * PENDING_FRAMES_PER_THREAD;
+    try {
+      if (executor != null) {
+        encoder.setCompressionExecutor(executor, pendingFrames);
+      }
+
+      int numberOfFrames = fg.getNumberOfFrames();
+      int written = 0;
+      boolean stopped = false;
+      task.update(0, numberOfFrames, cos.count);
+      try (FramePipeline pipeline = new FramePipeline(fg, quantizer, executor, pendingFrames)) {
+        while (pipeline.hasNext()) {
+          if (task.isStopRequested()) {
+            // A már kiírt kockák után a GIF lezárásra kerül
+            stopped = true;
+            break;
+          }
+          int frame = pipeline.getNextFrame();
+          if (!encoder.addFrame(pipeline.next())) {
+            CancelUtils.checkCancelled();
+            throw new IOException("Error writing frame " + frame);
+          }
+          written = frame + 1;
+          task.update(written, numberOfFrames, cos.count);
+        }
+      }
+      if (!encoder.finish()) {
+        CancelUtils.checkCancelled();
+        throw new IOException("Error finishing the GIF");
+      }
+      task.update(written, numberOfFrames, cos.count);
+      if (stopped) {
+        throw new CancellationException();
+      }
+    } finally {
+      if (executor != null) {
+        executor.shutdownNow();
+      }
+    }
+  }
+
   private GifMaker() {
   }
+
+  /**
+   * A kiírt bájtokat megszámoló stream.
+   */
+  private static final class CountingOutputStream extends FilterOutputStream {
+
+    volatile long count;
+
+    CountingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      count += len;
+    }
+  }
+
+  private static final class WorkerThreadFactory implements ThreadFactory {
+
+    private static final AtomicInteger poolNum = new AtomicInteger();
+
+    private final int pool = poolNum.incrementAndGet();
+
+    private final AtomicInteger threadNum = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, String.format("gifmaker-%d-%d", pool, threadNum.incrementAndGet()));
+      t.setDaemon(true);
+      return t;
+    }
+  }
 }
@@ -22,6 +22,17 @@ public class GifParams {
 
   private final boolean embedParams;
 
+  /**
+   * A szürkeárnyalatok száma (a maximum esetén nincs kvantálás).
+   */
+  public static final ParamRange<Integer> GRAY_LEVELS_RANGE = new ParamRange<>(2, 256, 256);
+
+  private final int grayLevels;
+
+  public static final ParamRange<Boolean> DITHER_RANGE = new ParamRange<>(false, true, false);
+
+  private final boolean dither;
+
   /**
    * @return A minőség.
    */
@@ -43,11 +54,36 @@ public class GifParams {
     return embedParams;
   }
 
+  /**
+   * @return A szürkeárnyalatok száma, amire a képkockák kvantálásra kerülnek.
+   */
+  public int getGrayLevels() {
+    return grayLevels;
+  }
+
+  /**
+   * @return {@code true} esetén a kvantálás rendezett ditheringgel történik.
+   */
+  public boolean isDither() {
+    return dither;
+  }
+
+  /**
+   * @return {@code true}, ha a képkockákat kvantálni kell.
+   */
+  public boolean isQuantized() {
+    return grayLevels < GRAY_LEVELS_RANGE.getMax();
+  }
+
   public GifParams() {
     this(QUALITY_RANGE.getDef(), REPEAT_RANGE.getDef(), EMBED_PARAMS_RANGE.getDef());
   }
 
   public GifParams(int quality, boolean repeat, boolean embedParams) {
+    this(quality, repeat, embedParams, GRAY_LEVELS_RANGE.getDef(), DITHER_RANGE.getDef());
+  }
+
+  public GifParams(int quality, boolean repeat, boolean embedParams, int grayLevels, boolean dither) {
     QUALITY_RANGE.checkMinMax(quality);
     this.quality = quality;
 
@@ -56,6 +92,12 @@ public class GifParams {
 
     EMBED_PARAMS_RANGE.checkMinMax(embedParams);
     this.embedParams = embedParams;
+
+    GRAY_LEVELS_RANGE.checkMinMax(grayLevels);
+    this.grayLevels = grayLevels;
+
+    DITHER_RANGE.checkMinMax(dither);
+    this.dither = dither;
   }
 
   /**
@@ -75,6 +117,8 @@ public class GifParams {
     jo.put("quality", quality);
     jo.put("repeat", repeat);
     jo.put("embedParams", embedParams);
+    jo.put("grayLevels", grayLevels);
+    jo.put("dither", dither);
 
     return jo;
   }
@@ -89,8 +133,10 @@ public class GifParams {
     int quality = jo.optInt("quality", QUALITY_RANGE.getDef());
     boolean repeat = jo.optBoolean("repeat", REPEAT_RANGE.getDef());
     boolean embedParams = jo.optBoolean("embedParams", EMBED_PARAMS_RANGE.getDef());
+    int grayLevels = jo.optInt("grayLevels", GRAY_LEVELS_RANGE.getDef());
+    boolean dither = jo.optBoolean("dither", DITHER_RANGE.getDef());
 
-    return new GifParams(quality, repeat, embedParams);
+    return new GifParams(quality, repeat, embedParams, grayLevels, dither);
   }
 
   /**
@@ -111,14 +157,21 @@ public class GifParams {
 //<editor-fold defaultstate="open" desc="Bináris (de)szerializálás">
   /**
    * Bináris szerializálás.
+   * Alapértelmezett szürkeárnyalatok és dithering esetén az 1-es verzió íródik ki,
+   * így a korábbi változatok is be tudják olvasni.
    * @param dos A szerializálás célja.
    * @throws java.io.IOException Hiba történt a szerializálás során.
    */
   public void serialize(DataOutputStream dos) throws IOException {
-    dos.writeByte(1);  // Verzió
+    boolean v2 = grayLevels != GRAY_LEVELS_RANGE.getDef() || dither != DITHER_RANGE.getDef();
+    dos.writeByte(v2 ? 2 : 1);  // Verzió
     dos.writeByte(quality & 0xff);
     dos.writeBoolean(repeat);
     dos.writeBoolean(embedParams);
+    if (v2) {
+      dos.writeShort(grayLevels);
+      dos.writeBoolean(dither);
+    }
   }
 
   /**
@@ -128,7 +181,8 @@ public class GifParams {
    * @throws java.io.IOException Hiba történt a deszerializálás során.
    */
   public static GifParams deserialize(DataInputStream dis) throws IOException {
-    if (dis.readByte() != 1) {
+    int version = dis.readByte();
+    if (version != 1 && version != 2) {
       throw new IOException("Invalid format!");
     }
 
@@ -136,7 +190,14 @@ public class GifParams {
     boolean repeat = dis.readBoolean();
     boolean embedParams = dis.readBoolean();
 
-    return new GifParams(quality, repeat, embedParams);
+    int grayLevels = GRAY_LEVELS_RANGE.getDef();
+    boolean dither = DITHER_RANGE.getDef();
+    if (version >= 2) {
+      grayLevels = dis.readUnsignedShort();
+      dither = dis.readBoolean();
+    }
+
+    return new GifParams(quality, repeat, embedParams, grayLevels, dither);
   }
 //</editor-fold>
 }
@@ -0,0 +1,63 @@
+package hu.akusius.palenque.anigifmaker;
+
+/**
+ * Egy GIF-generálás előrehaladásának pillanatnyi állapota (nem módosul).
+ * @author Bujdosó Ákos
+ */
+public final class GifProgress {
+
+  private final int frames;
+
+  private final int totalFrames;
+
+  private final long bytes;
+
+  private final long elapsedNanos;
+
+  GifProgress(int frames, int totalFrames, long bytes, long elapsedNanos) {
+    this.frames = frames;
+    this.totalFrames = totalFrames;
+    this.bytes = bytes;
+    this.elapsedNanos = elapsedNanos;
+  }
+
+  /**
+   * @return A már kiírt (a kódolónak átadott) képkockák száma.
+   */
+  public int getFrames() {
+    return frames;
+  }
+
+  /**
+   * @return Az összes képkocka száma.
+   */
+  public int getTotalFrames() {
+    return totalFrames;
+  }
+
+  /**
+   * @return Az eddig kiírt bájtok száma.
+   */
+  public long getBytes() {
+    return bytes;
+  }
+
+  /**
+   * @return A generálás kezdete óta eltelt idő nanoszekundumban.
+   */
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  /**
+   * @return Az előrehaladás százalékban (0–100).
+   */
+  public int getPercent() {
+    return totalFrames > 0 ? (int) ((long) frames * 100 / totalFrames) : 0;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d/%d frames, %d bytes, %.2f s", frames, totalFrames, bytes, elapsedNanos / 1e9);
+  }
+}
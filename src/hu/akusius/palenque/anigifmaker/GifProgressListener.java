@@ -0,0 +1,15 @@
+package hu.akusius.palenque.anigifmaker;
+
+/**
+ * A GIF-generálás előrehaladásának figyelője.
+ * @author Bujdosó Ákos
+ */
+public interface GifProgressListener {
+
+  /**
+   * Az előrehaladás megváltozott (minden kiírt képkocka után).
+   * A generálást végző szálon hívódik meg, ezért gyorsan vissza kell térnie.
+   * @param progress Az előrehaladás pillanatnyi állapota.
+   */
+  void progressChanged(GifProgress progress);
+}
@@ -0,0 +1,207 @@
+package hu.akusius.palenque.anigifmaker;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Egy aszinkron GIF-generálás kezelője (lásd
+ * {@link GifMaker#makeGifAsync(GenerateParams, OutputStream, int, Executor, GifProgressListener)}).
+ * <p>
+ * A {@link #cancel(boolean) cancel(true)} a futó generálást a képkockák kirajzolása és tömörítése
+ * közben is megszakítja, a GIF lezárása nélkül; {@code cancel(false)} esetén a generálás a következő
+ * képkocka előtt áll le, és a már kiírt kockákból (a korábbi viselkedésnek megfelelően) lezárt GIF készül.
+ * A befejeződésről a {@link #addCompletionListener(Runnable)} révén lehet értesítést kérni.
+ * @author Bujdosó Ákos
+ */
+public final class GifTask implements Future<Void> {
+
+  private final GenerateParams params;
+
+  private final OutputStream os;
+
+  private final boolean closeStream;
+
+  private final int threads;
+
+  private final GifProgressListener listener;
+
+  private final FutureTask<Void> future;
+
+  /**
+   * A generálást vezérlő külső {@link Future} (pl. {@code SwingWorker}), amelynek megszakítása
+   * szintén leállítja a generálást, vagy {@code null}.
+   */
+  private volatile Future<?> owner;
+
+  private final List<Runnable> completionListeners = new ArrayList<>(1);
+
+  private boolean completed;
+
+  private volatile GifProgress progress;
+
+  private long startTime;
+
+  GifTask(GenerateParams params, OutputStream os, boolean closeStream, int threads, GifProgressListener listener) {
+    if (params == null || os == null || threads < 1) {
+      throw new IllegalArgumentException();
+    }
+    this.params = params;
+    this.os = os;
+    this.closeStream = closeStream;
+    this.threads = threads;
+    this.listener = listener;
+    this.progress = new GifProgress(0, 0, 0L, 0L);
+    this.future = new FutureTask<Void>(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        generate();
+        return null;
+      }
+    }) {
+      @Override
+      protected void done() {
+        fireCompleted();
+      }
+    };
+  }
+
+  private void generate() throws Exception {
+    startTime = System.nanoTime();
+    try {
+      GifMaker.writeGif(params, os, threads, this);
+    } finally {
+      if (closeStream) {
+        os.close();
+      }
+    }
+  }
+
+  /**
+   * A generálás elindítása a megadott végrehajtón.
+   */
+  void start(Executor executor) {
+    executor.execute(future);
+  }
+
+  /**
+   * A generálást vezérlő külső {@link Future} beállítása (a generálás elindítása előtt).
+   * @param owner A külső {@link Future}, amelynek megszakítása szintén leállítja a generálást.
+   */
+  void setOwner(Future<?> owner) {
+    this.owner = owner;
+  }
+
+  /**
+   * @return {@code true}, ha a generálást (ezen a kezelőn vagy a külső {@link Future}-ön keresztül) megszakították.
+   */
+  boolean isStopRequested() {
+    Future<?> o = owner;
+    return future.isCancelled() || (o != null && o.isCancelled());
+  }
+
+  /**
+   * A generálás végrehajtása a hívó szálán.
+   * @throws Exception A generálás során keletkezett kivétel.
+   */
+  void execute() throws Exception {
+    future.run();
+    try {
+      future.get();
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw ex;
+    }
+  }
+
+  /**
+   * Az előrehaladás frissítése (a generálást végző szálon).
+   */
+  void update(int frames, int totalFrames, long bytes) {
+    GifProgress p = new GifProgress(frames, totalFrames, bytes, System.nanoTime() - startTime);
+    progress = p;
+    if (listener != null) {
+      listener.progressChanged(p);
+    }
+  }
+
+  /**
+   * @return A generálási paraméterek.
+   */
+  public GenerateParams getParams() {
+    return params;
+  }
+
+  /**
+   * @return Az előrehaladás legutóbbi állapota.
+   */
+  public GifProgress getProgress() {
+    return progress;
+  }
+
+  /**
+   * Értesítés kérése a generálás befejeződéséről (sikeres, sikertelen vagy megszakított).
+   * A figyelő a befejeződést kiváltó szálon fut le; ha a generálás már befejeződött, azonnal, a hívó szálán.
+   * @param listener A befejeződéskor futtatandó kód.
+   */
+  public void addCompletionListener(Runnable listener) {
+    if (listener == null) {
+      throw new IllegalArgumentException();
+    }
+    synchronized (completionListeners) {
+      if (!completed) {
+        completionListeners.add(listener);
+        return;
+      }
+    }
+    listener.run();
+  }
+
+  private void fireCompleted() {
+    Runnable[] listeners;
+    synchronized (completionListeners) {
+      completed = true;
+      listeners = completionListeners.toArray(new Runnable[completionListeners.size()]);
+      completionListeners.clear();
+    }
+    for (Runnable l : listeners) {
+      l.run();
+    }
+  }
+
+  @Override
+  public boolean cancel(boolean mayInterruptIfRunning) {
+    return future.cancel(mayInterruptIfRunning);
+  }
+
+  @Override
+  public boolean isCancelled() {
+    return future.isCancelled();
+  }
+
+  @Override
+  public boolean isDone() {
+    return future.isDone();
+  }
+
+  @Override
+  public Void get() throws InterruptedException, ExecutionException {
+    return future.get();
+  }
+
+  @Override
+  public Void get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+    return future.get(timeout, unit);
+  }
+
+  @Override
+  public String toString() {
+    return "GifTask[" + (isCancelled() ? "cancelled" : isDone() ? "done" : "running") + ", " + progress + "]";
+  }
+}
@@ -0,0 +1,121 @@
+package hu.akusius.palenque.anigifmaker;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+
+/**
+ * A képkockák szürkeárnyalatainak csökkentése adott számú, egyenletesen elosztott szintre,
+ * előre kiszámított keresőtáblákkal, opcionálisan rendezett (Bayer-mátrixos) ditheringgel.
+ * Feltételezi, hogy a képkockák színindexei megegyeznek a szürkeárnyalat értékével
+ * (lásd {@link FrameGenerator}).
+ * A példányok nem módosulnak, így párhuzamosan is használhatók.
+ * @author Bujdosó Ákos
+ */
+final class GrayQuantizer {
+
+  /**
+   * A rendezett dithering küszöbmátrixa.
+   */
+  private static final int[][] BAYER = new int[][]{
+    {0, 8, 2, 10},
+    {12, 4, 14, 6},
+    {3, 11, 1, 9},
+    {15, 7, 13, 5}
+  };
+
+  private static final int BAYER_SIZE = 4;
+
+  private final int levels;
+
+  /**
+   * A keresőtáblák; dithering esetén a küszöbmátrix minden pozíciójához egy, egyébként egyetlen.
+   */
+  private final byte[][] luts;
+
+  private final boolean[] usedColors = new boolean[256];
+
+  /**
+   * Új kvantáló létrehozása.
+   * @param levels A szürkeárnyalatok száma.
+   * @param dither {@code true} esetén rendezett dithering is történik.
+   */
+  GrayQuantizer(int levels, boolean dither) {
+    if (levels < 2 || levels > 256) {
+      throw new IllegalArgumentException();
+    }
+    this.levels = levels;
+
+    if (dither) {
+      luts = new byte[BAYER_SIZE * BAYER_SIZE][];
+      for (int y = 0; y < BAYER_SIZE; y++) {
+        for (int x = 0; x < BAYER_SIZE; x++) {
+          double threshold = (BAYER[y][x] + 0.5) / (BAYER_SIZE * BAYER_SIZE);
+          luts[y * BAYER_SIZE + x] = createLut(threshold);
+        }
+      }
+    } else {
+      luts = new byte[][]{createLut(0.5)};
+    }
+
+    for (int level = 0; level < levels; level++) {
+      usedColors[getLevelValue(level)] = true;
+    }
+  }
+
+  private byte[] createLut(double threshold) {
+    byte[] lut = new byte[256];
+    for (int value = 0; value < 256; value++) {
+      int level = (int) Math.floor(value * (levels - 1) / 255.0 + threshold);
+      lut[value] = (byte) getLevelValue(Math.min(level, levels - 1));
+    }
+    return lut;
+  }
+
+  private int getLevelValue(int level) {
+    return (int) Math.round(level * 255.0 / (levels - 1));
+  }
+
+  /**
+   * @return A szürkeárnyalatok száma.
+   */
+  int getLevels() {
+    return levels;
+  }
+
+  /**
+   * @return A kvantált képkockákban előforduló színindexek (256 elemű tömb).
+   */
+  boolean[] getUsedColors() {
+    return usedColors.clone();
+  }
+
+  /**
+   * A képkocka kvantálása helyben.
+   * @param image A kvantálandó (szürke palettájú indexelt vagy szürkeárnyalatos) képkocka.
+   */
+  void apply(BufferedImage image) {
+    if (image.getType() != BufferedImage.TYPE_BYTE_INDEXED && image.getType() != BufferedImage.TYPE_BYTE_GRAY) {
+      throw new IllegalArgumentException();
+    }
+    byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+    int width = image.getWidth();
+    int height = image.getHeight();
+
+    if (luts.length == 1) {
+      byte[] lut = luts[0];
+      for (int i = 0; i < pixels.length; i++) {
+        pixels[i] = lut[pixels[i] & 0xFF];
+      }
+      return;
+    }
+
+    for (int y = 0; y < height; y++) {
+      int row = (y % BAYER_SIZE) * BAYER_SIZE;
+      int offset = y * width;
+      for (int x = 0; x < width; x++) {
+        byte[] lut = luts[row + x % BAYER_SIZE];
+        pixels[offset + x] = lut[pixels[offset + x] & 0xFF];
+      }
+    }
+  }
+}
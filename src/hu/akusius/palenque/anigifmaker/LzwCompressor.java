@@ -0,0 +1,229 @@
+package hu.akusius.palenque.anigifmaker;
+
+import hu.akusius.palenque.anigifmaker.util.CancelUtils;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Újrahasznosítható LZW-tömörítő a GIF képpontadataihoz.
+ * Bájtra azonos kimenetet ad az {@link org.other.AnimatedGifEncoder} eredeti kódolójával
+ * (ugyanaz a hash-tábla és ugyanaz a táblatörlési stratégia), de a tábláit és a kimeneti pufferét
+ * a képkockák között megtartja, a képpontokat közvetlenül a tömbből olvassa,
+ * az adatblokkokat pedig rögtön a kimeneti pufferbe írja.
+ * Egy példányt egyszerre csak egy szál használhat.
+ * Ha a tömörítést végző szálat megszakítják, a tömörítés {@link java.util.concurrent.CancellationException}
+ * kivétellel leáll.
+ * @author Bujdosó Ákos
+ */
+final class LzwCompressor {
+
+  private static final int BITS = 12;
+
+  private static final int MAX_MAX_CODE = 1 << BITS;
+
+  /**
+   * A hash-tábla mérete (80%-os telítettség).
+   */
+  private static final int HSIZE = 5003;
+
+  /**
+   * A hash-kód eltolása a tábla méretéhez igazítva.
+   */
+  private static final int HSHIFT = 4;
+
+  /**
+   * Egy adatblokk maximális hossza (az eredeti kódolóval megegyezően).
+   */
+  private static final int BLOCK_SIZE = 254;
+
+  /**
+   * Ennyi képpontonként ellenőrzi a szál megszakítását.
+   */
+  private static final int CANCEL_CHECK_INTERVAL = 0x10000;
+
+  private final int[] htab = new int[HSIZE];
+
+  private final int[] codetab = new int[HSIZE];
+
+  private byte[] buffer = new byte[0];
+
+  private int pos;
+
+  private int blockStart;
+
+  private int blockCount;
+
+  private int accum;
+
+  private int accumBits;
+
+  private int nBits;
+
+  private int maxCode;
+
+  private int initBits;
+
+  private int clearCode;
+
+  private int freeEnt;
+
+  private boolean clearFlag;
+
+  /**
+   * A képpontok tömörítése a belső pufferbe.
+   * @param pixels A képpontok színindexei.
+   * @param length A tömörítendő képpontok száma (a tömb elejétől).
+   * @param colorDepth A színmélység.
+   * @return A tömörített adatok hossza a {@link #getBuffer()} pufferben.
+   */
+  int compress(byte[] pixels, int length, int colorDepth) {
+    if (length < 1 || length > pixels.length || colorDepth < 1 || colorDepth > 8) {
+      throw new IllegalArgumentException();
+    }
+
+    int initCodeSize = Math.max(2, colorDepth);
+    ensureCapacity(length);
+    pos = 0;
+    buffer[pos++] = (byte) initCodeSize;
+    blockStart = pos++;
+    blockCount = 0;
+    accum = 0;
+    accumBits = 0;
+
+    initBits = initCodeSize + 1;
+    nBits = initBits;
+    maxCode = (1 << nBits) - 1;
+    clearCode = 1 << initCodeSize;
+    freeEnt = clearCode + 2;
+    clearFlag = false;
+
+    final int[] ht = htab;
+    final int[] ct = codetab;
+    Arrays.fill(ht, -1);
+    output(clearCode);
+
+    int ent = pixels[0] & 0xFF;
+    for (int p = 1; p < length;) {
+      CancelUtils.checkCancelled();
+      int chunkEnd = Math.min(length, p + CANCEL_CHECK_INTERVAL);
+      pixel:
+      for (; p < chunkEnd; p++) {
+        int c = pixels[p] & 0xFF;
+        int fcode = (c << BITS) + ent;
+        int i = (c << HSHIFT) ^ ent;
+
+        int h = ht[i];
+        if (h == fcode) {
+          ent = ct[i];
+          continue;
+        }
+        if (h >= 0) {
+          int disp = i == 0 ? 1 : HSIZE - i;
+          do {
+            if ((i -= disp) < 0) {
+              i += HSIZE;
+            }
+            h = ht[i];
+            if (h == fcode) {
+              ent = ct[i];
+              continue pixel;
+            }
+          } while (h >= 0);
+        }
+
+        output(ent);
+        ent = c;
+        if (freeEnt < MAX_MAX_CODE) {
+          ct[i] = freeEnt++;
+          ht[i] = fcode;
+        } else {
+          Arrays.fill(ht, -1);
+          freeEnt = clearCode + 2;
+          clearFlag = true;
+          output(clearCode);
+        }
+      }
+    }
+
+    output(ent);
+    output(clearCode + 1);  // EOF
+    while (accumBits > 0) {
+      putByte(accum);
+      accum >>= 8;
+      accumBits -= 8;
+    }
+
+    if (blockCount > 0) {
+      buffer[blockStart] = (byte) blockCount;
+    } else {
+      pos--;
+    }
+    buffer[pos++] = 0;  // Block Terminator
+    return pos;
+  }
+
+  /**
+   * A képpontok tömörítése és kiírása.
+   * @param pixels A képpontok színindexei.
+   * @param length A tömörítendő képpontok száma (a tömb elejétől).
+   * @param colorDepth A színmélység.
+   * @param os A kiírás célja.
+   * @throws IOException Hiba történt a kiírás során.
+   */
+  void encode(byte[] pixels, int length, int colorDepth, OutputStream os) throws IOException {
+    int len = compress(pixels, length, colorDepth);
+    os.write(buffer, 0, len);
+  }
+
+  /**
+   * @return A legutóbbi tömörítés eredményét tartalmazó puffer (a következő tömörítésig érvényes).
+   */
+  byte[] getBuffer() {
+    return buffer;
+  }
+
+  private void output(int code) {
+    accum |= code << accumBits;
+    accumBits += nBits;
+    while (accumBits >= 8) {
+      putByte(accum);
+      accum >>= 8;
+      accumBits -= 8;
+    }
+
+    if (clearFlag) {
+      nBits = initBits;
+      maxCode = (1 << nBits) - 1;
+      clearFlag = false;
+    } else if (freeEnt > maxCode) {
+      nBits++;
+      maxCode = nBits == BITS ? MAX_MAX_CODE : (1 << nBits) - 1;
+    }
+  }
+
+  private void putByte(int b) {
+    buffer[pos++] = (byte) b;
+    if (++blockCount == BLOCK_SIZE) {
+      buffer[blockStart] = (byte) BLOCK_SIZE;
+      blockStart = pos++;
+      blockCount = 0;
+    }
+  }
+
+  /**
+   * A kimeneti puffer méretének biztosítása a legrosszabb esetre (minden képpont egy 12 bites kód,
+   * plusz a táblatörlések, a blokkfejlécek és a lezárás).
+   */
+  private void ensureCapacity(int length) {
+    long codes = length + length / (MAX_MAX_CODE - 258) + 4L;
+    long data = codes * BITS / 8 + 2;
+    long needed = data + data / BLOCK_SIZE + 8;
+    if (needed > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException();
+    }
+    if (buffer.length < needed) {
+      buffer = new byte[(int) needed];
+    }
+  }
+}
@@ -3,27 +3,386 @@ package hu.akusius.palenque.anigifmaker;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferByte;
 import java.awt.image.IndexColorModel;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.*;
 import org.other.AnimatedGifEncoder;
 
 /**
  * A {@link AnimatedGifEncoder} kiterjesztése és egyszerűsítése.
  * Indexelt képeket vár, és feltételezi, hogy mindegyiknek azonos a színmodellje.
- * Az egymás utáni képeket nem optimalizálja, ehhez külön programot érdemes használni (pl. gifsicle).
+ * Szürkeárnyalatos ({@link BufferedImage#TYPE_BYTE_GRAY}) képeket is elfogad: ezek szürke szintjei
+ * konverzió nélkül, színindexként kerülnek kódolásra a szürke szinteket tartalmazó palettával.
+ * Az egymás után következő, képpontra azonos képkockákat egyetlen képpé vonja össze,
+ * amelynek a késleltetése a kockák késleltetéseinek összege.
+ * Az első utáni képkockákból csak az előzőhöz képest megváltozott képpontokat befoglaló téglalapot
+ * kódolja (a kockák nem törlődnek, hanem egymásra rajzolódnak). A téglalapon belül a változatlan
+ * képpontok helyére egy, a kockában máshol nem használt, átlátszónak jelölt színindex kerül,
+ * így az egyforma sorozatok jobban tömöríthetők.
+ * <p>
+ * Ha előre ismert, hogy a képkockák a színek közül melyeket használják ({@link #setUsedColors(boolean[])}),
+ * akkor csak ezek kerülnek a globális palettára (tömörítve, egy külön átlátszó bejegyzéssel kiegészítve),
+ * és az LZW-kódolás a palettához tartozó legkisebb kódmérettel történik.
+ * <p>
+ * A képpontok LZW-tömörítését az újrahasznosítható {@link LzwCompressor} végzi.
+ * Párhuzamos módban ({@link #setCompressionExecutor(Executor, int)}) a képkockák LZW-tömörítése
+ * egy szálkészleten, saját pufferekbe történik, a kész blokkok pedig a beérkezés sorrendjében
+ * kerülnek a kimenetre. Az eredmény bájtra azonos a soros kódolás eredményével.
  * @author Bujdosó Ákos
- * @see http://www.lcdf.org/gifsicle/
  */
 public final class PalenqueGifEncoder extends AnimatedGifEncoder {
 
   public static final String COMMENT_ENCODING = "UTF-8";
 
+  /**
+   * A Graphic Control Extension-ben megadható legnagyobb késleltetés (század másodpercben).
+   */
+  private static final int MAX_DELAY = 0xFFFF;
+
+  /**
+   * A párhuzamos kódolás szálankénti tömörítői.
+   */
+  private static final ThreadLocal<LzwCompressor> threadCompressors = new ThreadLocal<LzwCompressor>() {
+    @Override
+    protected LzwCompressor initialValue() {
+      return new LzwCompressor();
+    }
+  };
+
   private String comment;
 
+  private boolean mergeIdenticalFrames = true;
+
+  private boolean cropFrames = true;
+
+  private boolean transparentDelta = true;
+
+  /**
+   * A képkockák által használt színindexek, vagy {@code null}, ha a teljes paletta használható.
+   */
+  private boolean[] usedColors;
+
+  /**
+   * Az eredeti színindexek leképezése a tömörített palettára (-1: nem használt szín),
+   * vagy {@code null}, ha a teljes palettát használjuk.
+   */
+  private int[] colorMap;
+
+  /**
+   * A paletta bitmélysége.
+   */
+  private int paletteDepth;
+
+  /**
+   * Az átlátszónak fenntartott palettabejegyzés, vagy -1, ha nincs ilyen.
+   */
+  private int reservedTransIndex = -1;
+
+  /**
+   * Az utoljára kiírt képkocka (teljes) képpontjai.
+   */
+  private byte[] previousPixels;
+
+  /**
+   * A szürkeárnyalatos képkockák palettája: az i. színindex az (i, i, i) szürke.
+   */
+  private static final IndexColorModel GRAY_PALETTE;
+
+  static {
+    byte[] levels = new byte[256];
+    for (int i = 0; i < levels.length; i++) {
+      levels[i] = (byte) i;
+    }
+    GRAY_PALETTE = new IndexColorModel(8, levels.length, levels, levels, levels);
+  }
+
+  private int frameLeft;
+
+  private int frameTop;
+
+  private int frameWidth;
+
+  private int frameHeight;
+
+  /**
+   * Az aktuális képkocka átlátszó színindexe, vagy -1, ha nincs.
+   */
+  private int frameTransIndex = -1;
+
+  /**
+   * A visszatartott (még ki nem írt) képkocka, amihez a vele azonos kockák hozzávonhatók.
+   */
+  private BufferedImage heldFrame;
+
+  /**
+   * A visszatartott képkocka eddig összegyűjtött késleltetése.
+   */
+  private int heldDelay;
+
+  private Executor compressionExecutor;
+
+  private int maxPendingFrames;
+
+  private final Deque<PendingFrame> pendingFrames = new ArrayDeque<>();
+
+  private Future<byte[]> currentCompression;
+
+  private boolean compressionFailed;
+
+  /**
+   * A soros kódolás tömörítője.
+   */
+  private final LzwCompressor compressor = new LzwCompressor();
+
   public void setComment(String comment) {
     this.comment = comment;
   }
 
+  /**
+   * Az azonos képkockák összevonásának beállítása (alapértelmezésben be van kapcsolva).
+   * Bekapcsolt állapotban a képkockák eggyel később kerülnek kiírásra.
+   * @param mergeIdenticalFrames {@code true}, ha az egymás utáni azonos képkockákat össze kell vonni.
+   */
+  public void setMergeIdenticalFrames(boolean mergeIdenticalFrames) {
+    if (heldFrame != null) {
+      throw new IllegalStateException();
+    }
+    this.mergeIdenticalFrames = mergeIdenticalFrames;
+  }
+
+  /**
+   * A képkockák vágásának beállítása (alapértelmezésben be van kapcsolva).
+   * Bekapcsolt állapotban az első utáni kockákból csak az előző kockához képest megváltozott
+   * téglalap kerül kiírásra, ezért az utoljára hozzáadott képkockát a következő hozzáadásáig
+   * nem szabad módosítani. Az első képkocka hozzáadása előtt kell meghívni.
+   * @param cropFrames {@code true}, ha a képkockákat a megváltozott területre kell vágni.
+   */
+  public void setCropFrames(boolean cropFrames) {
+    if (started && !firstFrame) {
+      throw new IllegalStateException();
+    }
+    this.cropFrames = cropFrames;
+  }
+
+  /**
+   * Az átlátszó különbségi kódolás beállítása (alapértelmezésben be van kapcsolva).
+   * Bekapcsolt állapotban az első utáni kockákban az előző kockához képest változatlan képpontok
+   * helyére egy átlátszó színindex kerül. Az első képkocka hozzáadása előtt kell meghívni.
+   * @param transparentDelta {@code true}, ha a változatlan képpontokat átlátszóként kell kódolni.
+   */
+  public void setTransparentDelta(boolean transparentDelta) {
+    if (started && !firstFrame) {
+      throw new IllegalStateException();
+    }
+    this.transparentDelta = transparentDelta;
+  }
+
+  /**
+   * A képkockák által használt színindexek megadása. Az első képkocka hozzáadása előtt kell meghívni.
+   * Ha meg vannak adva, akkor a globális paletta csak a használt színeket tartalmazza;
+   * ilyenkor egy nem használt színt tartalmazó képkocka érvénytelen.
+   * @param usedColors A színmodell bejegyzéseinek megfelelő (256 elemű) tömb, amiben a használt színek
+   * {@code true} értékűek. {@code null} esetén a teljes paletta kerül kiírásra.
+   */
+  public void setUsedColors(boolean[] usedColors) {
+    if (started && !firstFrame) {
+      throw new IllegalStateException();
+    }
+    if (usedColors != null && usedColors.length != 256) {
+      throw new IllegalArgumentException();
+    }
+    this.usedColors = usedColors != null ? usedColors.clone() : null;
+  }
+
+  /**
+   * A párhuzamos tömörítés beállítása. Az első képkocka hozzáadása előtt kell meghívni.
+   * Párhuzamos módban a hozzáadott képkockák képpontjai a tömörítés végéig használatban maradnak,
+   * ezért a képkockákat a hozzáadás után nem szabad módosítani.
+   * @param executor A tömörítést végző szálkészlet, vagy {@code null} a soros kódoláshoz.
+   * @param maxPendingFrames A legfeljebb ennyi tömörítés alatt álló kocka lehet egyszerre függőben;
+   * ezen felül a hozzáadás megvárja a legrégebbi kocka elkészültét.
+   */
+  public void setCompressionExecutor(Executor executor, int maxPendingFrames) {
+    if (started && !firstFrame) {
+      throw new IllegalStateException();
+    }
+    if (executor != null && maxPendingFrames < 1) {
+      throw new IllegalArgumentException();
+    }
+    this.compressionExecutor = executor;
+    this.maxPendingFrames = maxPendingFrames;
+  }
+
+  @Override
+  public boolean addFrame(BufferedImage im) {
+    if (!mergeIdenticalFrames) {
+      return writeFrame(im);
+    }
+    if (im == null || !started || compressionFailed) {
+      return false;
+    }
+
+    if (heldFrame != null) {
+      if (heldDelay + delay <= MAX_DELAY && isSameFrame(heldFrame, im)) {
+        heldDelay += delay;
+        return true;
+      }
+      if (!writeHeldFrame()) {
+        return false;
+      }
+    }
+    heldFrame = im;
+    heldDelay = delay;
+    return true;
+  }
+
+  /**
+   * A visszatartott képkocka kiírása az összegyűjtött késleltetéssel.
+   * @return {@code true}, ha sikeres volt a kiírás.
+   */
+  private boolean writeHeldFrame() {
+    BufferedImage im = heldFrame;
+    heldFrame = null;
+    int frameDelay = delay;
+    delay = heldDelay;
+    try {
+      return writeFrame(im);
+    } finally {
+      delay = frameDelay;
+    }
+  }
+
+  /**
+   * Megvizsgálja, hogy a két képkocka képpontjai azonosak-e.
+   */
+  private static boolean isSameFrame(BufferedImage im1, BufferedImage im2) {
+    return im1.getWidth() == im2.getWidth() && im1.getHeight() == im2.getHeight()
+            && Arrays.equals(getFrameData(im1), getFrameData(im2));
+  }
+
+  /**
+   * Egy képkocka kiírása (párhuzamos módban a tömörítés elindítása).
+   * @param im A kiírandó képkocka.
+   * @return {@code true}, ha sikeres volt a kiírás.
+   */
+  private boolean writeFrame(BufferedImage im) {
+    if (compressionExecutor == null) {
+      return super.addFrame(im);
+    }
+    if (im == null || !started || compressionFailed) {
+      return false;
+    }
+
+    // A fejléceket egy saját pufferbe írjuk, a képpontok tömörítése pedig a háttérben fut
+    OutputStream target = out;
+    ByteArrayOutputStream headers = new ByteArrayOutputStream(firstFrame ? 1024 : 32);
+    currentCompression = null;
+    out = headers;
+    boolean ok;
+    try {
+      ok = super.addFrame(im);
+    } finally {
+      out = target;
+    }
+    if (!ok || currentCompression == null) {
+      compressionFailed = true;
+      return false;
+    }
+    pendingFrames.add(new PendingFrame(headers.toByteArray(), currentCompression));
+    currentCompression = null;
+
+    try {
+      writePendingFrames(maxPendingFrames);
+      return true;
+    } catch (IOException | InterruptedException ex) {
+      if (ex instanceof InterruptedException) {
+        Thread.currentThread().interrupt();
+      }
+      abortPendingFrames();
+      return false;
+    }
+  }
+
+  @Override
+  public boolean finish() {
+    boolean held = true;
+    if (heldFrame != null) {
+      held = started && writeHeldFrame();
+      heldFrame = null;
+    }
+    if (compressionExecutor != null && started) {
+      try {
+        writePendingFrames(0);
+      } catch (IOException | InterruptedException ex) {
+        if (ex instanceof InterruptedException) {
+          Thread.currentThread().interrupt();
+        }
+        abortPendingFrames();
+      }
+    }
+    boolean ok = super.finish() && !compressionFailed && held;
+    compressionFailed = false;
+    previousPixels = null;
+    return ok;
+  }
+
+  /**
+   * A kész (és sorrendben következő) képkockák kiírása.
+   * @param maxPending Ennyi kocka maradhat függőben; a többit megvárja.
+   */
+  private void writePendingFrames(int maxPending) throws IOException, InterruptedException {
+    while (!pendingFrames.isEmpty()) {
+      PendingFrame pf = pendingFrames.peek();
+      if (pendingFrames.size() <= maxPending && !pf.compression.isDone()) {
+        break;
+      }
+      byte[] data;
+      try {
+        data = pf.compression.get();
+      } catch (ExecutionException ex) {
+        throw new IOException(ex.getCause());
+      }
+      pendingFrames.poll();
+      out.write(pf.headers);
+      out.write(data);
+    }
+  }
+
+  private void abortPendingFrames() {
+    compressionFailed = true;
+    for (PendingFrame pf : pendingFrames) {
+      pf.compression.cancel(true);
+    }
+    pendingFrames.clear();
+  }
+
+  @Override
+  protected void writePixels() throws IOException {
+    if (compressionExecutor == null) {
+      compressor.encode(indexedPixels, frameWidth * frameHeight, colorDepth, out);
+      return;
+    }
+
+    final int w = frameWidth;
+    final int h = frameHeight;
+    final byte[] pixels = indexedPixels;
+    final int depth = colorDepth;
+    FutureTask<byte[]> task = new FutureTask<>(new Callable<byte[]>() {
+      @Override
+      public byte[] call() throws Exception {
+        LzwCompressor c = threadCompressors.get();
+        int len = c.compress(pixels, w * h, depth);
+        return Arrays.copyOf(c.getBuffer(), len);
+      }
+    });
+    compressionExecutor.execute(task);
+    currentCompression = task;
+  }
+
   @Override
   protected void writeExtensions() throws IOException {
     if (comment != null && !comment.isEmpty()) {
@@ -57,50 +416,255 @@ public final class PalenqueGifEncoder extends AnimatedGifEncoder {
 
   @Override
   protected void getImagePixels() {
-    int w = image.getWidth();
-    int h = image.getHeight();
-    int type = image.getType();
-    if (w != width || h != height || type != BufferedImage.TYPE_BYTE_INDEXED) {
+    if (image.getWidth() != width || image.getHeight() != height) {
       throw new RuntimeException("Invalid frame!");
     }
-    pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+    pixels = getFrameData(image);
+  }
+
+  /**
+   * Egy képkocka képpontjainak lekérdezése.
+   * @param im A képkocka.
+   * @return A képkocka (színindexeket tartalmazó) képpontjai; szürkeárnyalatos képnél a szürke szintek.
+   */
+  private static byte[] getFrameData(BufferedImage im) {
+    if (im.getType() != BufferedImage.TYPE_BYTE_INDEXED && im.getType() != BufferedImage.TYPE_BYTE_GRAY) {
+      throw new RuntimeException("Invalid frame!");
+    }
+    return ((DataBufferByte) im.getRaster().getDataBuffer()).getData();
   }
 
   @Override
   protected void analyzePixels() {
     if (firstFrame) {
-      int colorNum = 256;
-      colorTab = new byte[colorNum * 3];
-      IndexColorModel cm = (IndexColorModel) image.getColorModel();
-      if (cm.getPixelSize() != 8 || cm.getMapSize() != colorNum) {
-        throw new RuntimeException("Invalid palette!");
+      buildPalette(image.getType() == BufferedImage.TYPE_BYTE_GRAY
+              ? GRAY_PALETTE : (IndexColorModel) image.getColorModel());
+    }
+
+    if (transparent != null) {
+      throw new RuntimeException("Invalid frame!");
+    }
+
+    if (firstFrame) {
+      setFrameArea(pixels, 0, 0, width, height, false);
+    } else if (cropFrames) {
+      cropChangedArea(pixels);
+      dispose = 1;  // Nincs törlés, a következő kocka erre rajzolódik
+    } else {
+      setFrameArea(pixels, 0, 0, width, height, transparentDelta);
+      if (transparentDelta) {
+        dispose = 1;
       }
+    }
+    previousPixels = pixels;
+    pixels = null;
+    colorDepth = paletteDepth;
+    palSize = paletteDepth - 1;
+  }
+
+  /**
+   * A globális paletta összeállítása a színmodellből és a használt színekből.
+   * @param cm A képkockák színmodellje.
+   */
+  private void buildPalette(IndexColorModel cm) {
+    int colorNum = 256;
+    if (cm.getPixelSize() != 8 || cm.getMapSize() != colorNum) {
+      throw new RuntimeException("Invalid palette!");
+    }
+
+    int used = 0;
+    if (usedColors != null) {
+      for (boolean u : usedColors) {
+        if (u) {
+          used++;
+        }
+      }
+    }
+    int entries = used + (transparentDelta ? 1 : 0);
+
+    if (usedColors == null || entries > colorNum) {
+      colorMap = null;
+      reservedTransIndex = -1;
+      paletteDepth = 8;
+      colorTab = new byte[colorNum * 3];
       for (int pixel = 0; pixel < colorNum; pixel++) {
-        int index = pixel * 3;
-        colorTab[index] = (byte) cm.getRed(pixel);
-        colorTab[index + 1] = (byte) cm.getGreen(pixel);
-        colorTab[index + 2] = (byte) cm.getBlue(pixel);
+        setPaletteEntry(pixel, cm, pixel);
       }
+      return;
     }
 
-    indexedPixels = pixels;
-    pixels = null;
-    colorDepth = 8;
-    palSize = 7;
-    if (transparent != null) {
-      throw new RuntimeException("Invalid frame!");
+    paletteDepth = 1;
+    while ((1 << paletteDepth) < entries) {
+      paletteDepth++;
+    }
+    colorTab = new byte[3 << paletteDepth];
+    colorMap = new int[colorNum];
+    int index = 0;
+    for (int pixel = 0; pixel < colorNum; pixel++) {
+      if (usedColors[pixel]) {
+        setPaletteEntry(index, cm, pixel);
+        colorMap[pixel] = index++;
+      } else {
+        colorMap[pixel] = -1;
+      }
+    }
+    reservedTransIndex = transparentDelta ? index : -1;
+  }
+
+  private void setPaletteEntry(int index, IndexColorModel cm, int pixel) {
+    int offset = index * 3;
+    colorTab[offset] = (byte) cm.getRed(pixel);
+    colorTab[offset + 1] = (byte) cm.getGreen(pixel);
+    colorTab[offset + 2] = (byte) cm.getBlue(pixel);
+  }
+
+  /**
+   * Az előző képkockához képest megváltozott képpontokat befoglaló téglalap kivágása.
+   * Ha semmi sem változott, akkor egyetlen (változatlan) képpont kerül kiírásra.
+   * @param current Az aktuális képkocka képpontjai.
+   */
+  private void cropChangedArea(byte[] current) {
+    byte[] previous = previousPixels;
+
+    int top = 0;
+    while (top < height && isSameRow(previous, current, top)) {
+      top++;
+    }
+    if (top == height) {
+      setFrameArea(current, 0, 0, 1, 1, transparentDelta);
+      return;
     }
+    int bottom = height - 1;
+    while (isSameRow(previous, current, bottom)) {
+      bottom--;
+    }
+
+    int left = width;
+    int right = -1;
+    for (int y = top; y <= bottom; y++) {
+      int offset = y * width;
+      int x = 0;
+      while (x < left && previous[offset + x] == current[offset + x]) {
+        x++;
+      }
+      left = x;
+      x = width - 1;
+      while (x > right && previous[offset + x] == current[offset + x]) {
+        x--;
+      }
+      right = x;
+    }
+
+    setFrameArea(current, left, top, right - left + 1, bottom - top + 1, transparentDelta);
+  }
+
+  private boolean isSameRow(byte[] previous, byte[] current, int y) {
+    int offset = y * width;
+    for (int i = offset, end = offset + width; i < end; i++) {
+      if (previous[i] != current[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * A képkocka megadott területének kimásolása (szükség esetén a tömörített palettára leképezve).
+   * Átlátszó különbségi kódolás esetén a változatlan képpontok helyére az átlátszó index kerül.
+   * @param delta {@code true}, ha átlátszó különbségi kódolást kell alkalmazni.
+   */
+  private void setFrameArea(byte[] current, int left, int top, int w, int h, boolean delta) {
+    int transIndex = -1;
+    if (delta) {
+      transIndex = reservedTransIndex >= 0 ? reservedTransIndex : findTransIndex(current, left, top, w, h);
+    }
+
+    byte[] area;
+    if (transIndex < 0 && colorMap == null) {
+      if (w == width && h == height) {
+        area = current;
+      } else {
+        area = new byte[w * h];
+        for (int y = 0; y < h; y++) {
+          System.arraycopy(current, (top + y) * width + left, area, y * w, w);
+        }
+      }
+    } else {
+      area = new byte[w * h];
+      byte[] previous = previousPixels;
+      int[] map = colorMap;
+      int i = 0;
+      for (int y = 0; y < h; y++) {
+        int offset = (top + y) * width + left;
+        for (int end = offset + w; offset < end; offset++) {
+          byte b = current[offset];
+          if (transIndex >= 0 && b == previous[offset]) {
+            area[i++] = (byte) transIndex;
+          } else if (map == null) {
+            area[i++] = b;
+          } else {
+            int index = map[b & 0xFF];
+            if (index < 0) {
+              throw new RuntimeException("Invalid frame!");
+            }
+            area[i++] = (byte) index;
+          }
+        }
+      }
+    }
+    frameTransIndex = transIndex;
+    indexedPixels = area;
+    frameLeft = left;
+    frameTop = top;
+    frameWidth = w;
+    frameHeight = h;
+  }
+
+  /**
+   * Egy olyan színindex keresése, ami a terület megváltozott képpontjai között nem fordul elő.
+   * @return A talált színindex, vagy -1, ha mindegyik előfordul.
+   */
+  private int findTransIndex(byte[] current, int left, int top, int w, int h) {
+    byte[] previous = previousPixels;
+    boolean[] used = usedEntry;
+    Arrays.fill(used, false);
+    for (int y = 0; y < h; y++) {
+      int offset = (top + y) * width + left;
+      for (int end = offset + w; offset < end; offset++) {
+        byte b = current[offset];
+        if (b != previous[offset]) {
+          used[b & 0xFF] = true;
+        }
+      }
+    }
+    for (int i = 0; i < used.length; i++) {
+      if (!used[i]) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  protected void writeGraphicCtrlExt() throws IOException {
+    out.write(0x21); // Extension Introducer
+    out.write(0xF9); // Graphic Control Label
+    out.write(4); // Block Size
+    int disp = dispose >= 0 ? dispose & 7 : 0;
+    out.write((disp << 2) | (frameTransIndex >= 0 ? 1 : 0));
+    writeShort(delay);
+    out.write(frameTransIndex >= 0 ? frameTransIndex : 0);
+    out.write(0); // Block Terminator
   }
 
   @Override
   protected void writeImageDesc() throws IOException {
-    boolean ff = firstFrame;
-    try {
-      firstFrame = true;  // Nincs LCT
-      super.writeImageDesc();
-    } finally {
-      firstFrame = ff;
-    }
+    out.write(0x2c); // Image Separator
+    writeShort(frameLeft);
+    writeShort(frameTop);
+    writeShort(frameWidth);
+    writeShort(frameHeight);
+    out.write(0); // Nincs LCT
   }
 
   @Override
@@ -109,6 +673,21 @@ public final class PalenqueGifEncoder extends AnimatedGifEncoder {
       // Nincs Local Color Table (csak Global)
       return;
     }
-    super.writePalette();
+    out.write(colorTab, 0, colorTab.length);
+  }
+
+  /**
+   * Egy fejléceiben már elkészült, de még tömörítés alatt álló képkocka.
+   */
+  private static final class PendingFrame {
+
+    final byte[] headers;
+
+    final Future<byte[]> compression;
+
+    PendingFrame(byte[] headers, Future<byte[]> compression) {
+      this.headers = headers;
+      this.compression = compression;
+    }
   }
 }
@@ -0,0 +1,399 @@
+package hu.akusius.palenque.anigifmaker.cli;
+
+import hu.akusius.palenque.anigifmaker.FrameGenerator;
+import hu.akusius.palenque.anigifmaker.GenerateParams;
+import hu.akusius.palenque.anigifmaker.GifCache;
+import hu.akusius.palenque.anigifmaker.GifCommentCollector;
+import hu.akusius.palenque.anigifmaker.GifMaker;
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parancssoros, grafikus felület nélküli (headless) kötegelt GIF-generálás.
+ * <p>
+ * A feladatok (jobok) megadhatók közvetlenül (JSON vagy {@code PQAGM:} sztringként),
+ * fájlként (JSON, {@code PQAGM:} sztring, vagy beágyazott paramétereket tartalmazó GIF),
+ * illetve {@code @lista} formában (soronként egy feladat).
+ * A feladatok párhuzamosan futnak, mindegyikről időmérés és átviteli sebesség kerül kiírásra.
+ * @author Bujdosó Ákos
+ */
+public final class BatchRenderer {
+
+  private static final String USAGE
+          = "Usage: java -cp PalenqueAniGifMaker.jar " + BatchRenderer.class.getName() + " [options] job...%n"
+          + "%n"
+          + "Jobs:%n"
+          + "  {...}              generate parameters as JSON%n"
+          + "  PQAGM:...          generate parameters as binary-ASCII string%n"
+          + "  <file>             file containing JSON or PQAGM: string, or GIF with embedded parameters%n"
+          + "  @<file>            list of jobs, one per line (empty lines and lines starting with # are skipped)%n"
+          + "%n"
+          + "Options:%n"
+          + "  -o, --output <dir> output directory (default: current directory)%n"
+          + "  -j, --jobs <n>     number of jobs rendered concurrently (default: %d)%n"
+          + "  -t, --threads <n>  number of threads per job (default: 1)%n"
+          + "  --cache <dir>      cache of generated GIFs (repeated jobs are copied from here)%n"
+          + "  --cache-size <MB>  maximum size of the cache (default: 1024)%n"
+          + "  -h, --help         print this help%n";
+
+  private static final double MB = 1024.0 * 1024.0;
+
+  /**
+   * A készülő kimeneti fájlok kiterjesztése.
+   */
+  private static final String TEMP_EXTENSION = ".tmp";
+
+  public static void main(String[] args) {
+    System.setProperty("java.awt.headless", "true");
+    System.exit(run(args, System.out, System.err));
+  }
+
+  /**
+   * A kötegelt generálás futtatása.
+   * @param args A parancssori paraméterek.
+   * @param out A kimenet.
+   * @param err A hibakimenet.
+   * @return A kilépési kód: 0, ha minden feladat sikeres volt; 1, ha volt sikertelen feladat;
+   * 2 érvénytelen paraméterek esetén.
+   */
+  static int run(String[] args, PrintStream out, PrintStream err) {
+    Path outputDir = Paths.get("");
+    int concurrentJobs = GifMaker.DEFAULT_THREADS;
+    int threadsPerJob = 1;
+    Path cacheDir = null;
+    long cacheSize = 1024;
+    List<String> specs = new ArrayList<>();
+
+    try {
+      for (int i = 0; i < args.length; i++) {
+        String arg = args[i];
+        switch (arg) {
+          case "-h":
+          case "--help":
+            out.printf(USAGE, GifMaker.DEFAULT_THREADS);
+            return 0;
+          case "-o":
+          case "--output":
+            outputDir = Paths.get(getValue(args, ++i, arg));
+            break;
+          case "-j":
+          case "--jobs":
+            concurrentJobs = getPositive(args, ++i, arg);
+            break;
+          case "-t":
+          case "--threads":
+            threadsPerJob = getPositive(args, ++i, arg);
+            break;
+          case "--cache":
+            cacheDir = Paths.get(getValue(args, ++i, arg));
+            break;
+          case "--cache-size":
+            cacheSize = getPositive(args, ++i, arg);
+            break;
+          default:
+            if (arg.startsWith("-") && arg.length() > 1) {
+              throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+            specs.add(arg);
+        }
+      }
+      if (specs.isEmpty()) {
+        throw new IllegalArgumentException("No jobs specified.");
+      }
+    } catch (IllegalArgumentException ex) {
+      err.println(ex.getMessage());
+      err.printf(USAGE, GifMaker.DEFAULT_THREADS);
+      return 2;
+    }
+
+    List<Job> jobs;
+    GifCache cache = null;
+    try {
+      jobs = parseJobs(specs);
+      if (jobs.isEmpty()) {
+        // Pl. üres vagy csak megjegyzéseket tartalmazó listafájl
+        err.println("No jobs specified.");
+        err.printf(USAGE, GifMaker.DEFAULT_THREADS);
+        return 2;
+      }
+      Files.createDirectories(outputDir);
+      assignOutputs(jobs, outputDir);
+      if (cacheDir != null) {
+        cache = new GifCache(cacheDir, cacheSize * 1024L * 1024L);
+      }
+    } catch (IOException | IllegalArgumentException ex) {
+      err.println("Error: " + ex.getMessage());
+      return 2;
+    }
+
+    return render(jobs, concurrentJobs, threadsPerJob, cache, out, err) == 0 ? 0 : 1;
+  }
+
+  private static String getValue(String[] args, int i, String option) {
+    if (i >= args.length) {
+      throw new IllegalArgumentException("Missing value for " + option);
+    }
+    return args[i];
+  }
+
+  private static int getPositive(String[] args, int i, String option) {
+    String value = getValue(args, i, option);
+    try {
+      int n = Integer.parseInt(value);
+      if (n >= 1) {
+        return n;
+      }
+    } catch (NumberFormatException ex) {
+      // Lent jelezzük
+    }
+    throw new IllegalArgumentException("Invalid value for " + option + ": " + value);
+  }
+
+  /**
+   * A feladatok beolvasása a megadott leírásokból (a listák kibontásával).
+   * @param specs A feladatok leírásai.
+   * @return A feladatok listája.
+   * @throws IOException Hiba történt valamelyik fájl beolvasása során.
+   * @throws IllegalArgumentException Érvénytelen feladat.
+   */
+  static List<Job> parseJobs(List<String> specs) throws IOException {
+    List<Job> jobs = new ArrayList<>();
+    for (String spec : specs) {
+      if (spec.startsWith("@")) {
+        Path list = Paths.get(spec.substring(1));
+        Path base = list.toAbsolutePath().getParent();
+        for (String line : Files.readAllLines(list, StandardCharsets.UTF_8)) {
+          line = line.trim();
+          if (line.isEmpty() || line.startsWith("#")) {
+            continue;
+          }
+          jobs.add(parseJob(line, base, jobs.size() + 1));
+        }
+      } else {
+        jobs.add(parseJob(spec, null, jobs.size() + 1));
+      }
+    }
+    return jobs;
+  }
+
+  /**
+   * Egy feladat beolvasása.
+   * @param spec A feladat leírása (JSON, {@code PQAGM:} sztring vagy fájl).
+   * @param base A relatív fájlnevek alapkönyvtára, vagy {@code null} az aktuális könyvtárhoz.
+   * @param num A feladat sorszáma (a közvetlenül megadott feladatok elnevezéséhez).
+   * @return A feladat.
+   * @throws IOException Hiba történt a fájl beolvasása során.
+   * @throws IllegalArgumentException Érvénytelen feladat.
+   */
+  static Job parseJob(String spec, Path base, int num) throws IOException {
+    String inlineName = String.format("job-%03d", num);
+    if (GenerateParams.isSerializedBinaryASCII(spec)) {
+      return new Job(inlineName, null, GenerateParams.deserializeBinaryASCII(spec));
+    }
+    if (spec.startsWith("{")) {
+      return new Job(inlineName, null, GenerateParams.deserialize(spec));
+    }
+
+    Path file = base != null ? base.resolve(spec) : Paths.get(spec);
+    if (!Files.isRegularFile(file)) {
+      throw new IllegalArgumentException("Job file not found: " + spec);
+    }
+    String name = file.getFileName().toString();
+    int dot = name.lastIndexOf('.');
+    if (dot > 0) {
+      name = name.substring(0, dot);
+    }
+
+    GenerateParams params;
+    if (isGif(file)) {
+      params = GenerateParams.deserializeBinaryASCIIOptional(GifCommentCollector.collectComments(file));
+      if (params == null) {
+        throw new IllegalArgumentException("No embedded parameters in " + spec);
+      }
+    } else {
+      String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim();
+      try {
+        params = GenerateParams.isSerializedBinaryASCII(content)
+                ? GenerateParams.deserializeBinaryASCII(content) : GenerateParams.deserialize(content);
+      } catch (IllegalArgumentException ex) {
+        throw new IllegalArgumentException("Invalid job file: " + spec, ex);
+      }
+    }
+    return new Job(name, file, params);
+  }
+
+  private static boolean isGif(Path file) throws IOException {
+    byte[] header = new byte[3];
+    try (InputStream is = Files.newInputStream(file)) {
+      return is.read(header) == 3 && header[0] == 'G' && header[1] == 'I' && header[2] == 'F';
+    }
+  }
+
+  /**
+   * A kimeneti fájlok hozzárendelése a feladatokhoz (az ütközések, illetve a forrásfájlok felülírásának elkerülésével).
+   */
+  private static void assignOutputs(List<Job> jobs, Path outputDir) {
+    Set<Path> used = new HashSet<>();
+    for (Job job : jobs) {
+      if (job.source != null) {
+        used.add(job.source.toAbsolutePath().normalize());
+      }
+    }
+    for (Job job : jobs) {
+      Path output = outputDir.resolve(job.name + ".gif");
+      for (int i = 2; !used.add(output.toAbsolutePath().normalize()); i++) {
+        output = outputDir.resolve(job.name + "-" + i + ".gif");
+      }
+      job.output = output;
+    }
+  }
+
+  /**
+   * A feladatok legenerálása.
+   * @return A sikertelen feladatok száma.
+   */
+  private static int render(List<Job> jobs, int concurrentJobs, int threadsPerJob, GifCache cache,
+          PrintStream out, PrintStream err) {
+    out.printf("Rendering %d job(s), %d concurrently, %d thread(s) per job.%n", jobs.size(), concurrentJobs, threadsPerJob);
+
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrentJobs, jobs.size()), new JobThreadFactory());
+    CompletionService<Job> cs = new ExecutorCompletionService<>(executor);
+    for (Job job : jobs) {
+      cs.submit(new JobTask(job, threadsPerJob, cache));
+    }
+
+    long start = System.nanoTime();
+    int failed = 0;
+    long totalFrames = 0;
+    long totalBytes = 0;
+    try {
+      for (int i = 1; i <= jobs.size(); i++) {
+        Job job = cs.take().get();
+        String prefix = String.format("[%" + Integer.toString(jobs.size()).length() + "d/%d] %s", i, jobs.size(), job.output);
+        if (job.error != null) {
+          failed++;
+          err.printf("%s FAILED: %s%n", prefix, job.error);
+          continue;
+        }
+        double seconds = job.nanos / 1e9;
+        totalFrames += job.frames;
+        totalBytes += job.bytes;
+        out.printf(Locale.ROOT, "%s: %d frames, %.2f MB in %.2f s (%.1f frames/s, %.2f MB/s)%s%n",
+                prefix, job.frames, job.bytes / MB, seconds, job.frames / seconds, job.bytes / MB / seconds,
+                job.cached ? " [cached]" : "");
+      }
+    } catch (InterruptedException | ExecutionException ex) {
+      err.println("Error: " + ex);
+      return jobs.size();
+    } finally {
+      executor.shutdownNow();
+    }
+
+    double seconds = (System.nanoTime() - start) / 1e9;
+    if (cache != null) {
+      out.printf(Locale.ROOT, "Cache: %d hit(s), %d miss(es), %d file(s), %.2f MB%n",
+              cache.getHits(), cache.getMisses(), cache.getSize(), cache.getTotalBytes() / MB);
+    }
+    out.printf(Locale.ROOT, "Finished %d job(s), %d failed, in %.2f s: %d frames, %.2f MB (%.1f frames/s, %.2f MB/s)%n",
+            jobs.size(), failed, seconds, totalFrames, totalBytes / MB, totalFrames / seconds, totalBytes / MB / seconds);
+    return failed;
+  }
+
+  private BatchRenderer() {
+  }
+
+  /**
+   * Egy generálási feladat.
+   */
+  static final class Job {
+
+    final String name;
+
+    final Path source;
+
+    final GenerateParams params;
+
+    Path output;
+
+    int frames;
+
+    long bytes;
+
+    long nanos;
+
+    boolean cached;
+
+    String error;
+
+    Job(String name, Path source, GenerateParams params) {
+      this.name = name;
+      this.source = source;
+      this.params = params;
+    }
+  }
+
+  private static final class JobTask implements Callable<Job> {
+
+    private final Job job;
+
+    private final int threads;
+
+    private final GifCache cache;
+
+    JobTask(Job job, int threads, GifCache cache) {
+      this.job = job;
+      this.threads = threads;
+      this.cache = cache;
+    }
+
+    @Override
+    public Job call() {
+      long start = System.nanoTime();
+      try {
+        job.frames = new FrameGenerator(job.params.getAnimParams()).getNumberOfFrames();
+        // Ideiglenes fájlba készül, így sikertelen generálás után nem marad csonka kimenet
+        Path tmp = Files.createTempFile(job.output.toAbsolutePath().getParent(), job.name, TEMP_EXTENSION);
+        try {
+          if (cache != null) {
+            job.cached = cache.contains(job.params);
+            // A bejegyzés a kiírásig törlődhet (más feladat miatt), ezt a transferTo kezeli
+            try (FileChannel fc = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+              cache.transferTo(job.params, threads, fc);
+            }
+          } else {
+            GifMaker.makeGif(job.params, tmp.toFile(), threads);
+          }
+          Files.move(tmp, job.output, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+          Files.deleteIfExists(tmp);
+        }
+        job.bytes = Files.size(job.output);
+      } catch (Exception | AssertionError ex) {
+        job.error = ex.toString();
+      }
+      job.nanos = System.nanoTime() - start;
+      return job;
+    }
+  }
+
+  private static final class JobThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger threadNum = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, String.format("batch-%d", threadNum.incrementAndGet()));
+      t.setDaemon(true);
+      return t;
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package hu.akusius.palenque.anigifmaker.rendering;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+
+/**
+ * A kirajzolás célja: a renderelők által használt rajzolási műveletek.
+ * <p>
+ * A {@link Java2DCanvas} a Java2D-n keresztül rajzol, a {@link RasterCanvas} közvetlenül
+ * egy 8 bites szürkeárnyalatos pixeltömbbe.
+ * Az állapot (szín, átlátszóság) példányonként külön van, a {@link #create()} egy független
+ * állapotú, de ugyanoda rajzoló másolatot ad.
+ * @author Bujdosó Ákos
+ */
+public interface Canvas {
+
+  /**
+   * @return Egy új, ugyanoda rajzoló példány a jelenlegi állapot másolatával.
+   */
+  Canvas create();
+
+  /**
+   * A példány erőforrásainak felszabadítása; utána már nem használható.
+   */
+  void dispose();
+
+  /**
+   * @param color A rajzolás színe (az alfa értékkel együtt).
+   */
+  void setColor(Color color);
+
+  /**
+   * A rajzolás átlátszóságának beállítása ({@code AlphaComposite.SRC_OVER} szabály szerint).
+   * @param alpha Az átlátszóság (0: teljesen átlátszó, 1: átlátszatlan).
+   */
+  void setAlpha(float alpha);
+
+  /**
+   * Egy téglalap kitöltése a rajzolás színével.
+   * @param x A bal felső sarok X koordinátája.
+   * @param y A bal felső sarok Y koordinátája.
+   * @param width A szélesség.
+   * @param height A magasság.
+   */
+  void fillRect(int x, int y, int width, int height);
+
+  /**
+   * Egy élsimított vonal rajzolása a rajzolás színével.
+   * @param x1 A kezdőpont X koordinátája.
+   * @param y1 A kezdőpont Y koordinátája.
+   * @param x2 A végpont X koordinátája.
+   * @param y2 A végpont Y koordinátája.
+   */
+  void drawLine(int x1, int y1, int x2, int y2);
+
+  /**
+   * Egy élsimított töröttvonal rajzolása a rajzolás színével.
+   * @param xs A pontok X koordinátái.
+   * @param ys A pontok Y koordinátái.
+   * @param n A pontok száma.
+   */
+  void drawPolyline(int[] xs, int[] ys, int n);
+
+  /**
+   * Egy kép kirajzolása a megadott téglalapba átméretezve, a legjobb minőségben (bilineáris interpolációval).
+   * @param image A kép.
+   * @param x A bal felső sarok X koordinátája.
+   * @param y A bal felső sarok Y koordinátája.
+   * @param width A szélesség.
+   * @param height A magasság.
+   */
+  void drawImage(BufferedImage image, int x, int y, int width, int height);
+}
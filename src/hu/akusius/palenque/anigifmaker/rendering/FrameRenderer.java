@@ -1,8 +1,5 @@
 package hu.akusius.palenque.anigifmaker.rendering;
 
-import java.awt.AlphaComposite;
-import java.awt.Dimension;
-import java.awt.Graphics2D;
 import org.other.Matrix;
 
 /**
@@ -16,17 +13,359 @@ public final class FrameRenderer {
    */
   public static final int MAX_STEP = 21;
 
+  // A lépések négyzetrácsai (a képkockától független, befagyasztott geometria).
+  // Az osztály betöltésekor egyszer állnak elő, így egy képkocka kirajzolásakor
+  // már csak a százaléktól függő transzformációkat kell kiszámolni.
+
+  /**
+   * 0-6. lépés: a kiinduló négyzetrács (0. és 1. lépés), illetve a lépésenkénti változatai.
+   */
+  private static final Grid[] S0_6_GRIDS = new Grid[7];
+
+  /**
+   * 1-3. lépés: az elforgatva megjelenő négyzetrács.
+   */
+  private static final Grid[] S1_3_ROTATED = new Grid[4];
+
+  private static final Grid S7_8_G11;
+
+  private static final Grid S7_8_G12;
+
+  private static final Grid S7_8_G2;
+
+  private static final Grid S9_G1;
+
+  private static final Grid S9_G2;
+
+  private static final Grid S10_G1;
+
+  private static final Grid S10_G2;
+
+  private static final Grid S10_G3;
+
+  private static final Grid S11_16_G1;
+
+  /**
+   * 11-16. lépés: a külső vízszintes rész (középpont nélkül; a lépések {@link Grid#atCenter} segítségével helyezik el).
+   */
+  private static final Grid S11_16_G2H;
+
+  /**
+   * 11-16. lépés: a külső függőleges rész (középpont nélkül).
+   */
+  private static final Grid S11_16_G2V;
+
+  private static final Grid S11_G3;
+
+  private static final Grid S12_G1;
+
+  private static final Grid S12_G2;
+
+  private static final Grid S13_G1;
+
+  private static final Grid S13_G2;
+
+  private static final Grid S14_GT;
+
+  private static final Grid S14_G1;
+
+  private static final Grid S14_G2;
+
+  private static final Grid S15_GT;
+
+  private static final Grid S15_G1;
+
+  /**
+   * 15-16. lépés: a belső teli négyzet.
+   */
+  private static final Grid S15_16_G2;
+
+  private static final Grid S16_GT;
+
+  private static final Grid S17_G1;
+
+  private static final Grid S17_G2;
+
+  private static final Grid S18_19_G1;
+
+  private static final Grid S18_G2;
+
+  private static final Grid S20_21_G1;
+
+  private static final Grid S20_21_G2;
+
+  /**
+   * A {@link #renderGridsRotated} négy forgatása.
+   */
+  private static final Matrix[] QUARTER_ROTATIONS = new Matrix[4];
+
+  static {
+    Grid grid = new Grid(51);
+    grid.addTriplets(new int[]{-5, 6, -5, -4, 4, -4, -10, 1, 9, 1, -16, 17, 6, 20, 20, 20, 20, 5, -16, -23});
+    grid.addItem(Grid.ITEM_SUN, -11, -20);
+    grid.addItem(Grid.ITEM_STAR, 20, -2);
+    grid.freeze();
+
+    S0_6_GRIDS[0] = grid;
+    S0_6_GRIDS[1] = grid;
+    S1_3_ROTATED[1] = grid;
+    for (int step = 2; step <= 3; step++) {
+      Grid g = grid.cloneGrid();
+      g.rotate(step - 1, true);
+      S0_6_GRIDS[step] = g.freeze();
+      g = grid.cloneGrid();
+      g.rotate(step - 1, false);
+      S1_3_ROTATED[step] = g.freeze();
+    }
+    Grid g = grid.cloneGrid();
+    g.rotate(3, true);
+    S0_6_GRIDS[4] = g.freeze();
+    S0_6_GRIDS[5] = S0_6_GRIDS[4];
+    g = grid.cloneGrid();
+    g.octuple();
+    S0_6_GRIDS[6] = g.freeze();
+  }
+
+  static {
+    Grid g11 = new Grid(15, 17, 17);
+    g11.addItems(Grid.ITEM_SQUARE, new int[]{
+      16, 16, 17, 16, 18, 16, 22, 16, 23, 16, 24, 16,
+      16, 17, 16, 18, 16, 22, 16, 23, 16, 24, 19, 20, 20, 20, 21, 20, 20, 19, 20, 21
+    });
+    g11.addItems(Grid.ITEM_SUN, new int[]{20, 11, 11, 20});
+    S7_8_G11 = g11.freeze();
+
+    Grid g12 = new Grid(5, 5, 5);
+    g12.addItems(Grid.ITEM_SQUARE, new int[]{
+      5, 7, 5, 6, 5, 5, 5, 4, 5, 3, 7, 5, 6, 5, 4, 5, 3, 5, 4, 4, 4, 3, 3, 4
+    });
+    S7_8_G12 = g12.freeze();
+
+    Grid g2 = new Grid(15, 15, 0);
+    g2.addItems(Grid.ITEM_SQUARE, new int[]{
+      19, 6, 20, 6, 21, 6, 20, 5, 20, 4,
+      19, -6, 20, -6, 21, -6, 20, -5, 20, -4,
+      9, -2, 9, -1, 9, 0, 9, 1, 9, 2,
+      10, -2, 10, -1, 10, 0, 10, 1, 10, 2
+    });
+    g2.addItems(Grid.ITEM_STAR, new int[]{20, 2, 20, -2});
+    S7_8_G2 = g2.freeze();
+  }
+
+  static {
+    Grid g1 = new Grid(39, 0, 0);
+    g1.addItems(Grid.ITEM_SQUARE, new int[]{
+      2, 1, 2, 2, 2, 3, 3, 1, 3, 2, 3, 3, 4, 0, 4, 1, 4, 2, 4, 3, 5, 0, 5, 1, 5, 2, 5, 3,
+      2, -1, 2, -2, 2, -3, 3, -1, 3, -2, 3, -3, 4, -1, 4, -2, 4, -3, 5, -1, 5, -2, 5, -3,
+      15, 4, 15, 5, 15, 6, 14, 6, 16, 6,
+      15, -4, 15, -5, 15, -6, 14, -6, 16, -6
+    });
+    g1.addItems(Grid.ITEM_STAR, new int[]{15, 2, 15, -2});
+    g1.addItems(Grid.ITEM_SUN, new int[]{18, 9, 18, -9});
+    g1.rotate(3, true);
+    S9_G1 = g1.freeze();
+
+    Grid g2 = new Grid(9, 0, 0);
+    g2.addItems(Grid.ITEM_SQUARE, new int[]{
+      0, 0, 0, 1, 0, -1, -1, 0, 1, 0,
+      -4, 4, -4, 3, -4, 2, -4, -2, -4, -3, -4, -4,
+      -3, -4, -2, -4, 2, -4, 3, -4, 4, -4
+    });
+    S9_G2 = g2.freeze().atCenter(18, 18);
+  }
+
+  static {
+    Grid g1 = new Grid(3, 2, 2);
+    g1.addItems(Grid.ITEM_SQUARE, new int[]{
+      1, 2, 1, 3, 2, 1, 2, 2, 2, 3, 3, 1, 3, 2, 3, 3
+    });
+    S10_G1 = g1.freeze();
+
+    Grid g2 = new Grid(7, 4, 0);
+    g2.addItems(Grid.ITEM_SQUARE, new int[]{
+      4, -3, 4, -2, 4, -1, 4, 0, 4, 1, 4, 2, 4, 3,
+      5, -3, 5, -2, 5, -1, 5, 0, 5, 1, 5, 2, 5, 3
+    });
+    S10_G2 = g2.freeze().atCenter(0, 0);
+
+    Grid g3 = new Grid(21, 10, 0);
+    g3.addItems(Grid.ITEM_SQUARE, new int[]{
+      15, 4, 15, 5, 15, 6, 14, 6, 16, 6,
+      15, -4, 15, -5, 15, -6, 14, -6, 16, -6
+    });
+    g3.addItems(Grid.ITEM_STAR, new int[]{15, 2, 15, -2});
+    g3.addItems(Grid.ITEM_SUN, new int[]{18, 9, 18, -9});
+    S10_G3 = g3.freeze().atCenter(-4, 0);
+  }
+
+  static {
+    Grid g1 = new Grid(3, 0, 0);
+    g1.addItem(Grid.ITEM_SUN, 0, 0);
+    S11_16_G1 = g1.freeze().atCenter(9, 9);
+
+    Grid g2h = new Grid(13, 0, 0);
+    g2h.addItems(Grid.ITEM_SQUARE, new int[]{
+      -4, 0, -5, 0, -6, -1, -6, 0, -6, 1,
+      4, 0, 5, 0, 6, -1, 6, 0, 6, 1
+    });
+    g2h.addItems(Grid.ITEM_STAR, new int[]{-2, 0, 2, 0});
+    Grid g2v = g2h.cloneGrid();
+    g2v.rotate(1, false);
+    S11_16_G2H = g2h.freeze();
+    S11_16_G2V = g2v.freeze();
+
+    // 11. lépés
+    Grid g = new Grid(7, 0, 0);
+    g.addItems(Grid.ITEM_SQUARE, new int[]{
+      2, 1, 2, 0, 2, -1, 2, -2, 2, -3,
+      3, 1, 3, 0, 3, -1, 3, -2, 3, -3
+    });
+    g.rotate(3, true);
+    S11_G3 = g.freeze();
+
+    // 12. lépés
+    g = new Grid(7, 0, 0);
+    g.addItems(Grid.ITEM_SQUARE, new int[]{
+      -3, 2, -2, 2, -1, 2, 0, 2, 1, 2, 2, 2, 3, 2,
+      -3, 3, -2, 3, -1, 3, 0, 3, 1, 3, 2, 3, 3, 3
+    });
+    S12_G1 = g.freeze().atCenter(0, -2);
+
+    g = new Grid(7, 0, 0);
+    g.addItems(Grid.ITEM_SQUARE, new int[]{
+      2, 1, 2, 0, 2, -1, 2, -2, 2, -3,
+      3, 1, 3, 0, 3, -1, 3, -2, 3, -3
+    });
+    g.rotate(1, true);
+    g.addItems(Grid.ITEM_SQUARE, new int[]{
+      -2, 1, -2, 0, -2, -1,
+      -3, 1, -3, 0, -3, -1,});
+    S12_G2 = g.freeze();
+
+    // 13. lépés
+    g = new Grid(5, 0, 0);
+    g.addItems(Grid.ITEM_SQUARE, new int[]{
+      1, -2, 1, -1, 1, 0, 1, 1, 1, 2,
+      2, -2, 2, -1, 2, 0, 2, 1, 2, 2
+    });
+    S13_G1 = g.freeze().atCenter(-1, -1);
+
+    g = new Grid(5, 0, 0);
+    g.addItems(Grid.ITEM_SQUARE, new int[]{
+      -2, -1, -1, -1, 0, -1, 1, -1, 2, -1,
+      -2, -2, -1, -2, 0, -2, 1, -2, 2, -2
+    });
+    g.rotate(2, true);
+    S13_G2 = g.freeze().atCenter(-1, -1);
+
+    // 14-16. lépés: a külső rész egyre több negyede már a helyén van
+    Grid[] gts = new Grid[4];
+    for (int n = 1; n <= 3; n++) {
+      Grid gt = new Grid(21);
+      gt.merge(g2h.atCenter(0, 6));
+      gt.rotate(n, true);
+      gts[n] = gt.freeze();
+    }
+    S14_GT = gts[1];
+    S15_GT = gts[2];
+    S16_GT = gts[3];
+
+    // 14. lépés
+    g = new Grid(5, 0, 0);
+    g.addItems(Grid.ITEM_SQUARE, new int[]{
+      -2, -1, -1, -1, 0, -1, 1, -1, 2, -1,
+      -2, 0, -1, 0, 0, 0, 1, 0, 2, 0
+    });
+    S14_G1 = g.freeze().atCenter(-1, -1);
+
+    g = new Grid(5, 0, 0);
+    g.addItems(Grid.ITEM_SQUARE, new int[]{
+      -2, -1, -1, -1, 1, -1, 2, -1,
+      -2, 0, -1, 0, 0, 0, 1, 0, 2, 0,
+      -2, 1, -1, 1, 0, 1, 1, 1, 2, 1
+    });
+    S14_G2 = g.freeze().atCenter(-1, 0);
+
+    // 15-16. lépés
+    g = new Grid(3, 0, 0);
+    g.addItems(Grid.ITEM_SQUARE, new int[]{
+      -1, -1, 0, -1,
+      -1, 0, 0, 0,
+      -1, 1, 0, 1
+    });
+    S15_G1 = g.freeze().atCenter(-1, 0);
+
+    g = new Grid(3, 0, 0);
+    g.addItems(Grid.ITEM_SQUARE, new int[]{
+      -1, -1, 0, -1, 1, -1,
+      -1, 0, 0, 0, 1, 0,
+      -1, 1, 0, 1, 1, 1
+    });
+    S15_16_G2 = g.freeze();
+  }
+
+  static {
+    Grid g1 = new Grid(11);
+    g1.addItems(Grid.ITEM_SQUARE, new int[]{
+      -1, 0, 0, 0, 1, 0, 2, 0,
+      0, -2, 0, -1, 0, 1
+    });
+    g1.addItem(Grid.ITEM_SUN, -3, 3);
+    g1.addItems(Grid.ITEM_STAR, new int[]{0, -4, 4, 0});
+    S17_G1 = g1.freeze().atCenter(-6, 6);
+
+    Grid g2 = new Grid(21);
+    g2.merge(S17_G1);
+    g2.rotate(1, false);
+    g2.rotate(2, true);
+    g2.addItems(Grid.ITEM_SQUARE, new int[]{
+      -1, -1, 0, -1, 1, -1,
+      -1, 0, 0, 0, 1, 0,
+      -1, 1, 0, 1, 1, 1
+    });
+    S17_G2 = g2.freeze();
+
+    g1 = new Grid(11);
+    g1.addItem(Grid.ITEM_SUN, -3, 3);
+    g1.addItems(Grid.ITEM_STAR, new int[]{0, -4, 4, 0});
+    S18_19_G1 = g1.freeze().atCenter(-6, 6);
+
+    g2 = new Grid(5);
+    g2.addItems(Grid.ITEM_SQUARE, new int[]{
+      -1, 0, 0, 0, 1, 0, 2, 0,
+      0, -2, 0, -1, 0, 1
+    });
+    S18_G2 = g2.freeze().atCenter(-6, 6);
+
+    g1 = new Grid(3);
+    g1.addItem(Grid.ITEM_SUN, 0, 0);
+    S20_21_G1 = g1.freeze().atCenter(-9, 9);
+
+    g2 = new Grid(3);
+    g2.addItem(Grid.ITEM_STAR, 0, 0);
+    S20_21_G2 = g2.freeze().atCenter(4, 0);
+  }
+
+  static {
+    for (int i = 0; i < 4; i++) {
+      Matrix m = new Matrix();
+      Matrix.identity(m);
+      m.rotateZ(Math.PI / 2.0 * i);
+      QUARTER_ROTATIONS[i] = m;
+    }
+  }
+
   private final int step;
 
   private final double percent;
 
-  private final Graphics2D graphics;
+  private final Canvas canvas;
 
   private final Matrix transMatrix;
 
   private final double zoom;
 
-  private final Dimension dim;
+  private final RenderContext ctx;
 
   private final float frameAlpha;
 
@@ -37,23 +376,23 @@ public final class FrameRenderer {
    * @param g A kirajzolás célja.
    * @param transMatrix A transzformációs mátrix.
    * @param zoom A nagyítás mértéke.
-   * @param dim A kirajzolás dimenziói.
+   * @param ctx A kirajzolás kontextusa.
    * @param frameAlpha A teljes képkocka alfa értéke.
    */
-  public static void renderFrame(int step, double percent, Graphics2D g,
-          Matrix transMatrix, double zoom, Dimension dim, float frameAlpha) {
-    FrameRenderer fr = new FrameRenderer(step, percent, g, transMatrix, zoom, dim, frameAlpha);
+  public static void renderFrame(int step, double percent, Canvas g,
+          Matrix transMatrix, double zoom, RenderContext ctx, float frameAlpha) {
+    FrameRenderer fr = new FrameRenderer(step, percent, g, transMatrix, zoom, ctx, frameAlpha);
     fr.renderFrame();
   }
 
-  private FrameRenderer(int step, double percent, Graphics2D graphics,
-          Matrix transMatrix, double zoom, Dimension dim, float frameAlpha) {
+  private FrameRenderer(int step, double percent, Canvas canvas,
+          Matrix transMatrix, double zoom, RenderContext ctx, float frameAlpha) {
     this.step = step;
     this.percent = percent;
-    this.graphics = (Graphics2D) graphics.create();
+    this.canvas = canvas.create();
     this.transMatrix = transMatrix;
     this.zoom = zoom;
-    this.dim = dim;
+    this.ctx = ctx;
     this.frameAlpha = frameAlpha;
   }
 
@@ -82,71 +421,48 @@ public final class FrameRenderer {
   private void renderStep_0_6() {
     assert step >= 0 && step <= 6;
 
-    Grid grid = new Grid(51);
-    grid.addTriplets(new int[]{-5, 6, -5, -4, 4, -4, -10, 1, 9, 1, -16, 17, 6, 20, 20, 20, 20, 5, -16, -23});
-    grid.addItem(Grid.ITEM_SUN, -11, -20);
-    grid.addItem(Grid.ITEM_STAR, 20, -2);
+    Grid grid = S0_6_GRIDS[step];
 
     if (step == 0) {
       if (percent < 50.0) {
-        LidRenderer.render(transMatrix, graphics, zoom, dim);
+        LidRenderer.render(transMatrix, canvas, zoom, ctx);
       } else if (percent < 90.0) {
         float alpha = (float) (percent - 50f) / 40f;
-        graphics.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, (1f - alpha) * frameAlpha));
-        LidRenderer.render(transMatrix, graphics, zoom, dim);
-        graphics.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, alpha * frameAlpha));
-        GridRenderer.render(grid, transMatrix, graphics, zoom, dim);
+        canvas.setAlpha((1f - alpha) * frameAlpha);
+        LidRenderer.render(transMatrix, canvas, zoom, ctx);
+        canvas.setAlpha(alpha * frameAlpha);
+        GridRenderer.render(grid, transMatrix, canvas, zoom, ctx);
       } else {
-        GridRenderer.render(grid, transMatrix, graphics, zoom, dim);
+        GridRenderer.render(grid, transMatrix, canvas, zoom, ctx);
       }
     } else if (step < 4) {
-      Grid grRot = grid.cloneGrid();
-
-      if (step >= 2) {
-        grid.rotate(step - 1, true);
-        grRot.rotate(step - 1, false);
-      }
-      GridRenderer.render(grid, transMatrix, graphics, zoom, dim);
+      GridRenderer.render(grid, transMatrix, canvas, zoom, ctx);
 
       if (percent >= 20.0) {
         Matrix m = new Matrix();
         Matrix.identity(m);
         m.rotateZ(-Math.PI / 2.0 / 100.0 * (percent - 20.0) * 1.25);
         m.postMultiply(this.transMatrix);
-        GridRenderer.render(grRot, m, graphics, zoom, dim);
+        GridRenderer.render(S1_3_ROTATED[step], m, canvas, zoom, ctx);
       }
     } else if (step == 4) {
       // Várakozás
-      grid.rotate(3, true);
-      GridRenderer.render(grid, transMatrix, graphics, zoom, dim);
+      GridRenderer.render(grid, transMatrix, canvas, zoom, ctx);
     } else if (step == 5) {
       Matrix m = new Matrix();
       Matrix.identity(m);
       m.rotateY(Math.PI / 100.0 * percent);
-      grid.rotate(3, true);
-      GridRenderer.render(grid, transMatrix, graphics, zoom, dim);
+      GridRenderer.render(grid, transMatrix, canvas, zoom, ctx);
       m.postMultiply(this.transMatrix);
-      GridRenderer.render(grid, m, graphics, zoom, dim);
+      GridRenderer.render(grid, m, canvas, zoom, ctx);
     } else if (step == 6) {
-      grid.octuple();
-      GridRenderer.render(grid, transMatrix, graphics, zoom, dim);
+      GridRenderer.render(grid, transMatrix, canvas, zoom, ctx);
     }
   }
 
   private void renderStep_7_8() {
     assert step >= 7 && step <= 8;
 
-    Grid g11 = new Grid(15, 17, 17);
-    g11.addItems(Grid.ITEM_SQUARE, new int[]{
-      16, 16, 17, 16, 18, 16, 22, 16, 23, 16, 24, 16,
-      16, 17, 16, 18, 16, 22, 16, 23, 16, 24, 19, 20, 20, 20, 21, 20, 20, 19, 20, 21
-    });
-    g11.addItems(Grid.ITEM_SUN, new int[]{20, 11, 11, 20});
-    Grid g12 = new Grid(5, 5, 5);
-    g12.addItems(Grid.ITEM_SQUARE, new int[]{
-      5, 7, 5, 6, 5, 5, 5, 4, 5, 3, 7, 5, 6, 5, 4, 5, 3, 5, 4, 4, 4, 3, 3, 4
-    });
-
     Matrix m = new Matrix();
     Matrix.identity(m);
 
@@ -155,360 +471,177 @@ public final class FrameRenderer {
     } else {
       m.translate(-2, -2, 0.);
     }
-    renderGridsRotated(m, g11, g12);
-
-    Grid g2 = new Grid(15, 15, 0);
-    g2.addItems(Grid.ITEM_SQUARE, new int[]{
-      19, 6, 20, 6, 21, 6, 20, 5, 20, 4,
-      19, -6, 20, -6, 21, -6, 20, -5, 20, -4,
-      9, -2, 9, -1, 9, 0, 9, 1, 9, 2,
-      10, -2, 10, -1, 10, 0, 10, 1, 10, 2
-    });
-    g2.addItems(Grid.ITEM_STAR, new int[]{20, 2, 20, -2});
+    renderGridsRotated(m, S7_8_G11, S7_8_G12);
 
     Matrix.identity(m);
 
     if (step == 8) {
       m.translate(-0.05 * percent, 0., 0.);
     }
-    renderGridsRotated(m, g2);
+    renderGridsRotated(m, S7_8_G2);
   }
 
   private void renderStep_9() {
     assert step == 9;
 
-    Grid g1 = new Grid(39, 0, 0);
-    g1.addItems(Grid.ITEM_SQUARE, new int[]{
-      2, 1, 2, 2, 2, 3, 3, 1, 3, 2, 3, 3, 4, 0, 4, 1, 4, 2, 4, 3, 5, 0, 5, 1, 5, 2, 5, 3,
-      2, -1, 2, -2, 2, -3, 3, -1, 3, -2, 3, -3, 4, -1, 4, -2, 4, -3, 5, -1, 5, -2, 5, -3,
-      15, 4, 15, 5, 15, 6, 14, 6, 16, 6,
-      15, -4, 15, -5, 15, -6, 14, -6, 16, -6
-    });
-    g1.addItems(Grid.ITEM_STAR, new int[]{15, 2, 15, -2});
-    g1.addItems(Grid.ITEM_SUN, new int[]{18, 9, 18, -9});
-    g1.setCenter(0, 0);
-    g1.rotate(3, true);
-    GridRenderer.render(g1, transMatrix, graphics, zoom, dim);
+    GridRenderer.render(S9_G1, transMatrix, canvas, zoom, ctx);
 
     float alpha = 1f - (float) percent / 100f;
     alpha *= alpha;
-    graphics.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, alpha * frameAlpha));
+    canvas.setAlpha(alpha * frameAlpha);
 
-    Grid g2 = new Grid(9, 0, 0);
-    g2.addItems(Grid.ITEM_SQUARE, new int[]{
-      0, 0, 0, 1, 0, -1, -1, 0, 1, 0,
-      -4, 4, -4, 3, -4, 2, -4, -2, -4, -3, -4, -4,
-      -3, -4, -2, -4, 2, -4, 3, -4, 4, -4
-    });
-    g2.setCenter(18, 18);
-    renderGridsRotated(null, g2);
+    renderGridsRotated(null, S9_G2);
   }
 
   private void renderStep_10() {
     assert step == 10;
 
-    Grid g1 = new Grid(3, 2, 2);
-    g1.addItems(Grid.ITEM_SQUARE, new int[]{
-      1, 2, 1, 3, 2, 1, 2, 2, 2, 3, 3, 1, 3, 2, 3, 3
-    });
-    renderGridsRotated(null, g1);
+    renderGridsRotated(null, S10_G1);
 
     Matrix m = new Matrix();
 
-    Grid g2 = new Grid(7, 4, 0);
-    g2.addItems(Grid.ITEM_SQUARE, new int[]{
-      4, -3, 4, -2, 4, -1, 4, 0, 4, 1, 4, 2, 4, 3,
-      5, -3, 5, -2, 5, -1, 5, 0, 5, 1, 5, 2, 5, 3
-    });
-
-    g2.setCenter(0, 0);
-
     Matrix.identity(m);
     m.translate(3.5, 0, 0.0);
     m.rotateY(-Math.PI / 100.0 * percent);
     m.translate(0.5, 0, 0.0);
-    renderGridsRotated(m, g2);
-
-    Grid g3 = new Grid(21, 10, 0);
-    g3.addItems(Grid.ITEM_SQUARE, new int[]{
-      15, 4, 15, 5, 15, 6, 14, 6, 16, 6,
-      15, -4, 15, -5, 15, -6, 14, -6, 16, -6
-    });
-    g3.addItems(Grid.ITEM_STAR, new int[]{15, 2, 15, -2});
-    g3.addItems(Grid.ITEM_SUN, new int[]{18, 9, 18, -9});
+    renderGridsRotated(m, S10_G2);
 
-    g3.setCenter(-4, 0);
     Matrix.identity(m);
     m.translate(13.5, 0, 0.0);
     m.rotateY(-Math.PI / 100.0 * percent);
     m.translate(0.5, 0, 0.0);
-    renderGridsRotated(m, g3);
+    renderGridsRotated(m, S10_G3);
   }
 
   private void renderStep_11_16() {
     assert step >= 11 && step <= 16;
 
-    Grid g1 = new Grid(3, 0, 0);
-    g1.addItem(Grid.ITEM_SUN, 0, 0);
-    g1.setCenter(9, 9);
-    renderGridsRotated(null, g1);
-
-    Grid g2h = new Grid(13, 0, 0);
-    g2h.addItems(Grid.ITEM_SQUARE, new int[]{
-      -4, 0, -5, 0, -6, -1, -6, 0, -6, 1,
-      4, 0, 5, 0, 6, -1, 6, 0, 6, 1
-    });
-    g2h.addItems(Grid.ITEM_STAR, new int[]{-2, 0, 2, 0});
-    Grid g2v = g2h.cloneGrid();
-    g2v.rotate(1, false);
+    renderGridsRotated(null, S11_16_G1);
 
-    Grid gt = new Grid(21);
+    Grid g2h = S11_16_G2H;
+    Grid g2v = S11_16_G2V;
 
     Matrix m = new Matrix();
 
     if (step == 11) {
       // Külső
-      g2h.setCenter(0, 12);
-      renderGridsRotated(null, g2h);
+      renderGridsRotated(null, g2h.atCenter(0, 12));
 
       // Belső
-      Grid g3 = new Grid(7, 0, 0);
-      g3.addItems(Grid.ITEM_SQUARE, new int[]{
-        2, 1, 2, 0, 2, -1, 2, -2, 2, -3,
-        3, 1, 3, 0, 3, -1, 3, -2, 3, -3
-      });
-      g3.rotate(3, true);
-      GridRenderer.render(g3, transMatrix, graphics, zoom, dim);
+      GridRenderer.render(S11_G3, transMatrix, canvas, zoom, ctx);
     } else if (step == 12) {  // Felső
       // Külső
-      g2h.setCenter(0, 3);
       Matrix.identity(m);
       m.translate(0, 9, 0.0);
       m.rotateX(Math.PI / 100.0 * percent);
       m.postMultiply(transMatrix);
-      GridRenderer.render(g2h, m, graphics, zoom, dim);
-
-      g2v.setCenter(12, 0);
-      GridRenderer.render(g2v, transMatrix, graphics, zoom, dim);
-
-      g2h.setCenter(0, -12);
-      GridRenderer.render(g2h, transMatrix, graphics, zoom, dim);
-
-      g2v.setCenter(-12, 0);
-      GridRenderer.render(g2v, transMatrix, graphics, zoom, dim);
+      GridRenderer.render(g2h.atCenter(0, 3), m, canvas, zoom, ctx);
+      GridRenderer.render(g2v.atCenter(12, 0), transMatrix, canvas, zoom, ctx);
+      GridRenderer.render(g2h.atCenter(0, -12), transMatrix, canvas, zoom, ctx);
+      GridRenderer.render(g2v.atCenter(-12, 0), transMatrix, canvas, zoom, ctx);
 
       // Belső
-      Grid g = new Grid(7, 0, 0);
-      g.addItems(Grid.ITEM_SQUARE, new int[]{
-        -3, 2, -2, 2, -1, 2, 0, 2, 1, 2, 2, 2, 3, 2,
-        -3, 3, -2, 3, -1, 3, 0, 3, 1, 3, 2, 3, 3, 3
-      });
-      g.setCenter(0, -2);
       Matrix.identity(m);
       m.translate(0, 1.5, 0.0);
       m.rotateX(Math.PI / 100.0 * percent);
       m.translate(0, 0.5, 0.0);
       m.postMultiply(transMatrix);
-      GridRenderer.render(g, m, graphics, zoom, dim);
-
-      g = new Grid(7, 0, 0);
-      g.addItems(Grid.ITEM_SQUARE, new int[]{
-        2, 1, 2, 0, 2, -1, 2, -2, 2, -3,
-        3, 1, 3, 0, 3, -1, 3, -2, 3, -3
-      });
-      g.rotate(1, true);
-      g.addItems(Grid.ITEM_SQUARE, new int[]{
-        -2, 1, -2, 0, -2, -1,
-        -3, 1, -3, 0, -3, -1,});
-      GridRenderer.render(g, transMatrix, graphics, zoom, dim);
+      GridRenderer.render(S12_G1, m, canvas, zoom, ctx);
+
+      GridRenderer.render(S12_G2, transMatrix, canvas, zoom, ctx);
     } else if (step == 13) {  // Jobb
       // Külső
-      g2h.setCenter(0, 6);
-      GridRenderer.render(g2h, transMatrix, graphics, zoom, dim);
+      GridRenderer.render(g2h.atCenter(0, 6), transMatrix, canvas, zoom, ctx);
 
-      g2v.setCenter(3, 0);
       Matrix.identity(m);
       m.translate(9, 0, 0.0);
       m.rotateY(-Math.PI / 100.0 * percent);
       m.postMultiply(transMatrix);
-      GridRenderer.render(g2v, m, graphics, zoom, dim);
-
-      g2h.setCenter(0, -12);
-      GridRenderer.render(g2h, transMatrix, graphics, zoom, dim);
-
-      g2v.setCenter(-12, 0);
-      GridRenderer.render(g2v, transMatrix, graphics, zoom, dim);
+      GridRenderer.render(g2v.atCenter(3, 0), m, canvas, zoom, ctx);
+      GridRenderer.render(g2h.atCenter(0, -12), transMatrix, canvas, zoom, ctx);
+      GridRenderer.render(g2v.atCenter(-12, 0), transMatrix, canvas, zoom, ctx);
 
       // Belső
-      Grid g = new Grid(5, 0, 0);
-      g.addItems(Grid.ITEM_SQUARE, new int[]{
-        1, -2, 1, -1, 1, 0, 1, 1, 1, 2,
-        2, -2, 2, -1, 2, 0, 2, 1, 2, 2
-      });
-      g.setCenter(-1, -1);
       Matrix.identity(m);
       m.translate(1.5, 0.0, 0.0);
       m.rotateY(-Math.PI / 100.0 * percent);
       m.translate(0.5, 0.0, 0.0);
       m.postMultiply(transMatrix);
-      GridRenderer.render(g, m, graphics, zoom, dim);
-
-      g = new Grid(5, 0, 0);
-      g.addItems(Grid.ITEM_SQUARE, new int[]{
-        -2, -1, -1, -1, 0, -1, 1, -1, 2, -1,
-        -2, -2, -1, -2, 0, -2, 1, -2, 2, -2
-      });
-      g.rotate(2, true);
-      g.setCenter(-1, -1);
-      GridRenderer.render(g, transMatrix, graphics, zoom, dim);
+      GridRenderer.render(S13_G1, m, canvas, zoom, ctx);
+
+      GridRenderer.render(S13_G2, transMatrix, canvas, zoom, ctx);
     } else if (step == 14) {  // Alsó
       // Külső
-      g2h.setCenter(0, 6);
-      gt.merge(g2h);
-      gt.rotate(1, true);
-      GridRenderer.render(gt, transMatrix, graphics, zoom, dim);
+      GridRenderer.render(S14_GT, transMatrix, canvas, zoom, ctx);
 
-      g2h.setCenter(0, -3);
       Matrix.identity(m);
       m.translate(0, -9, 0.0);
       m.rotateX(-Math.PI / 100.0 * percent);
       m.postMultiply(transMatrix);
-      GridRenderer.render(g2h, m, graphics, zoom, dim);
-
-      g2v.setCenter(-12, 0);
-      GridRenderer.render(g2v, transMatrix, graphics, zoom, dim);
+      GridRenderer.render(g2h.atCenter(0, -3), m, canvas, zoom, ctx);
+      GridRenderer.render(g2v.atCenter(-12, 0), transMatrix, canvas, zoom, ctx);
 
       // Belső
-      Grid g = new Grid(5, 0, 0);
-      g.addItems(Grid.ITEM_SQUARE, new int[]{
-        -2, -1, -1, -1, 0, -1, 1, -1, 2, -1,
-        -2, 0, -1, 0, 0, 0, 1, 0, 2, 0
-      });
-      g.setCenter(-1, -1);
       Matrix.identity(m);
       m.translate(0, -1.5, 0.0);
       m.rotateX(-Math.PI / 100.0 * percent);
       m.translate(0, 0.5, 0.0);
       m.postMultiply(transMatrix);
-      GridRenderer.render(g, m, graphics, zoom, dim);
-
-      g = new Grid(5, 0, 0);
-      g.addItems(Grid.ITEM_SQUARE, new int[]{
-        -2, -1, -1, -1, 1, -1, 2, -1,
-        -2, 0, -1, 0, 0, 0, 1, 0, 2, 0,
-        -2, 1, -1, 1, 0, 1, 1, 1, 2, 1
-      });
-      g.setCenter(-1, 0);
-      GridRenderer.render(g, transMatrix, graphics, zoom, dim);
+      GridRenderer.render(S14_G1, m, canvas, zoom, ctx);
+
+      GridRenderer.render(S14_G2, transMatrix, canvas, zoom, ctx);
     } else if (step == 15) {  // Bal
       // Külső
-      g2h.setCenter(0, 6);
-      gt.merge(g2h);
-      gt.rotate(2, true);
-      GridRenderer.render(gt, transMatrix, graphics, zoom, dim);
+      GridRenderer.render(S15_GT, transMatrix, canvas, zoom, ctx);
 
-      g2v.setCenter(-3, 0);
       Matrix.identity(m);
       m.translate(-9, 0, 0.0);
       m.rotateY(Math.PI / 100.0 * percent);
       m.postMultiply(transMatrix);
-      GridRenderer.render(g2v, m, graphics, zoom, dim);
+      GridRenderer.render(g2v.atCenter(-3, 0), m, canvas, zoom, ctx);
 
       // Belső
-      Grid g = new Grid(3, 0, 0);
-      g.addItems(Grid.ITEM_SQUARE, new int[]{
-        -1, -1, 0, -1,
-        -1, 0, 0, 0,
-        -1, 1, 0, 1
-      });
-      g.setCenter(-1, 0);
       Matrix.identity(m);
       m.translate(-1.5, 0.0, 0.0);
       m.rotateY(Math.PI / 100.0 * percent);
       m.translate(0.5, 0.0, 0.0);
       m.postMultiply(transMatrix);
-      GridRenderer.render(g, m, graphics, zoom, dim);
-
-      g = new Grid(3, 0, 0);
-      g.addItems(Grid.ITEM_SQUARE, new int[]{
-        -1, -1, 0, -1, 1, -1,
-        -1, 0, 0, 0, 1, 0,
-        -1, 1, 0, 1, 1, 1
-      });
-      GridRenderer.render(g, transMatrix, graphics, zoom, dim);
+      GridRenderer.render(S15_G1, m, canvas, zoom, ctx);
+
+      GridRenderer.render(S15_16_G2, transMatrix, canvas, zoom, ctx);
     } else if (step == 16) {
       // Külső
-      g2h.setCenter(0, 6);
-      gt.merge(g2h);
-      gt.rotate(3, true);
-      GridRenderer.render(gt, transMatrix, graphics, zoom, dim);
+      GridRenderer.render(S16_GT, transMatrix, canvas, zoom, ctx);
 
       // Belső
-      Grid g = new Grid(3, 0, 0);
-      g.addItems(Grid.ITEM_SQUARE, new int[]{
-        -1, -1, 0, -1, 1, -1,
-        -1, 0, 0, 0, 1, 0,
-        -1, 1, 0, 1, 1, 1
-      });
-      GridRenderer.render(g, transMatrix, graphics, zoom, dim);
+      GridRenderer.render(S15_16_G2, transMatrix, canvas, zoom, ctx);
     }
   }
 
   private void renderStep_17() {
     assert step == 17;
 
-    Grid g1 = new Grid(11);
-    g1.addItems(Grid.ITEM_SQUARE, new int[]{
-      -1, 0, 0, 0, 1, 0, 2, 0,
-      0, -2, 0, -1, 0, 1
-    });
-    g1.addItem(Grid.ITEM_SUN, -3, 3);
-    g1.addItems(Grid.ITEM_STAR, new int[]{0, -4, 4, 0});
-
-    g1.setCenter(-6, 6);
-    GridRenderer.render(g1, transMatrix, graphics, zoom, dim);
-
-    Grid g2 = new Grid(21);
-    g2.merge(g1);
-    g2.rotate(1, false);
-    g2.rotate(2, true);
-    g2.addItems(Grid.ITEM_SQUARE, new int[]{
-      -1, -1, 0, -1, 1, -1,
-      -1, 0, 0, 0, 1, 0,
-      -1, 1, 0, 1, 1, 1
-    });
+    GridRenderer.render(S17_G1, transMatrix, canvas, zoom, ctx);
 
     float alpha = 1f - (float) percent / 100f;
     alpha *= alpha * alpha * alpha;
-    graphics.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, alpha * frameAlpha));
+    canvas.setAlpha(alpha * frameAlpha);
 
-    GridRenderer.render(g2, transMatrix, graphics, zoom, dim);
+    GridRenderer.render(S17_G2, transMatrix, canvas, zoom, ctx);
   }
 
   private void renderStep_18_19() {
     assert step >= 18 && step <= 19;
 
-    Grid g1 = new Grid(11);
-    g1.addItem(Grid.ITEM_SUN, -3, 3);
-    g1.addItems(Grid.ITEM_STAR, new int[]{0, -4, 4, 0});
-
-    g1.setCenter(-6, 6);
-    GridRenderer.render(g1, transMatrix, graphics, zoom, dim);
+    GridRenderer.render(S18_19_G1, transMatrix, canvas, zoom, ctx);
 
     if (step == 18) {
-      Grid g2 = new Grid(5);
-      g2.addItems(Grid.ITEM_SQUARE, new int[]{
-        -1, 0, 0, 0, 1, 0, 2, 0,
-        0, -2, 0, -1, 0, 1
-      });
-      g2.setCenter(-6, 6);
-
       float alpha = 1f - (float) percent / 100f;
-      graphics.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, alpha * frameAlpha));
+      canvas.setAlpha(alpha * frameAlpha);
 
-      GridRenderer.render(g2, transMatrix, graphics, zoom, dim);
+      GridRenderer.render(S18_G2, transMatrix, canvas, zoom, ctx);
 
-      graphics.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, (1f - alpha) * frameAlpha));
+      canvas.setAlpha((1f - alpha) * frameAlpha);
     }
 
     // Vonalak
@@ -529,14 +662,7 @@ public final class FrameRenderer {
   private void renderStep_20_21() {
     assert step >= 20 && step <= 21;
 
-    Grid g1 = new Grid(3);
-    g1.addItem(Grid.ITEM_SUN, 0, 0);
-    g1.setCenter(-9, 9);
-    GridRenderer.render(g1, transMatrix, graphics, zoom, dim);
-
-    Grid g2 = new Grid(3);
-    g2.addItem(Grid.ITEM_STAR, 0, 0);
-    g2.setCenter(4, 0);
+    GridRenderer.render(S20_21_G1, transMatrix, canvas, zoom, ctx);
 
     double angle = Math.PI / 4.0;
     if (step == 20) {
@@ -551,7 +677,7 @@ public final class FrameRenderer {
       m.rotateZ(i == 1 ? -angle : angle - Math.PI / 2.0);
       m.postMultiply(transMatrix);
 
-      GridRenderer.render(g2, m, graphics, zoom, dim);
+      GridRenderer.render(S20_21_G2, m, canvas, zoom, ctx);
       drawLineCellToCell(-1, 0, 2, 0, m);
       drawCellMarker(-1, 0, true, m);
       drawCellMarker(0, 0, true, m);
@@ -566,11 +692,11 @@ public final class FrameRenderer {
     c1 = Transformer.transform(c1, ftm);
     c2 = Transformer.transform(c2, ftm);
 
-    int[] p1 = Transformer.project(c1, zoom, dim);
-    int[] p2 = Transformer.project(c2, zoom, dim);
+    int[] p1 = Transformer.project(c1, zoom, ctx);
+    int[] p2 = Transformer.project(c2, zoom, ctx);
 
     if (p1 != null && p2 != null) {
-      graphics.drawLine(p1[0], p1[1], p2[0], p2[1]);
+      canvas.drawLine(p1[0], p1[1], p2[0], p2[1]);
     }
   }
 
@@ -588,30 +714,26 @@ public final class FrameRenderer {
 
     lp = Transformer.transform(lp, ftm);
 
-    int[][] ps = Transformer.project(lp, zoom, dim);
+    int[][] ps = Transformer.project(lp, zoom, ctx);
 
     if (ps != null) {
-      graphics.drawLine(ps[0][0], ps[0][1], ps[1][0], ps[1][1]);
+      canvas.drawLine(ps[0][0], ps[0][1], ps[1][0], ps[1][1]);
     }
   }
 
   private void renderGridsRotated(Matrix tm, Grid... grids) {
     for (int i = 0; i < 4; i++) {
-      Matrix m1 = new Matrix();
-      Matrix.identity(m1);
-      m1.rotateZ(Math.PI / 2.0 * i);
-
       Matrix m2 = new Matrix();
       if (tm != null) {
         m2.copy(tm);
       } else {
         Matrix.identity(m2);
       }
-      m2.postMultiply(m1);
+      m2.postMultiply(QUARTER_ROTATIONS[i]);
       m2.postMultiply(transMatrix);
 
       for (Grid grid : grids) {
-        GridRenderer.render(grid, m2, graphics, zoom, dim);
+        GridRenderer.render(grid, m2, canvas, zoom, ctx);
       }
     }
   }
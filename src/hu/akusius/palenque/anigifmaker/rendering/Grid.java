@@ -4,6 +4,9 @@ package hu.akusius.palenque.anigifmaker.rendering;
  * Egy négyzetrácsot reprezentáló osztály.
  * A koordináták jobbra és felfelé nőnek.
  * Az elemeket a tömbben soronként tároljuk, lentről felfelé.
+ * <p>
+ * A {@link #freeze()} hívása után a négyzetrács nem módosítható, így több szálról is
+ * (akár eltérő középponttal, lásd {@link #atCenter(int, int)}) szabadon kirajzolható.
  * @author Bujdosó Ákos
  */
 final class Grid {
@@ -30,6 +33,14 @@ final class Grid {
 
   private int centerY;
 
+  private boolean frozen;
+
+  /**
+   * A befagyasztott négyzetrács geometriája (lusta előállítással; a geometria nem módosítható,
+   * így a szálak közötti megosztásához nincs szükség szinkronizálásra).
+   */
+  private GridGeometry geometry;
+
   /**
    * Új négyzetháló létrehozása a megadott mérettel és (0, 0) középső cellával.
    * @param size A négyzetháló mérete.
@@ -53,6 +64,20 @@ final class Grid {
     this.ci = (size - 1) / 2;
   }
 
+  /**
+   * Egy befagyasztott négyzetrács elemeit megosztó, eltérő középpontú, befagyasztott négyzetrács létrehozása.
+   */
+  private Grid(Grid o, int centerX, int centerY) {
+    assert o.frozen;
+    this.size = o.size;
+    this.items = o.items;
+    this.centerX = centerX;
+    this.centerY = centerY;
+    this.ci = o.ci;
+    this.frozen = true;
+    this.geometry = o.getGeometry();
+  }
+
   public int getSize() {
     return size;
   }
@@ -65,6 +90,21 @@ final class Grid {
     return items;
   }
 
+  /**
+   * @return A kirajzolandó geometria. Befagyasztott négyzetrács esetén csak az első híváskor áll elő,
+   * egyébként minden híváskor újra.
+   */
+  GridGeometry getGeometry() {
+    GridGeometry g = geometry;
+    if (g == null) {
+      g = GridGeometry.compile(this);
+      if (frozen) {
+        geometry = g;
+      }
+    }
+    return g;
+  }
+
   /**
    * @return A középső cella abszolút X koordinátája: elemek hozzáadásakor és összefűzéskor van szerepe.
    */
@@ -85,6 +125,7 @@ final class Grid {
    * @param centerY A középső cella (abszolút) Y koordinátája.
    */
   public void setCenter(int centerX, int centerY) {
+    checkMutable();
     this.centerX = centerX;
     this.centerY = centerY;
   }
@@ -96,6 +137,7 @@ final class Grid {
    * @param y Az elem abszolút Y koordinátája.
    */
   public void addItem(byte type, int x, int y) {
+    checkMutable();
     assert !(type < ITEM_FIRST || type > ITEM_LAST);
     int ix = x - centerX + ci;
     int iy = y - centerY + ci;
@@ -156,6 +198,7 @@ final class Grid {
    */
   public void rotate(int num, boolean keep) {
     assert num >= 1 && num <= 3;
+    checkMutable();
     for (int iy = 0; iy < size; iy++) {
       for (int ix = 0; ix < size; ix++) {
         byte it = (byte) (items[iy][ix] & 0x0F);
@@ -237,6 +280,7 @@ final class Grid {
    * @param o A másik négyzetrács.
    */
   public void merge(Grid o) {
+    checkMutable();
     for (int iy = 0; iy < o.size; iy++) {
       for (int ix = 0; ix < o.size; ix++) {
         byte b = o.items[iy][ix];
@@ -268,4 +312,40 @@ final class Grid {
     }
     return g;
   }
+
+  /**
+   * A négyzetrács befagyasztása: ezután már nem módosítható.
+   * @return Ez a négyzetrács.
+   */
+  public Grid freeze() {
+    frozen = true;
+    return this;
+  }
+
+  /**
+   * @return {@code true}, ha a négyzetrács be van fagyasztva.
+   */
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  /**
+   * Ugyanezen elemekből álló, de más abszolút középpontú négyzetrács.
+   * A két négyzetrács az elemeket közösen használja, ezért csak befagyasztott négyzetrácson hívható.
+   * @param centerX A középső cella (abszolút) X koordinátája.
+   * @param centerY A középső cella (abszolút) Y koordinátája.
+   * @return Az új, befagyasztott négyzetrács.
+   */
+  public Grid atCenter(int centerX, int centerY) {
+    if (!frozen) {
+      throw new IllegalStateException("Grid is not frozen");
+    }
+    return new Grid(this, centerX, centerY);
+  }
+
+  private void checkMutable() {
+    if (frozen) {
+      throw new IllegalStateException("Grid is frozen");
+    }
+  }
 }
@@ -0,0 +1,211 @@
+package hu.akusius.palenque.anigifmaker.rendering;
+
+import java.util.Arrays;
+
+/**
+ * Egy {@code Grid} kirajzolandó geometriája: a négyzetekből összevont vonalszakaszok,
+ * valamint a napok és csillagok sarokpontjai.
+ * <p>
+ * A koordináták a négyzetrács bal alsó cellájához (a tömb 0, 0 indexéhez) viszonyítottak,
+ * így a geometria nem függ a négyzetrács abszolút középpontjától: kirajzoláskor a cellák
+ * abszolút eltolását kell hozzájuk adni. Az osztály nem módosítható.
+ * @author Bujdosó Ákos
+ */
+final class GridGeometry {
+
+  /**
+   * Egy jelölő (nap vagy csillag) pontjainak száma a {@link #getMarkerPoints()} tömbben:
+   * a három cellányi külső négyzet és a belső cella 4-4 sarka (X, Y), BF, JF, JA, BA sorrendben.
+   */
+  static final int MARKER_STRIDE = 16;
+
+  /**
+   * Egy vonalszakasz koordinátáinak száma a {@link #getSegmentPoints()} tömbben (X1, Y1, X2, Y2).
+   */
+  static final int SEGMENT_STRIDE = 4;
+
+  private static final byte HORZ = 1;
+
+  private static final byte VERT = 2;
+
+  private static final byte BOTH = HORZ | VERT;
+
+  private final byte[] markerTypes;
+
+  private final double[] markerPoints;
+
+  private final double[] segmentPoints;
+
+  private GridGeometry(byte[] markerTypes, double[] markerPoints, double[] segmentPoints) {
+    this.markerTypes = markerTypes;
+    this.markerPoints = markerPoints;
+    this.segmentPoints = segmentPoints;
+  }
+
+  /**
+   * @return A jelölők ({@link Grid#ITEM_SUN} vagy {@link Grid#ITEM_STAR}) típusa, a négyzetrács bejárási sorrendjében.
+   */
+  @SuppressWarnings("ReturnOfCollectionOrArrayField")
+  byte[] getMarkerTypes() {
+    return markerTypes;
+  }
+
+  /**
+   * @return A jelölők pontjai, jelölőnként {@link #MARKER_STRIDE} koordinátával.
+   */
+  @SuppressWarnings("ReturnOfCollectionOrArrayField")
+  double[] getMarkerPoints() {
+    return markerPoints;
+  }
+
+  /**
+   * @return Az összevont vonalszakaszok végpontjai, szakaszonként {@link #SEGMENT_STRIDE} koordinátával;
+   * előbb a vízszintes, majd a függőleges szakaszok.
+   */
+  @SuppressWarnings("ReturnOfCollectionOrArrayField")
+  double[] getSegmentPoints() {
+    return segmentPoints;
+  }
+
+  /**
+   * A négyzetrács geometriájának előállítása.
+   * @param grid A négyzetrács.
+   * @return A négyzetrács jelenlegi elemeiből előállított geometria.
+   */
+  static GridGeometry compile(Grid grid) {
+    int size = grid.getSize();
+    byte[][] items = grid.getItems();
+
+    int markers = 0;
+    byte[][] segs = new byte[size + 1][size + 1];
+    for (int iy = 0; iy < size; iy++) {
+      for (int ix = 0; ix < size; ix++) {
+        byte b = items[iy][ix];
+        assert b == Grid.ITEM_EMPTY || b == Grid.ITEM_SQUARE || b == Grid.ITEM_SUN || b == Grid.ITEM_STAR;
+        if (b == Grid.ITEM_SQUARE) {
+          // Szegmensekre bontjuk a négyzetet
+          segs[iy][ix] = BOTH;   // bal és alsó
+          segs[iy][ix + 1] |= VERT;   // jobb
+          segs[iy + 1][ix] |= HORZ;   // felső
+        } else if (b != Grid.ITEM_EMPTY) {
+          markers++;
+        }
+      }
+    }
+
+    byte[] markerTypes = new byte[markers];
+    double[] markerPoints = new double[markers * MARKER_STRIDE];
+    int m = 0;
+    for (int iy = 0; iy < size; iy++) {
+      for (int ix = 0; ix < size; ix++) {
+        byte b = items[iy][ix];
+        if (b == Grid.ITEM_SUN || b == Grid.ITEM_STAR) {
+          markerTypes[m] = b;
+          int off = m * MARKER_STRIDE;
+          putCorners(markerPoints, off, Transformer.getPoints(ix - 1, iy - 1, ix + 1, iy + 1));
+          putCorners(markerPoints, off + 8, Transformer.getPoints(ix, iy));
+          m++;
+        }
+      }
+    }
+
+    SegmentList sl = new SegmentList();
+
+    // Vízszintes szegmensek
+    for (int row = 0; row <= size; row++) {
+      int start = -1;
+      for (int col = 0; col <= size; col++) {
+        byte s = segs[row][col];
+        if (start == -1 && (s & HORZ) != 0) {
+          // Itt kezdődik egy szegmens
+          start = col;
+        } else if (start != -1 && (s & HORZ) == 0) {
+          // Végére értünk egy szegmensnek
+          if (row < size) {
+            sl.add(start, row, col - 1, row, 3, 2);
+          } else {
+            sl.add(start, row - 1, col - 1, row - 1, 0, 1);
+          }
+          start = -1;
+        }
+      }
+      if (start != -1) {
+        if (row < size) {
+          sl.add(start, row, size - 1, row, 3, 2);
+        } else {
+          sl.add(start, row - 1, size - 1, row - 1, 0, 1);
+        }
+      }
+    }
+
+    // Függőleges szegmensek
+    for (int col = 0; col <= size; col++) {
+      int start = -1;
+      for (int row = 0; row <= size; row++) {
+        byte s = segs[row][col];
+        if (start == -1 && (s & VERT) != 0) {
+          // Itt kezdődik egy szegmens
+          start = row;
+        } else if (start != -1 && (s & VERT) == 0) {
+          // Végére értünk egy szegmensnek
+          if (col < size) {
+            sl.add(col, start, col, row - 1, 0, 3);
+          } else {
+            sl.add(col - 1, start, col - 1, row - 1, 1, 2);
+          }
+          start = -1;
+        }
+      }
+      if (start != -1) {
+        if (col < size) {
+          sl.add(col, start, col, size - 1, 0, 3);
+        } else {
+          sl.add(col - 1, start, col - 1, size - 1, 1, 2);
+        }
+      }
+    }
+
+    return new GridGeometry(markerTypes, markerPoints, sl.toArray());
+  }
+
+  private static void putCorners(double[] dest, int off, double[][] points) {
+    for (int i = 0; i < 4; i++) {
+      dest[off + i * 2] = points[i][0];
+      dest[off + i * 2 + 1] = points[i][1];
+    }
+  }
+
+  /**
+   * A vonalszakaszok gyűjtése.
+   */
+  private static final class SegmentList {
+
+    private double[] points = new double[16 * SEGMENT_STRIDE];
+
+    private int length;
+
+    /**
+     * Egy cellatéglalap két sarka közötti szakasz hozzáadása.
+     * @param x1 A cellatéglalap egyik sarkának X koordinátája.
+     * @param y1 A cellatéglalap egyik sarkának Y koordinátája.
+     * @param x2 A cellatéglalap másik sarkának X koordinátája.
+     * @param y2 A cellatéglalap másik sarkának Y koordinátája.
+     * @param p1 A szakasz kezdőpontja: a cellatéglalap sarkának indexe (BF, JF, JA, BA).
+     * @param p2 A szakasz végpontja: a cellatéglalap sarkának indexe (BF, JF, JA, BA).
+     */
+    void add(int x1, int y1, int x2, int y2, int p1, int p2) {
+      double[][] ps = Transformer.getPoints(x1, y1, x2, y2);
+      if (length + SEGMENT_STRIDE > points.length) {
+        points = Arrays.copyOf(points, points.length * 2);
+      }
+      points[length++] = ps[p1][0];
+      points[length++] = ps[p1][1];
+      points[length++] = ps[p2][0];
+      points[length++] = ps[p2][1];
+    }
+
+    double[] toArray() {
+      return Arrays.copyOf(points, length);
+    }
+  }
+}
@@ -1,7 +1,6 @@
 package hu.akusius.palenque.anigifmaker.rendering;
 
-import java.awt.Dimension;
-import java.awt.Graphics2D;
+import hu.akusius.palenque.anigifmaker.util.CancelUtils;
 import org.other.Matrix;
 
 /**
@@ -10,153 +9,99 @@ import org.other.Matrix;
  */
 final class GridRenderer {
 
-  private static final byte HORZ = 1;
-
-  private static final byte VERT = 2;
-
-  private static final byte BOTH = HORZ | VERT;
-
   /**
    * A megadott négyzetrács kirajzolása.
+   * A négyzetrács geometriája befagyasztott négyzetrács esetén csak egyszer áll elő (lásd {@link Grid#getGeometry()}),
+   * így a kirajzoláskor már csak a transzformálás és a projekció marad.
    * @param grid A kirajzolandó négyzetrács
    * @param transformMatrix Az alkalmazandó transzformációs mátrix.
    * @param g A kirajzolás célja.
    * @param zoom A nagyítás mértéke.
-   * @param dim A kirajzolás dimenziói.
+   * @param ctx A kirajzolás kontextusa.
+   * @throws java.util.concurrent.CancellationException A kirajzolást végző szál meg lett szakítva.
    */
-  public static void render(Grid grid, final Matrix transformMatrix, final Graphics2D g, final double zoom, final Dimension dim) {
-    int size = grid.getSize();
-    int ci = (size - 1) / 2;
-    int cx = grid.getCenterX();
-    int cy = grid.getCenterY();
-    final int iax = cx - ci;
-    final int iay = cy - ci;
-    byte[][] items = grid.getItems();
-    byte[][] segs = null;
-    for (int iy = 0; iy < size; iy++) {
-      for (int ix = 0; ix < size; ix++) {
-        byte b = items[iy][ix];
-        if (b == Grid.ITEM_EMPTY) {
-          continue;
-        }
-
-        int x = ix + iax;
-        int y = iy + iay;
-
-        assert b == Grid.ITEM_SQUARE || b == Grid.ITEM_SUN || b == Grid.ITEM_STAR;
-
-        if (b == Grid.ITEM_SQUARE) {
-          // Itt csak szegmensekre bontjuk a négyzetet, és eltároljuk ezeket
-          if (segs == null) {
-            segs = new byte[size + 1][size + 1];
+  public static void render(Grid grid, Matrix transformMatrix, Canvas g, double zoom, RenderContext ctx) {
+    CancelUtils.checkCancelled();
+    GridGeometry geometry = grid.getGeometry();
+    int ci = (grid.getSize() - 1) / 2;
+    int iax = grid.getCenterX() - ci;
+    int iay = grid.getCenterY() - ci;
+
+    byte[] markerTypes = geometry.getMarkerTypes();
+    if (markerTypes.length > 0) {
+      // Jelölőnként 8 pont: a külső négyzet és a belső cella sarkai
+      int count = markerTypes.length * GridGeometry.MARKER_STRIDE / 2;
+      RenderContext.VertexBuffer vb = ctx.getVertexBuffer(count);
+      loadPoints(geometry.getMarkerPoints(), count, iax, iay, vb);
+      Transformer.transform(vb.getXs(), vb.getYs(), vb.getZs(), count, transformMatrix);
+      int[] ps = vb.getProjected();
+      Transformer.project(vb.getXs(), vb.getYs(), vb.getZs(), count, zoom, ctx, ps);
+
+      for (int i = 0; i < markerTypes.length; i++) {
+        int o1 = i * GridGeometry.MARKER_STRIDE;
+        int o2 = o1 + 8;
+        if (markerTypes[i] == Grid.ITEM_SUN) {
+          if (isVisible(ps, o1)) {
+            g.drawLine(ps[o1], ps[o1 + 1], ps[o1 + 4], ps[o1 + 5]);
+            g.drawLine(ps[o1 + 2], ps[o1 + 3], ps[o1 + 6], ps[o1 + 7]);
           }
-          segs[iy][ix] = BOTH;   // bal és alsó
-          segs[iy][ix + 1] |= VERT;   // jobb
-          segs[iy + 1][ix] |= HORZ;   // felső
-        } else if (b == Grid.ITEM_SUN) {
-          int[][] ps = Transformer.project(x - 1, y - 1, x + 1, y + 1, transformMatrix, zoom, dim);
-          if (ps != null) {
-            g.drawLine(ps[0][0], ps[0][1], ps[2][0], ps[2][1]);
-            g.drawLine(ps[1][0], ps[1][1], ps[3][0], ps[3][1]);
-          }
-        } else if (b == Grid.ITEM_STAR) {
-          int[][] ps1 = Transformer.project(x - 1, y - 1, x + 1, y + 1, transformMatrix, zoom, dim);
-          int[][] ps2 = Transformer.project(x, y, transformMatrix, zoom, dim);
-          if (ps1 != null && ps2 != null) {
-            g.drawLine(ps1[0][0], ps1[0][1], ps1[2][0], ps1[2][1]);
-            g.drawLine(ps1[1][0], ps1[1][1], ps1[3][0], ps1[3][1]);
+        } else {
+          assert markerTypes[i] == Grid.ITEM_STAR;
+          if (isVisible(ps, o1) && isVisible(ps, o2)) {
+            g.drawLine(ps[o1], ps[o1 + 1], ps[o1 + 4], ps[o1 + 5]);
+            g.drawLine(ps[o1 + 2], ps[o1 + 3], ps[o1 + 6], ps[o1 + 7]);
             g.drawPolyline(
-                    new int[]{ps2[0][0], ps2[1][0], ps2[2][0], ps2[3][0], ps2[0][0]},
-                    new int[]{ps2[0][1], ps2[1][1], ps2[2][1], ps2[3][1], ps2[0][1]},
+                    new int[]{ps[o2], ps[o2 + 2], ps[o2 + 4], ps[o2 + 6], ps[o2]},
+                    new int[]{ps[o2 + 1], ps[o2 + 3], ps[o2 + 5], ps[o2 + 7], ps[o2 + 1]},
                     5);
           }
         }
       }
     }
 
-    if (segs == null) {
-      // Készen vagyunk
-      return;
-    }
-
-    SegmentRenderer renderer = new SegmentRenderer() {
-
-      @Override
-      public void renderSegment(int x1, int y1, int x2, int y2, int p1, int p2) {
-        // System.out.println(String.format("x1: %d, y1: %d, x2: %d, y2: %d, p1: %d, p2: %d", x1, y1, x2, y2, p1, p2));
-        double[][] points = Transformer.getPoints(x1 + iax, y1 + iay, x2 + iax, y2 + iay);
-        double[][] ps = new double[2][3];
-        ps[0] = points[p1];
-        ps[1] = points[p2];
-        ps = Transformer.transform(ps, transformMatrix);
-        int[][] pps = Transformer.projectLine(ps, zoom, dim);
-        if (pps != null) {
-          g.drawLine(pps[0][0], pps[0][1], pps[1][0], pps[1][1]);
-        }
-      }
-    };
-
-    // Vízszintes szegmensek
-    for (int row = 0; row <= size; row++) {
-      int start = -1;
-      for (int col = 0; col <= size; col++) {
-        byte s = segs[row][col];
-        if (start == -1 && (s & HORZ) != 0) {
-          // Itt kezdődik egy szegmens
-          start = col;
-        } else if (start != -1 && (s & HORZ) == 0) {
-          // Végére értünk egy szegmensnek, meghúzzuk a vonalat
-          if (row < size) {
-            renderer.renderSegment(start, row, col - 1, row, 3, 2);
-          } else {
-            renderer.renderSegment(start, row - 1, col - 1, row - 1, 0, 1);
-          }
-          start = -1;
-        }
-      }
-      if (start != -1) {
-        if (row < size) {
-          renderer.renderSegment(start, row, size - 1, row, 3, 2);
-        } else {
-          renderer.renderSegment(start, row - 1, size - 1, row - 1, 0, 1);
-        }
+    double[] sps = geometry.getSegmentPoints();
+    if (sps.length > 0) {
+      int count = sps.length / 2;
+      RenderContext.VertexBuffer vb = ctx.getVertexBuffer(count);
+      loadPoints(sps, count, iax, iay, vb);
+      Transformer.transform(vb.getXs(), vb.getYs(), vb.getZs(), count, transformMatrix);
+      int[] ls = vb.getProjected();
+      int visible = Transformer.projectLines(vb.getXs(), vb.getYs(), vb.getZs(), count / 2, zoom, ctx, ls);
+      for (int i = 0; i < visible * 4; i += 4) {
+        g.drawLine(ls[i], ls[i + 1], ls[i + 2], ls[i + 3]);
       }
     }
+  }
 
-    // Föggőleges szegmensek
-    for (int col = 0; col <= size; col++) {
-      int start = -1;
-      for (int row = 0; row <= size; row++) {
-        byte s = segs[row][col];
-        if (start == -1 && (s & VERT) != 0) {
-          // Itt kezdődik egy szegmens
-          start = row;
-        } else if (start != -1 && (s & VERT) == 0) {
-          // Végére értünk egy szegmensnek, meghúzzuk a vonalat
-          if (col < size) {
-            renderer.renderSegment(col, start, col, row - 1, 0, 3);
-          } else {
-            renderer.renderSegment(col - 1, start, col - 1, row - 1, 1, 2);
-          }
-          start = -1;
-        }
-      }
-      if (start != -1) {
-        if (col < size) {
-          renderer.renderSegment(col, start, col, size - 1, 0, 3);
-        } else {
-          renderer.renderSegment(col - 1, start, col - 1, size - 1, 1, 2);
-        }
-      }
+  /**
+   * A geometria pontjainak betöltése a pufferbe, a cellák abszolút eltolásával.
+   * @param points A pontok (X, Y) koordinátái.
+   * @param count A pontok száma.
+   * @param iax A cellák abszolút X eltolása.
+   * @param iay A cellák abszolút Y eltolása.
+   * @param vb A puffer.
+   */
+  private static void loadPoints(double[] points, int count, int iax, int iay, RenderContext.VertexBuffer vb) {
+    double[] xs = vb.getXs();
+    double[] ys = vb.getYs();
+    double[] zs = vb.getZs();
+    for (int i = 0; i < count; i++) {
+      xs[i] = points[i * 2] + iax;
+      ys[i] = points[i * 2 + 1] + iay;
+      zs[i] = 0.0d;
     }
   }
 
-  private GridRenderer() {
+  /**
+   * @param ps A vetített pontok.
+   * @param off Az első pont X koordinátájának indexe.
+   * @return {@code true}, ha az indextől kezdődő 4 pont mindegyike leképezhető volt.
+   */
+  private static boolean isVisible(int[] ps, int off) {
+    return ps[off] != Transformer.NOT_VISIBLE && ps[off + 2] != Transformer.NOT_VISIBLE
+            && ps[off + 4] != Transformer.NOT_VISIBLE && ps[off + 6] != Transformer.NOT_VISIBLE;
   }
 
-  private interface SegmentRenderer {
-
-    void renderSegment(int x1, int y1, int x2, int y2, int p1, int p2);
+  private GridRenderer() {
   }
-
 }
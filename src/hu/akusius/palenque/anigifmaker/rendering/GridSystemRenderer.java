@@ -1,11 +1,8 @@
 package hu.akusius.palenque.anigifmaker.rendering;
 
 import java.awt.Color;
-import java.awt.Dimension;
-import java.awt.Graphics2D;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
 import org.other.Matrix;
 
 /**
@@ -22,51 +19,70 @@ public final class GridSystemRenderer {
 
   private static final Color strongColor = new Color(100, 100, 100, 90);
 
-  private static List<Line> normalLines;
+  /**
+   * A normál vonalak végpontjai (nem módosulnak).
+   */
+  private static final double[][][] normalLines;
+
+  /**
+   * A kiemelt vonalak végpontjai (nem módosulnak).
+   */
+  private static final double[][][] strongLines;
 
-  private static List<Line> strongLines;
+  static {
+    int num = RANGE * 2 + 1;
+    List<double[][]> normal = new ArrayList<>(num * 2);
+    List<double[][]> strong = new ArrayList<>(num * 2);
 
-  private static Matrix lastTransMatrix;
+    for (int i = 0; i <= RANGE; i++) {
+      addLine(normal, strong, i, -RANGE, i, RANGE, 1, 2, i);
+      addLine(normal, strong, -RANGE, i, RANGE, i, 0, 1, i);
+    }
 
-  private static double lastZoom = -1.0;
+    for (int i = 0; i >= -RANGE; i--) {
+      addLine(normal, strong, i, -RANGE, i, RANGE, 0, 3, i);
+      addLine(normal, strong, -RANGE, i, RANGE, i, 3, 2, i);
+    }
 
-  private static Dimension lastDim;
+    normalLines = normal.toArray(new double[normal.size()][][]);
+    strongLines = strong.toArray(new double[strong.size()][][]);
+  }
 
   /**
    * A négyzetrács kirajzolása.
+   * A vonalak vetületeit a kontextusban gyorsítótárazza.
    * @param g A kirajzolás célja.
    * @param transMatrix A transzformációs mátrix.
    * @param zoom A nagyítás mértéke.
-   * @param dim A megjelenítés dimenziói.
+   * @param ctx A kirajzolás kontextusa.
    */
-  public static void render(Graphics2D g, Matrix transMatrix, double zoom, Dimension dim) {
+  public static void render(Canvas g, Matrix transMatrix, double zoom, RenderContext ctx) {
     g.setColor(strongColor);
 
-    drawCenter(transMatrix, zoom, dim, g);
+    drawCenter(transMatrix, zoom, ctx, g);
 
-    if (normalLines == null || strongLines == null) {
-      createLines();
+    ProjectionCache cache = ctx.gridSystemCache;
+    if (cache == null) {
+      cache = ctx.gridSystemCache = new ProjectionCache();
     }
+    cache.update(transMatrix, zoom, ctx);
 
-    boolean needReproject
-            = !Objects.equals(transMatrix, lastTransMatrix) || zoom != lastZoom || !Objects.equals(dim, lastDim);
-
-    for (Line line : strongLines) {
-      line.draw(g, transMatrix, zoom, dim, needReproject);
-    }
+    drawLines(g, cache.strongPs);
 
     g.setColor(normalColor);
 
-    for (Line line : normalLines) {
-      line.draw(g, transMatrix, zoom, dim, needReproject);
-    }
+    drawLines(g, cache.normalPs);
+  }
 
-    lastTransMatrix = transMatrix;
-    lastZoom = zoom;
-    lastDim = dim;
+  private static void drawLines(Canvas g, int[][][] pss) {
+    for (int[][] ps : pss) {
+      if (ps != null) {
+        g.drawLine(ps[0][0], ps[0][1], ps[1][0], ps[1][1]);
+      }
+    }
   }
 
-  private static void drawCenter(Matrix transMatrix, double zoom, Dimension dim, Graphics2D g) {
+  private static void drawCenter(Matrix transMatrix, double zoom, RenderContext ctx, Canvas g) {
     double[] c = Transformer.getCenter(0, 0);
     double d = Transformer.CELL_SIZE / 6.0;
 
@@ -78,67 +94,60 @@ public final class GridSystemRenderer {
 
     lps = Transformer.transform(lps, transMatrix);
 
-    int[][] ps = Transformer.project(lps, zoom, dim);
+    int[][] ps = Transformer.project(lps, zoom, ctx);
     if (ps != null) {
       g.drawLine(ps[0][0], ps[0][1], ps[1][0], ps[1][1]);
       g.drawLine(ps[2][0], ps[2][1], ps[3][0], ps[3][1]);
     }
   }
 
-  private static void createLines() {
-    int num = RANGE * 2 + 1;
-    normalLines = new ArrayList<>(num);
-    strongLines = new ArrayList<>(num);
-
-    for (int i = 0; i <= RANGE; i++) {
-      addLine(i, -RANGE, i, RANGE, 1, 2, i);
-      addLine(-RANGE, i, RANGE, i, 0, 1, i);
-    }
-
-    for (int i = 0; i >= -RANGE; i--) {
-      addLine(i, -RANGE, i, RANGE, 0, 3, i);
-      addLine(-RANGE, i, RANGE, i, 3, 2, i);
-    }
-  }
-
-  private static void addLine(int x1, int y1, int x2, int y2, int p1, int p2, int num) {
+  private static void addLine(List<double[][]> normal, List<double[][]> strong,
+          int x1, int y1, int x2, int y2, int p1, int p2, int num) {
     double[][] ps = Transformer.getPoints(x1, y1, x2, y2);
-    Line line = new Line(ps[p1][0], ps[p1][1], ps[p2][0], ps[p2][1]);
+    double[][] line = new double[][]{{ps[p1][0], ps[p1][1], 0.0d}, {ps[p2][0], ps[p2][1], 0.0d}};
     if (num % STRONG_LINE_STEP == 0) {
-      strongLines.add(line);
+      strong.add(line);
     } else {
-      normalLines.add(line);
+      normal.add(line);
     }
   }
 
   private GridSystemRenderer() {
   }
 
-  private static final class Line {
+  /**
+   * A vonalak vetületeinek gyorsítótára egy adott kontextushoz.
+   * Csak akkor vetít újra, ha a mátrix vagy a nagyítás megváltozott.
+   */
+  static final class ProjectionCache {
 
-    double[][] points;
+    private final int[][][] normalPs = new int[normalLines.length][][];
 
-    int[][] ps;
+    private final int[][][] strongPs = new int[strongLines.length][][];
 
-    Line() {
-    }
+    private Matrix lastTransMatrix;
 
-    Line(double x1, double y1, double x2, double y2) {
-      this.points = new double[][]{{x1, y1, 0.0d}, {x2, y2, 0.0d}};
-    }
+    private double lastZoom = -1.0;
 
-    void draw(Graphics2D g, Matrix transMatrix, double z, Dimension d, boolean needReproject) {
-      if (ps == null || needReproject) {
-        final double[][] tps;
-        if (transMatrix != null) {
-          tps = Transformer.transform(points, transMatrix);
-        } else {
-          tps = points;
-        }
-        ps = Transformer.projectLine(tps, z, d);
+    void update(Matrix transMatrix, double zoom, RenderContext ctx) {
+      if (lastTransMatrix != null && lastTransMatrix.equals(transMatrix) && zoom == lastZoom) {
+        return;
       }
-      if (ps != null) {
-        g.drawLine(ps[0][0], ps[0][1], ps[1][0], ps[1][1]);
+
+      project(normalLines, normalPs, transMatrix, zoom, ctx);
+      project(strongLines, strongPs, transMatrix, zoom, ctx);
+
+      if (lastTransMatrix == null) {
+        lastTransMatrix = new Matrix();
+      }
+      lastTransMatrix.copy(transMatrix);
+      lastZoom = zoom;
+    }
+
+    private static void project(double[][][] lines, int[][][] pss, Matrix transMatrix, double zoom, RenderContext ctx) {
+      for (int i = 0; i < lines.length; i++) {
+        double[][] tps = transMatrix != null ? Transformer.transform(lines[i], transMatrix) : lines[i];
+        pss[i] = Transformer.projectLine(tps, zoom, ctx);
       }
     }
   }
@@ -0,0 +1,77 @@
+package hu.akusius.palenque.anigifmaker.rendering;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+/**
+ * A Java2D-n ({@link Graphics2D}) keresztül rajzoló {@link Canvas}.
+ * @author Bujdosó Ákos
+ */
+public final class Java2DCanvas implements Canvas {
+
+  private final Graphics2D g;
+
+  /**
+   * Új példány létrehozása.
+   * @param g A kirajzolás célja (az élsimítást a hívónak kell beállítania).
+   */
+  public Java2DCanvas(Graphics2D g) {
+    if (g == null) {
+      throw new IllegalArgumentException();
+    }
+    this.g = g;
+  }
+
+  /**
+   * @return A kirajzolás célja.
+   */
+  public Graphics2D getGraphics() {
+    return g;
+  }
+
+  @Override
+  public Canvas create() {
+    return new Java2DCanvas((Graphics2D) g.create());
+  }
+
+  @Override
+  public void dispose() {
+    g.dispose();
+  }
+
+  @Override
+  public void setColor(Color color) {
+    g.setColor(color);
+  }
+
+  @Override
+  public void setAlpha(float alpha) {
+    g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, alpha));
+  }
+
+  @Override
+  public void fillRect(int x, int y, int width, int height) {
+    g.fillRect(x, y, width, height);
+  }
+
+  @Override
+  public void drawLine(int x1, int y1, int x2, int y2) {
+    g.drawLine(x1, y1, x2, y2);
+  }
+
+  @Override
+  public void drawPolyline(int[] xs, int[] ys, int n) {
+    g.drawPolyline(xs, ys, n);
+  }
+
+  @Override
+  public void drawImage(BufferedImage image, int x, int y, int width, int height) {
+    Graphics2D ig = (Graphics2D) g.create();
+    ig.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+    ig.drawImage(image, x, y, width, height, null);
+    ig.dispose();
+  }
+}
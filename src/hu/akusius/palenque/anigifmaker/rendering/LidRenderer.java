@@ -1,9 +1,6 @@
 package hu.akusius.palenque.anigifmaker.rendering;
 
 import java.awt.Color;
-import java.awt.Dimension;
-import java.awt.Graphics2D;
-import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import javax.imageio.ImageIO;
@@ -23,8 +20,6 @@ public final class LidRenderer {
 
   private static final double[][] corners;
 
-  private static BufferedImage image;
-
   static {
     double hw = width / 2d;
     double hh = width * hwratio / 2d;
@@ -41,44 +36,52 @@ public final class LidRenderer {
    * @param transMatrix A transzformációs mátrix.
    * @param g A kirajzolás célja.
    * @param zoom A nagyítás mértéke.
-   * @param dim A megjelenítés dimenziói.
+   * @param ctx A kirajzolás kontextusa.
    */
-  public static void render(Matrix transMatrix, Graphics2D g, double zoom, Dimension dim) {
-    try {
-      if (image == null) {
-        image = ImageIO.read(LidRenderer.class.getResource("lid.jpg"));
-      }
-
-      g = (Graphics2D) g.create();
-
-      if (transMatrix.hasRotation()) {
-        // Csak a körvonalakat rajzoljuk ki
-        g.setColor(Color.GRAY);
-        double[][] tps = Transformer.transform(corners, transMatrix);
-        for (int i = 0; i < 4; i++) {
-          int[][] ps = Transformer.projectLine(new double[][]{tps[i], tps[i < 3 ? i + 1 : 0]}, zoom, dim);
-          if (ps != null) {
-            g.drawLine(ps[0][0], ps[0][1], ps[1][0], ps[1][1]);
-          }
+  public static void render(Matrix transMatrix, Canvas g, double zoom, RenderContext ctx) {
+    BufferedImage image = ImageHolder.image;
+
+    g = g.create();
+
+    if (transMatrix.hasRotation()) {
+      // Csak a körvonalakat rajzoljuk ki
+      g.setColor(Color.GRAY);
+      double[][] tps = Transformer.transform(corners, transMatrix);
+      for (int i = 0; i < 4; i++) {
+        int[][] ps = Transformer.projectLine(new double[][]{tps[i], tps[i < 3 ? i + 1 : 0]}, zoom, ctx);
+        if (ps != null) {
+          g.drawLine(ps[0][0], ps[0][1], ps[1][0], ps[1][1]);
         }
-        return;
       }
+      return;
+    }
 
-      double[][] tps = Transformer.transform(new double[][]{corners[0], corners[2]}, transMatrix);
-      int[][] ps = Transformer.project(tps, zoom, dim);
+    double[][] tps = Transformer.transform(new double[][]{corners[0], corners[2]}, transMatrix);
+    int[][] ps = Transformer.project(tps, zoom, ctx);
 
-      int w = ps[1][0] - ps[0][0] + 1;
-      int h = ps[1][1] - ps[0][1] + 1;
+    int w = ps[1][0] - ps[0][0] + 1;
+    int h = ps[1][1] - ps[0][1] + 1;
 
-//      g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
-      g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-      g.drawImage(image, ps[0][0], ps[0][1], w, h, null);
-    } catch (IOException ex) {
-      throw new RuntimeException(ex);
-    }
+    g.drawImage(image, ps[0][0], ps[0][1], w, h);
   }
 
   private LidRenderer() {
   }
 
+  /**
+   * A fedélkép csak az első használatkor töltődik be (szálbiztosan).
+   */
+  private static final class ImageHolder {
+
+    static final BufferedImage image;
+
+    static {
+      try {
+        image = ImageIO.read(LidRenderer.class.getResource("lid.jpg"));
+      } catch (IOException ex) {
+        throw new RuntimeException(ex);
+      }
+    }
+  }
+
 }
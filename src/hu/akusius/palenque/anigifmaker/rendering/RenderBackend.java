@@ -0,0 +1,35 @@
+package hu.akusius.palenque.anigifmaker.rendering;
+
+/**
+ * A képkockák kirajzolásának módja.
+ * @author Bujdosó Ákos
+ */
+public enum RenderBackend {
+
+  /**
+   * Kirajzolás a Java2D-vel ({@link Java2DCanvas}).
+   */
+  JAVA2D,
+  /**
+   * Kirajzolás közvetlenül a képkocka pixeltömbjébe ({@link RasterCanvas}).
+   * Gyorsabb, de a képpontok kissé eltérhetnek a Java2D-s kirajzolásétól.
+   */
+  RASTER;
+
+  /**
+   * A megadott név alapján a mód visszaadása (kis- és nagybetűtől függetlenül).
+   * @param name A mód neve.
+   * @param defaultBackend Az alapértelmezett mód, ha a név {@code null} vagy ismeretlen.
+   * @return A módnak megfelelő érték.
+   */
+  public static RenderBackend parse(String name, RenderBackend defaultBackend) {
+    if (name != null) {
+      for (RenderBackend b : values()) {
+        if (b.name().equalsIgnoreCase(name.trim())) {
+          return b;
+        }
+      }
+    }
+    return defaultBackend;
+  }
+}
@@ -0,0 +1,163 @@
+package hu.akusius.palenque.anigifmaker.rendering;
+
+import java.awt.Dimension;
+
+/**
+ * Egy kirajzolás (képkocka-generálás) állapota: a fókusztávolság, a vetítési gyorsítótárak
+ * és az újrahasznosítható munkapufferek.
+ * Egy példányt egyszerre csak egy szál használhat, de a különböző példányok egymástól függetlenek,
+ * így párhuzamosan is lehet velük rajzolni.
+ * @author Bujdosó Ákos
+ */
+public final class RenderContext {
+
+  private final Dimension dim;
+
+  private final double baseZoom;
+
+  private final double fl;
+
+  private final int minSize;
+
+  /**
+   * A koordinátarendszer vonalainak vetületei (lásd {@link GridSystemRenderer}).
+   */
+  GridSystemRenderer.ProjectionCache gridSystemCache;
+
+  private final VertexBuffer vertexBuffer = new VertexBuffer();
+
+  /**
+   * Új kontextus létrehozása.
+   * @param dim A megjelenítés dimenziói.
+   * @param baseZoom A nagyítási érték, amihez az FL igazítva lesz.
+   */
+  public RenderContext(Dimension dim, double baseZoom) {
+    if (dim == null || dim.width <= 0 || dim.height <= 0 || baseZoom <= 0.0) {
+      throw new IllegalArgumentException();
+    }
+    this.dim = new Dimension(dim);
+    this.baseZoom = baseZoom;
+    this.fl = Transformer.computeFL(dim, baseZoom);
+    this.minSize = Math.min(dim.width, dim.height);
+  }
+
+  /**
+   * @return A megjelenítés dimenziói.
+   */
+  public Dimension getDim() {
+    return new Dimension(dim);
+  }
+
+  /**
+   * @return A megjelenítés szélessége.
+   */
+  public int getWidth() {
+    return dim.width;
+  }
+
+  /**
+   * @return A megjelenítés magassága.
+   */
+  public int getHeight() {
+    return dim.height;
+  }
+
+  /**
+   * @return A nagyítási érték, amihez az FL igazítva lett.
+   */
+  public double getBaseZoom() {
+    return baseZoom;
+  }
+
+  /**
+   * @return Az igazított fókusztávolság.
+   */
+  public double getFL() {
+    return fl;
+  }
+
+  /**
+   * @return A szélesség és a magasság közül a kisebbik.
+   */
+  int getMinSize() {
+    return minSize;
+  }
+
+  /**
+   * Visszaadja, hogy a kontextus a megadott paraméterekhez készült-e.
+   * @param width A megjelenítés szélessége.
+   * @param height A megjelenítés magassága.
+   * @param baseZoom A nagyítási érték, amihez az FL igazítva lett.
+   * @return {@code true}, ha újrafelhasználható a kontextus.
+   */
+  public boolean matches(int width, int height, double baseZoom) {
+    return dim.width == width && dim.height == height && this.baseZoom == baseZoom;
+  }
+
+  /**
+   * A kötegelt transzformáláshoz és projekcióhoz használható munkapuffer (lásd {@link GridRenderer}).
+   * @param points A szükséges pontok száma.
+   * @return A legalább ennyi pont tárolására alkalmas puffer (a tartalma tetszőleges).
+   */
+  VertexBuffer getVertexBuffer(int points) {
+    vertexBuffer.ensureCapacity(points);
+    return vertexBuffer;
+  }
+
+  /**
+   * Pontok koordinátái oszlopfolytonosan, a {@link Transformer} kötegelt műveleteihez,
+   * valamint a vetített pontok helye.
+   */
+  static final class VertexBuffer {
+
+    private double[] xs = new double[0];
+
+    private double[] ys = new double[0];
+
+    private double[] zs = new double[0];
+
+    private int[] projected = new int[0];
+
+    private void ensureCapacity(int points) {
+      if (xs.length < points) {
+        int n = Math.max(points, xs.length * 2);
+        xs = new double[n];
+        ys = new double[n];
+        zs = new double[n];
+        projected = new int[n * 2];
+      }
+    }
+
+    /**
+     * @return A pontok X koordinátái.
+     */
+    @SuppressWarnings("ReturnOfCollectionOrArrayField")
+    double[] getXs() {
+      return xs;
+    }
+
+    /**
+     * @return A pontok Y koordinátái.
+     */
+    @SuppressWarnings("ReturnOfCollectionOrArrayField")
+    double[] getYs() {
+      return ys;
+    }
+
+    /**
+     * @return A pontok Z koordinátái.
+     */
+    @SuppressWarnings("ReturnOfCollectionOrArrayField")
+    double[] getZs() {
+      return zs;
+    }
+
+    /**
+     * @return A vetített pontok helye (pontonként két elem).
+     */
+    @SuppressWarnings("ReturnOfCollectionOrArrayField")
+    int[] getProjected() {
+      return projected;
+    }
+  }
+}
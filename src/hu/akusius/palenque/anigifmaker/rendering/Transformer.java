@@ -13,25 +13,24 @@ public final class Transformer {
 
   public static final double defaultFL = 60;
 
-  private static double FL = defaultFL;
+  /**
+   * A kötegelt projekcióban a nem leképezhető (a közelsík mögötti) pont X koordinátája.
+   */
+  public static final int NOT_VISIBLE = Integer.MIN_VALUE;
 
   /**
    * Az FL igazítása, hogy egyenlő nagyságúak legyenek a négyzetek.
-   * @param dim Az új méret. {@code null} esetén visszaállítja az eredeti FL-t.
+   * @param dim A megjelenítés mérete. {@code null} esetén az eredeti FL-t adja vissza.
    * @param zoom A nagyítási érték.
+   * @return Az igazított FL.
    */
-  public static void adjustFL(Dimension dim, double zoom) {
+  public static double computeFL(Dimension dim, double zoom) {
     if (dim == null) {
-      FL = defaultFL;
-      return;
+      return defaultFL;
     }
     int size = Math.min(dim.width, dim.height);
     double fact = Math.round(size / (defaultFL / zoom + 1.0));
-    FL = (size / fact - 1.0) * zoom;
-  }
-
-  public static double getCurrentFL() {
-    return FL;
+    return (size / fact - 1.0) * zoom;
   }
 
   /**
@@ -107,22 +106,22 @@ public final class Transformer {
    * A megadott pont (vektor) perspektivikus projekciója.
    * @param point A projektálandó pont (vektor).
    * @param zoom A nagyítás mértéke.
-   * @param dim A megjelenítés dimenziói.
+   * @param ctx A kirajzolás kontextusa.
    * @return A perspektivikus projekció eredménye, vagy {@code null}, ha nem képezhető le az adott pont.
    */
-  public static int[] project(double[] point, double zoom, Dimension dim) {
+  public static int[] project(double[] point, double zoom, RenderContext ctx) {
     assert point.length == 3;
     assert zoom != 0;
 
-    double near = FL / zoom;
+    double near = ctx.getFL() / zoom;
     if (point[2] > near) {
       return null;
     }
     double fact = 1.0 / (near - point[2] + 1.0);  // kamera 1.0 távolságra van near-től
-    fact *= Math.min(dim.width, dim.height);
+    fact *= ctx.getMinSize();
 
-    double x = dim.width / 2.0 + fact * point[0];
-    double y = dim.height / 2.0 - fact * point[1];
+    double x = ctx.getWidth() / 2.0 + fact * point[0];
+    double y = ctx.getHeight() / 2.0 - fact * point[1];
     return new int[]{(int) (x + .5), (int) (y + .5)};
   }
 
@@ -130,15 +129,15 @@ public final class Transformer {
    * A megadott pontok perspektivikus projekciója 3D-ban.
    * @param points A projektálandó pontok.
    * @param zoom A nagyítás mértéke.
-   * @param dim A megjelenítés dimenziói.
+   * @param ctx A kirajzolás kontextusa.
    * @return A perspektivikus projekció eredménye, vagy {@code null}, ha nem képezhető le valamelyik pont.
    */
-  public static int[][] project(double[][] points, double zoom, Dimension dim) {
+  public static int[][] project(double[][] points, double zoom, RenderContext ctx) {
     int[][] r = new int[points.length][2];
     for (int i = 0; i < points.length; i++) {
       double[] p = points[i];
       assert p.length == 3;
-      int[] c = project(p, zoom, dim);
+      int[] c = project(p, zoom, ctx);
       if (c == null) {
         return null;
       }
@@ -154,15 +153,15 @@ public final class Transformer {
    * @param y A cella Y koordinátája.
    * @param transMatrix A transzformációs mátrix (vagy {@code null}, ha nincs szükség transzformálásra).
    * @param zoom A nagyítás mértéke.
-   * @param dim A megjelenítés dimenziói.
+   * @param ctx A kirajzolás kontextusa.
    * @return A cellát alkotó 4 pont tömbje (BF, JF, JA, BA sorrendben) vagy {@code null}, ha a cella nem (teljesen) látható.
    */
-  public static int[][] project(int x, int y, Matrix transMatrix, double zoom, Dimension dim) {
+  public static int[][] project(int x, int y, Matrix transMatrix, double zoom, RenderContext ctx) {
     double[][] points = getPoints(x, y);
     if (transMatrix != null) {
       points = transform(points, transMatrix);
     }
-    return project(points, zoom, dim);
+    return project(points, zoom, ctx);
   }
 
   /**
@@ -173,15 +172,15 @@ public final class Transformer {
    * @param y2 A cella másik sarkának Y koordinátája.
    * @param transMatrix A transzformációs mátrix (vagy {@code null}, ha nincs szükség transzformálásra).
    * @param zoom A nagyítás mértéke.
-   * @param dim A megjelenítés dimenziói.
+   * @param ctx A kirajzolás kontextusa.
    * @return A cellatéglalapot alkotó 4 pont tömbje (BF, JF, JA, BA sorrendben) vagy {@code null}, ha a cella nem látható.
    */
-  public static int[][] project(int x1, int y1, int x2, int y2, Matrix transMatrix, double zoom, Dimension dim) {
+  public static int[][] project(int x1, int y1, int x2, int y2, Matrix transMatrix, double zoom, RenderContext ctx) {
     double[][] points = getPoints(x1, y1, x2, y2);
     if (transMatrix != null) {
       points = transform(points, transMatrix);
     }
-    return project(points, zoom, dim);
+    return project(points, zoom, ctx);
   }
 
   /**
@@ -189,16 +188,16 @@ public final class Transformer {
    * Ha a vonal egyik vége a kamera mögött van, akkor automatikusan csonkolja a vonalat.
    * @param points A vonal két végpontjának koordinátái.
    * @param zoom A nagyítás mértéke.
-   * @param dim A megjelenítés dimenziói.
+   * @param ctx A kirajzolás kontextusa.
    * @return A perspektivikus projekció eredménye, vagy {@code null}, ha a vonal egyáltalán nem látható.
    */
-  public static int[][] projectLine(double[][] points, double zoom, Dimension dim) {
+  public static int[][] projectLine(double[][] points, double zoom, RenderContext ctx) {
     assert points.length == 2;
     assert points[0].length == 3;
     assert points[1].length == 3;
     assert zoom != 0;
 
-    double near = FL / zoom;
+    double near = ctx.getFL() / zoom;
     double z1 = points[0][2];
     double z2 = points[1][2];
 
@@ -212,7 +211,7 @@ public final class Transformer {
       ps[0][1] = points[1][1] + fact * (points[0][1] - points[1][1]);
       ps[0][2] = near;
       ps[1] = points[1];
-      return project(ps, zoom, dim);
+      return project(ps, zoom, ctx);
     }
     if (z2 > near) {
       double fact = (near - z1) / (z2 - z1);
@@ -221,9 +220,126 @@ public final class Transformer {
       ps[1][0] = points[0][0] + fact * (points[1][0] - points[0][0]);
       ps[1][1] = points[0][1] + fact * (points[1][1] - points[0][1]);
       ps[1][2] = near;
-      return project(ps, zoom, dim);
+      return project(ps, zoom, ctx);
+    }
+    return project(points, zoom, ctx);
+  }
+
+  /**
+   * Pontok kötegelt transzformálása helyben.
+   * Az eredmény bitre megegyezik a pontonkénti {@link #transform(double[], Matrix)} eredményével.
+   * @param xs A pontok X koordinátái.
+   * @param ys A pontok Y koordinátái.
+   * @param zs A pontok Z koordinátái.
+   * @param count A pontok száma.
+   * @param transMatrix A transzformációs mátrix.
+   */
+  public static void transform(double[] xs, double[] ys, double[] zs, int count, Matrix transMatrix) {
+    double m00 = transMatrix.get(0, 0), m01 = transMatrix.get(0, 1), m02 = transMatrix.get(0, 2), m03 = transMatrix.get(0, 3);
+    double m10 = transMatrix.get(1, 0), m11 = transMatrix.get(1, 1), m12 = transMatrix.get(1, 2), m13 = transMatrix.get(1, 3);
+    double m20 = transMatrix.get(2, 0), m21 = transMatrix.get(2, 1), m22 = transMatrix.get(2, 2), m23 = transMatrix.get(2, 3);
+    for (int i = 0; i < count; i++) {
+      double x = xs[i];
+      double y = ys[i];
+      double z = zs[i];
+      xs[i] = m00 * x + m01 * y + m02 * z + m03;
+      ys[i] = m10 * x + m11 * y + m12 * z + m13;
+      zs[i] = m20 * x + m21 * y + m22 * z + m23;
+    }
+  }
+
+  /**
+   * Pontok kötegelt perspektivikus projekciója.
+   * Az eredmény bitre megegyezik a pontonkénti {@link #project(double[], double, RenderContext)} eredményével.
+   * @param xs A pontok X koordinátái.
+   * @param ys A pontok Y koordinátái.
+   * @param zs A pontok Z koordinátái.
+   * @param count A pontok száma.
+   * @param zoom A nagyítás mértéke.
+   * @param ctx A kirajzolás kontextusa.
+   * @param dest A vetített pontok (pontonként X, Y) helye, legalább {@code 2 * count} hosszú.
+   * A nem leképezhető pontok X koordinátája {@link #NOT_VISIBLE}.
+   * @return A nem leképezhető pontok száma.
+   */
+  public static int project(double[] xs, double[] ys, double[] zs, int count, double zoom, RenderContext ctx, int[] dest) {
+    assert zoom != 0;
+    double near = ctx.getFL() / zoom;
+    double minSize = ctx.getMinSize();
+    double hw = ctx.getWidth() / 2.0;
+    double hh = ctx.getHeight() / 2.0;
+    int hidden = 0;
+    for (int i = 0, j = 0; i < count; i++, j += 2) {
+      double z = zs[i];
+      if (z > near) {
+        dest[j] = NOT_VISIBLE;
+        dest[j + 1] = 0;
+        hidden++;
+        continue;
+      }
+      double fact = 1.0 / (near - z + 1.0);
+      fact *= minSize;
+      dest[j] = (int) (hw + fact * xs[i] + .5);
+      dest[j + 1] = (int) (hh - fact * ys[i] + .5);
+    }
+    return hidden;
+  }
+
+  /**
+   * Vonalak kötegelt perspektivikus projekciója, a közelsík mögé nyúló vonalak csonkolásával.
+   * A (2i, 2i+1) indexű pontok alkotják az i. vonalat.
+   * Az eredmény bitre megegyezik a vonalankénti {@link #projectLine(double[][], double, RenderContext)} eredményével.
+   * @param xs A végpontok X koordinátái.
+   * @param ys A végpontok Y koordinátái.
+   * @param zs A végpontok Z koordinátái.
+   * @param lines A vonalak száma.
+   * @param zoom A nagyítás mértéke.
+   * @param ctx A kirajzolás kontextusa.
+   * @param dest A látható vonalak vetített végpontjainak (X1, Y1, X2, Y2) helye az eredeti sorrendben,
+   * legalább {@code 4 * lines} hosszú.
+   * @return A látható vonalak száma.
+   */
+  public static int projectLines(double[] xs, double[] ys, double[] zs, int lines, double zoom, RenderContext ctx, int[] dest) {
+    assert zoom != 0;
+    double near = ctx.getFL() / zoom;
+    double minSize = ctx.getMinSize();
+    double hw = ctx.getWidth() / 2.0;
+    double hh = ctx.getHeight() / 2.0;
+    int visible = 0;
+    for (int i = 0; i < lines; i++) {
+      double x1 = xs[2 * i];
+      double y1 = ys[2 * i];
+      double z1 = zs[2 * i];
+      double x2 = xs[2 * i + 1];
+      double y2 = ys[2 * i + 1];
+      double z2 = zs[2 * i + 1];
+
+      if (z1 > near && z2 > near) {
+        continue;
+      }
+      if (z1 > near) {
+        double fact = (near - z2) / (z1 - z2);
+        x1 = x2 + fact * (x1 - x2);
+        y1 = y2 + fact * (y1 - y2);
+        z1 = near;
+      } else if (z2 > near) {
+        double fact = (near - z1) / (z2 - z1);
+        x2 = x1 + fact * (x2 - x1);
+        y2 = y1 + fact * (y2 - y1);
+        z2 = near;
+      }
+
+      double fact1 = 1.0 / (near - z1 + 1.0);
+      fact1 *= minSize;
+      double fact2 = 1.0 / (near - z2 + 1.0);
+      fact2 *= minSize;
+      int j = visible * 4;
+      dest[j] = (int) (hw + fact1 * x1 + .5);
+      dest[j + 1] = (int) (hh - fact1 * y1 + .5);
+      dest[j + 2] = (int) (hw + fact2 * x2 + .5);
+      dest[j + 3] = (int) (hh - fact2 * y2 + .5);
+      visible++;
     }
-    return project(points, zoom, dim);
+    return visible;
   }
 
   private Transformer() {
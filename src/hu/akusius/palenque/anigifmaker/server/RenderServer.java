@@ -0,0 +1,540 @@
+package hu.akusius.palenque.anigifmaker.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import hu.akusius.palenque.anigifmaker.GenerateParams;
+import hu.akusius.palenque.anigifmaker.GifCache;
+import hu.akusius.palenque.anigifmaker.GifMaker;
+import hu.akusius.palenque.anigifmaker.GifProgress;
+import hu.akusius.palenque.anigifmaker.GifProgressListener;
+import hu.akusius.palenque.anigifmaker.GifTask;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Helyi HTTP-szolgáltatás a GIF-ek generálásához (a JDK beépített HTTP-szerverével, külső függőség nélkül).
+ * <p>
+ * Kérések:
+ * <ul>
+ * <li>{@code POST /render}: a törzs a generálási paraméterek JSON-ként vagy {@code PQAGM:} sztringként;</li>
+ * <li>{@code GET /render?params=...}: ugyanez URL-kódolva;</li>
+ * <li>{@code GET /status}: a szolgáltatás állapota (szövegként).</li>
+ * </ul>
+ * A GIF darabolt (chunked) átvitellel, képkockánként kerül kiküldésre, így az első bájtok
+ * már az első képkocka után megérkeznek.
+ * A generálások egy korlátos szálkészleten futnak, korlátos várakozási sorral (telítettség esetén 503),
+ * és kérésenkénti időkorláttal (túllépéskor a generálás megszakad, a válasz csonka marad).
+ * @author Bujdosó Ákos
+ */
+public final class RenderServer {
+
+  /**
+   * Az alapértelmezett port.
+   */
+  public static final int DEFAULT_PORT = 8765;
+
+  /**
+   * A kérés törzsének maximális mérete.
+   */
+  private static final int MAX_BODY_SIZE = 64 * 1024;
+
+  private static final String USAGE
+          = "Usage: java -cp PalenqueAniGifMaker.jar " + RenderServer.class.getName() + " [options]%n"
+          + "%n"
+          + "Options:%n"
+          + "  --host <address>   address to bind (default: 127.0.0.1)%n"
+          + "  --port <n>         port (default: %d)%n"
+          + "  --workers <n>      number of GIFs rendered concurrently (default: %d)%n"
+          + "  --threads <n>      number of threads per GIF (default: 1)%n"
+          + "  --queue <n>        number of requests waiting for a worker (default: 16)%n"
+          + "  --timeout <s>      time limit of a request in seconds, including waiting (default: 300)%n"
+          + "  --cache <dir>      cache of generated GIFs (repeated requests are served from here)%n"
+          + "  --cache-size <MB>  maximum size of the cache (default: 1024)%n"
+          + "  -h, --help         print this help%n";
+
+  private final HttpServer server;
+
+  private final ThreadPoolExecutor renderPool;
+
+  private final ExecutorService requestPool;
+
+  private final int threadsPerRender;
+
+  private final long timeoutMillis;
+
+  private final GifCache cache;
+
+  private final AtomicInteger active = new AtomicInteger();
+
+  private final AtomicLong completed = new AtomicLong();
+
+  private final AtomicLong rejected = new AtomicLong();
+
+  private final AtomicLong failed = new AtomicLong();
+
+  /**
+   * Új szolgáltatás létrehozása (még nem indul el).
+   * @param address A cím, amelyen a szolgáltatás figyel (0-s port esetén tetszőleges szabad port).
+   * @param workers Az egyszerre futó generálások maximális száma.
+   * @param threadsPerRender Az egy generáláshoz használt szálak száma.
+   * @param queueLimit A szabad munkaszálra váró kérések maximális száma.
+   * @param timeoutMillis Egy kérés maximális ideje (a várakozással együtt) ezredmásodpercben.
+   * @throws IOException A cím nem foglalható le.
+   */
+  public RenderServer(InetSocketAddress address, int workers, int threadsPerRender, int queueLimit, long timeoutMillis)
+          throws IOException {
+    this(address, workers, threadsPerRender, queueLimit, timeoutMillis, null);
+  }
+
+  /**
+   * Új szolgáltatás létrehozása gyorsítótárral (még nem indul el).
+   * A gyorsítótárban levő GIF-ek generálás nélkül, fix hosszal kerülnek kiküldésre;
+   * a többi a kiküldéssel párhuzamosan a gyorsítótárba is bekerül.
+   * @param address A cím, amelyen a szolgáltatás figyel (0-s port esetén tetszőleges szabad port).
+   * @param workers Az egyszerre futó generálások maximális száma.
+   * @param threadsPerRender Az egy generáláshoz használt szálak száma.
+   * @param queueLimit A szabad munkaszálra váró kérések maximális száma.
+   * @param timeoutMillis Egy kérés maximális ideje (a várakozással együtt) ezredmásodpercben.
+   * @param cache A gyorsítótár, vagy {@code null}.
+   * @throws IOException A cím nem foglalható le.
+   */
+  public RenderServer(InetSocketAddress address, int workers, int threadsPerRender, int queueLimit, long timeoutMillis,
+          GifCache cache) throws IOException {
+    if (address == null || workers < 1 || threadsPerRender < 1 || queueLimit < 0 || timeoutMillis < 1) {
+      throw new IllegalArgumentException();
+    }
+    this.threadsPerRender = threadsPerRender;
+    this.timeoutMillis = timeoutMillis;
+    this.cache = cache;
+
+    BlockingQueue<Runnable> queue = queueLimit > 0
+            ? new ArrayBlockingQueue<Runnable>(queueLimit) : new SynchronousQueue<Runnable>();
+    renderPool = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS, queue,
+            new NamedThreadFactory("render"), new ThreadPoolExecutor.AbortPolicy());
+    requestPool = Executors.newCachedThreadPool(new NamedThreadFactory("request"));
+
+    server = HttpServer.create(address, 0);
+    server.setExecutor(requestPool);
+    server.createContext("/render", new RenderHandler());
+    server.createContext("/status", new StatusHandler());
+  }
+
+  /**
+   * A szolgáltatás elindítása.
+   */
+  public void start() {
+    server.start();
+  }
+
+  /**
+   * A szolgáltatás leállítása; a futó generálások megszakításra kerülnek.
+   */
+  public void stop() {
+    server.stop(0);
+    renderPool.shutdownNow();
+    requestPool.shutdownNow();
+  }
+
+  /**
+   * @return A cím, amelyen a szolgáltatás figyel.
+   */
+  public InetSocketAddress getAddress() {
+    return server.getAddress();
+  }
+
+  public static void main(String[] args) throws IOException {
+    System.setProperty("java.awt.headless", "true");
+
+    String host = InetAddress.getLoopbackAddress().getHostAddress();
+    int port = DEFAULT_PORT;
+    int workers = GifMaker.DEFAULT_THREADS;
+    int threads = 1;
+    int queue = 16;
+    long timeout = 300;
+    String cacheDir = null;
+    long cacheSize = 1024;
+    try {
+      for (int i = 0; i < args.length; i++) {
+        String arg = args[i];
+        if (arg.equals("-h") || arg.equals("--help")) {
+          System.out.printf(USAGE, DEFAULT_PORT, GifMaker.DEFAULT_THREADS);
+          return;
+        }
+        if (i + 1 >= args.length) {
+          throw new IllegalArgumentException("Missing value for " + arg);
+        }
+        String value = args[++i];
+        switch (arg) {
+          case "--host":
+            host = value;
+            break;
+          case "--port":
+            port = Integer.parseInt(value);
+            break;
+          case "--workers":
+            workers = Integer.parseInt(value);
+            break;
+          case "--threads":
+            threads = Integer.parseInt(value);
+            break;
+          case "--queue":
+            queue = Integer.parseInt(value);
+            break;
+          case "--timeout":
+            timeout = Long.parseLong(value);
+            break;
+          case "--cache":
+            cacheDir = value;
+            break;
+          case "--cache-size":
+            cacheSize = Long.parseLong(value);
+            break;
+          default:
+            throw new IllegalArgumentException("Unknown option: " + arg);
+        }
+      }
+      GifCache cache = cacheDir != null ? new GifCache(Paths.get(cacheDir), cacheSize * 1024L * 1024L) : null;
+      final RenderServer rs = new RenderServer(new InetSocketAddress(host, port), workers, threads, queue,
+              timeout * 1000L, cache);
+      rs.start();
+      Runtime.getRuntime().addShutdownHook(new Thread() {
+        @Override
+        public void run() {
+          rs.stop();
+        }
+      });
+      System.out.printf("Listening on http://%s:%d/render (%d workers, %d thread(s) per GIF, queue %d, timeout %d s)%n",
+              host, rs.getAddress().getPort(), workers, threads, queue, timeout);
+    } catch (IllegalArgumentException ex) {
+      System.err.println(ex.getMessage() != null ? ex.getMessage() : "Invalid arguments.");
+      System.err.printf(USAGE, DEFAULT_PORT, GifMaker.DEFAULT_THREADS);
+      System.exit(2);
+    }
+  }
+
+  /**
+   * A generálási paraméterek beolvasása a kérésből.
+   * @return A paraméterek, vagy {@code null}, ha a kérésre már válasz lett küldve.
+   */
+  private static GenerateParams readParams(HttpExchange exchange) throws IOException {
+    String source = null;
+    switch (exchange.getRequestMethod()) {
+      case "GET":
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+          for (String param : query.split("&")) {
+            if (param.startsWith("params=")) {
+              source = URLDecoder.decode(param.substring("params=".length()), "UTF-8");
+            }
+          }
+        }
+        break;
+      case "POST":
+        source = readBody(exchange.getRequestBody());
+        if (source == null) {
+          sendText(exchange, 413, "Request body too large.");
+          return null;
+        }
+        break;
+      default:
+        exchange.getResponseHeaders().set("Allow", "GET, POST");
+        sendText(exchange, 405, "Method not allowed.");
+        return null;
+    }
+
+    if (source == null || source.trim().isEmpty()) {
+      sendText(exchange, 400, "No parameters.");
+      return null;
+    }
+    source = source.trim();
+    try {
+      return GenerateParams.isSerializedBinaryASCII(source)
+              ? GenerateParams.deserializeBinaryASCII(source) : GenerateParams.deserialize(source);
+    } catch (IOException | IllegalArgumentException ex) {
+      sendText(exchange, 400, "Invalid parameters: " + ex.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * @return A törzs szövegként, vagy {@code null}, ha túl nagy.
+   */
+  private static String readBody(InputStream is) throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    int n;
+    while ((n = is.read(buffer)) != -1) {
+      bos.write(buffer, 0, n);
+      if (bos.size() > MAX_BODY_SIZE) {
+        return null;
+      }
+    }
+    return new String(bos.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+    byte[] data = (text + "\n").getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+    exchange.sendResponseHeaders(status, data.length);
+    try (OutputStream os = exchange.getResponseBody()) {
+      os.write(data);
+    }
+  }
+
+  private final class RenderHandler implements HttpHandler {
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      boolean aborted = false;
+      try {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        GenerateParams params = readParams(exchange);
+        if (params == null) {
+          return;
+        }
+
+        if (cache != null && sendCached(exchange, params)) {
+          return;
+        }
+
+        GifCache.PendingEntry entry = null;
+        if (cache != null) {
+          exchange.getResponseHeaders().set("X-Cache", "MISS");
+          entry = cache.newEntry(params);
+        }
+        final GifResponseStream gos = new GifResponseStream(exchange, entry);
+        GifTask task;
+        try {
+          task = GifMaker.makeGifAsync(params, gos, threadsPerRender, renderPool, new GifProgressListener() {
+            @Override
+            public void progressChanged(GifProgress progress) {
+              // Minden képkocka után kiküldjük a már elkészült adatokat
+              try {
+                gos.flush();
+              } catch (IOException ex) {
+                // A kiírásnál jelentkezik újra
+              }
+            }
+          });
+        } catch (RejectedExecutionException ex) {
+          if (entry != null) {
+            entry.close();
+          }
+          rejected.incrementAndGet();
+          exchange.getResponseHeaders().set("Retry-After", "1");
+          sendText(exchange, 503, "Server busy, try again later.");
+          return;
+        }
+
+        active.incrementAndGet();
+        try {
+          task.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+          completed.incrementAndGet();
+          if (entry != null) {
+            entry.commit();
+          }
+          gos.close();
+        } catch (TimeoutException ex) {
+          task.cancel(true);
+          // A még el nem indult generálás ne foglalja tovább a várakozási sort
+          renderPool.purge();
+          failed.incrementAndGet();
+          // A generáló szál ezután már nem kezdheti el a választ
+          if (!gos.abort()) {
+            sendText(exchange, 504, "Time limit exceeded.");
+          } else {
+            aborted = true;
+          }
+        } catch (ExecutionException ex) {
+          failed.incrementAndGet();
+          if (!gos.abort()) {
+            sendText(exchange, 500, "Generation failed: " + ex.getCause());
+          } else {
+            aborted = true;
+          }
+        } catch (InterruptedException ex) {
+          task.cancel(true);
+          renderPool.purge();
+          gos.abort();
+          aborted = true;
+          Thread.currentThread().interrupt();
+        } finally {
+          active.decrementAndGet();
+          if (entry != null) {
+            entry.close();
+          }
+        }
+      } finally {
+        if (!aborted) {
+          exchange.close();
+        }
+      }
+      if (aborted) {
+        // A darabolt átvitel lezárása nélkül bontjuk a kapcsolatot, így a kliens csonka választ érzékel
+        throw new IOException("Generation aborted.");
+      }
+    }
+  }
+
+  /**
+   * A gyorsítótárban levő GIF kiküldése.
+   * @return {@code true}, ha a GIF a gyorsítótárban volt és kiküldésre került.
+   */
+  private boolean sendCached(HttpExchange exchange, GenerateParams params) throws IOException {
+    Path file = cache.get(params);
+    if (file == null) {
+      return false;
+    }
+    FileChannel fc;
+    try {
+      fc = FileChannel.open(file, StandardOpenOption.READ);
+    } catch (NoSuchFileException ex) {
+      // Közben törlődött
+      return false;
+    }
+    try {
+      long size = fc.size();
+      exchange.getResponseHeaders().set("Content-Type", "image/gif");
+      exchange.getResponseHeaders().set("X-Cache", "HIT");
+      exchange.sendResponseHeaders(200, size);
+      try (OutputStream os = exchange.getResponseBody()) {
+        WritableByteChannel target = Channels.newChannel(os);
+        long pos = 0;
+        while (pos < size) {
+          pos += fc.transferTo(pos, size - pos, target);
+        }
+      }
+    } finally {
+      fc.close();
+    }
+    completed.incrementAndGet();
+    return true;
+  }
+
+  private final class StatusHandler implements HttpHandler {
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      try {
+        String status = String.format("active: %d%nqueued: %d%ncompleted: %d%nfailed: %d%nrejected: %d",
+                active.get(), renderPool.getQueue().size(), completed.get(), failed.get(), rejected.get());
+        if (cache != null) {
+          status += String.format("%ncache hits: %d%ncache misses: %d%ncache files: %d%ncache bytes: %d",
+                  cache.getHits(), cache.getMisses(), cache.getSize(), cache.getTotalBytes());
+        }
+        sendText(exchange, 200, status);
+      } finally {
+        exchange.close();
+      }
+    }
+  }
+
+  /**
+   * A válasz törzse: a fejlécek az első kiírt bájttal kerülnek kiküldésre (darabolt átvitellel),
+   * így hiba esetén addig még hibakód küldhető. A kiírt adatok egy másolati stream-be
+   * (a gyorsítótár bejegyzésébe) is bekerülnek.
+   * <p>
+   * A kiírás és a megszakítás ({@link #abort()}) a stream zárolásával történik, így a megszakítás után
+   * a generáló szál már nem kezdheti el a választ, és a másolati stream-be sem ír.
+   */
+  private static final class GifResponseStream extends OutputStream {
+
+    private final HttpExchange exchange;
+
+    /**
+     * A másolati stream ({@code null}: nincs).
+     */
+    private final OutputStream copy;
+
+    private OutputStream out;
+
+    private boolean aborted;
+
+    GifResponseStream(HttpExchange exchange, OutputStream copy) {
+      this.exchange = exchange;
+      this.copy = copy;
+    }
+
+    /**
+     * A további kiírások letiltása.
+     * @return {@code true}, ha a válasz már elkezdődött (ekkor hibakód már nem küldhető).
+     */
+    synchronized boolean abort() {
+      aborted = true;
+      return out != null;
+    }
+
+    private OutputStream getOut() throws IOException {
+      if (aborted) {
+        throw new IOException("Response aborted.");
+      }
+      if (out == null) {
+        exchange.getResponseHeaders().set("Content-Type", "image/gif");
+        exchange.getResponseHeaders().set("Cache-Control", "no-store");
+        exchange.sendResponseHeaders(200, 0);
+        out = exchange.getResponseBody();
+      }
+      return out;
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+      getOut().write(b);
+      if (copy != null) {
+        copy.write(b);
+      }
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+      getOut().write(b, off, len);
+      if (copy != null) {
+        copy.write(b, off, len);
+      }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+      if (out != null && !aborted) {
+        out.flush();
+      }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+      getOut().close();
+    }
+  }
+
+  private static final class NamedThreadFactory implements ThreadFactory {
+
+    private final String prefix;
+
+    private final AtomicInteger threadNum = new AtomicInteger();
+
+    NamedThreadFactory(String prefix) {
+      this.prefix = prefix;
+    }
+
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, String.format("%s-%d", prefix, threadNum.incrementAndGet()));
+      t.setDaemon(true);
+      return t;
+    }
+  }
+}
@@ -5,7 +5,14 @@ import java.awt.Color;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.image.BufferedImage;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
 /**
  * Panel egy képkocka megjelenítéséhez.
@@ -40,36 +47,234 @@ public class FramePanel extends JPanel {
   }
 
   /**
-   * Egy képkocka megjelenítése.
+   * Egy képkocka megjelenítése. A képkocka a hívó szálon generálódik.
    * @param fg
    * @param frame
    */
   public void drawFrame(FrameGenerator fg, int frame) {
+    cancelRequests();
     try {
-      int width = this.getWidth();
-      int height = this.getHeight();
-      image = fg.generateFrame(frame, width, height);
-      if (drawFrameNum) {
-        String text = String.format("%d", frame);
-        Graphics g = image.getGraphics();
-        FontMetrics fm = g.getFontMetrics();
-        int stringWidth = fm.stringWidth(text);
-        int stringHeight = fm.getHeight();
-        g.setColor(new Color(125, 125, 125, 125));
-        g.drawString(text, width - stringWidth - 5, stringHeight);
-      }
-      repaint();
+      showFrame(frame, fg.generateFrame(frame, this.getWidth(), this.getHeight()));
     } catch (Exception e) {
       clearFrame();
       throw e;
     }
   }
 
+  /**
+   * Egy már legenerált képkocka megjelenítése.
+   * A korábban kért, de még el nem készült kockák nem jelennek meg.
+   * @param frame A kocka száma.
+   * @param image A panel méretében legenerált kép (a kockaszám rárajzolásakor módosul).
+   */
+  public void showFrame(int frame, BufferedImage image) {
+    cancelRequests();
+    setImage(frame, image);
+  }
+
+  private void setImage(int frame, BufferedImage image) {
+    if (drawFrameNum) {
+      String text = String.format("%d", frame);
+      Graphics g = image.getGraphics();
+      FontMetrics fm = g.getFontMetrics();
+      int stringWidth = fm.stringWidth(text);
+      int stringHeight = fm.getHeight();
+      g.setColor(new Color(125, 125, 125, 125));
+      g.drawString(text, image.getWidth() - stringWidth - 5, stringHeight);
+      g.dispose();
+    }
+    this.image = image;
+    repaint();
+  }
+
   /**
    * A képkocka törlése.
    */
   public void clearFrame() {
+    cancelRequests();
     image = null;
     repaint();
   }
+
+  /**
+   * A háttérben generáló szál (a panelenként egy szál tétlenség esetén leáll).
+   */
+  private ThreadPoolExecutor executor;
+
+  /**
+   * A következő generálandó kocka ({@code null}: nincs ilyen).
+   * Az újabb kérés felülírja a még el nem kezdett korábbit.
+   */
+  private Request pending;
+
+  /**
+   * Az éppen generált kocka ({@code null}: nincs ilyen).
+   */
+  private Request running;
+
+  /**
+   * Az utolsó kérés sorszáma (csak az EDT-ről módosul).
+   */
+  private long lastRequest;
+
+  /**
+   * Az utoljára megjelenített kérés sorszáma (csak az EDT-ről módosul).
+   */
+  private long lastShown;
+
+  /**
+   * Egy képkocka háttérszálon való generálásának kérése; a kocka az elkészülése után jelenik meg.
+   * <p>
+   * Az egymást gyorsan követő kérések összevonódnak: mindig csak a legutolsó kérés generálódik le,
+   * a közbenső kérések kimaradnak. A folyamatban lévő generálás (ugyanazon generátor és méret esetén)
+   * befejeződik, így pl. a csúszka húzásakor is frissül a kép. Más generátor vagy méret esetén
+   * a folyamatban lévő generálás megszakad, mert az eredménye már nem érdekes.
+   * Amíg az új kocka el nem készül, a korábbi marad látható.
+   * Csak az EDT-ről hívható.
+   * @param fg A kockát generáló objektum.
+   * @param frame A kocka.
+   */
+  public void requestFrame(FrameGenerator fg, int frame) {
+    Request request = new Request(++lastRequest, fg, frame, getWidth(), getHeight());
+    synchronized (this) {
+      pending = request;
+      if (running != null && !running.isSameTarget(request)) {
+        running.cancel();
+      }
+      if (executor == null) {
+        executor = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new RenderThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+      }
+      if (running == null) {
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            renderPending();
+          }
+        });
+      }
+    }
+  }
+
+  /**
+   * A még el nem készült kérések elvetése, a folyamatban lévő generálás megszakítása.
+   * Csak az EDT-ről hívható.
+   */
+  public void cancelRequests() {
+    lastShown = ++lastRequest;
+    synchronized (this) {
+      pending = null;
+      if (running != null) {
+        running.cancel();
+      }
+    }
+  }
+
+  private void renderPending() {
+    while (true) {
+      final Request request;
+      synchronized (this) {
+        request = pending;
+        pending = null;
+        running = request;
+        if (request == null) {
+          return;
+        }
+        request.thread = Thread.currentThread();
+      }
+
+      BufferedImage result = null;
+      RuntimeException error = null;
+      try {
+        result = request.fg.generateFrame(request.frame, request.width, request.height);
+      } catch (CancellationException ex) {
+        // Egy újabb kérés miatt megszakítva
+      } catch (RuntimeException ex) {
+        error = ex;
+      }
+
+      synchronized (this) {
+        request.thread = null;
+        // Egy esetleges késve érkezett megszakítás törlése
+        Thread.interrupted();
+      }
+
+      if (result != null || error != null) {
+        final BufferedImage image = result;
+        final RuntimeException exception = error;
+        SwingUtilities.invokeLater(new Runnable() {
+          @Override
+          public void run() {
+            showResult(request, image, exception);
+          }
+        });
+      }
+    }
+  }
+
+  private void showResult(Request request, BufferedImage image, RuntimeException exception) {
+    if (request.seq <= lastShown) {
+      // Közben már újabb kocka jelent meg
+      return;
+    }
+    lastShown = request.seq;
+    if (exception != null) {
+      this.image = null;
+      repaint();
+      throw exception;
+    }
+    setImage(request.frame, image);
+  }
+
+  /**
+   * Egy háttérben generálandó kocka.
+   */
+  private static final class Request {
+
+    private final long seq;
+
+    private final FrameGenerator fg;
+
+    private final int frame;
+
+    private final int width;
+
+    private final int height;
+
+    /**
+     * A kockát generáló szál ({@code null}, ha nem generálódik); a panel zárolásával védett.
+     */
+    private Thread thread;
+
+    Request(long seq, FrameGenerator fg, int frame, int width, int height) {
+      this.seq = seq;
+      this.fg = fg;
+      this.frame = frame;
+      this.width = width;
+      this.height = height;
+    }
+
+    boolean isSameTarget(Request other) {
+      return fg == other.fg && width == other.width && height == other.height;
+    }
+
+    void cancel() {
+      if (thread != null) {
+        thread.interrupt();
+      }
+    }
+  }
+
+  private static final class RenderThreadFactory implements ThreadFactory {
+
+    private static final AtomicInteger threadNum = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, String.format("framepanel-%d", threadNum.incrementAndGet()));
+      t.setDaemon(true);
+      return t;
+    }
+  }
 }
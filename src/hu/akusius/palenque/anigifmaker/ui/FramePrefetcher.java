@@ -0,0 +1,273 @@
+package hu.akusius.palenque.anigifmaker.ui;
+
+import hu.akusius.palenque.anigifmaker.FrameGenerator;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A lejátszás során a lejátszási pozíció előtti képkockák háttérszálakon való előre legenerálása.
+ * <p>
+ * A legenerált kockák egy rögzített méretű gyűrűbe (a lejátszási pozíciótól számított ablakba) kerülnek.
+ * Ha a generálás nem tud lépést tartani a lejátszással, akkor a szálak a generálás várható ideje alapján
+ * annyival előrébb kezdenek, hogy a kocka még időben elkészüljön; a közbenső kockák kimaradnak.
+ * Az ablakból kicsúszott kockák generálása megszakad.
+ * @author Bujdosó Ákos
+ */
+final class FramePrefetcher {
+
+  private static final AtomicInteger poolNum = new AtomicInteger();
+
+  private final FrameGenerator fg;
+
+  private final int width;
+
+  private final int height;
+
+  private final int lastFrame;
+
+  /**
+   * Két kocka között eltelő idő lejátszáskor (ns).
+   */
+  private final long frameNanos;
+
+  private final Slot[] slots;
+
+  private final Thread[] workers;
+
+  /**
+   * A lejátszási pozíció (-1: nincs lejátszás, a szálak várakoznak).
+   */
+  private int head = -1;
+
+  private boolean looping;
+
+  private boolean closed;
+
+  /**
+   * Egy kocka generálásának átlagos ideje (ns), csúszó átlaggal.
+   */
+  private double avgRenderNanos;
+
+  /**
+   * Új példány létrehozása és a szálak elindítása.
+   * @param fg A kockákat generáló objektum.
+   * @param width A kockák szélessége.
+   * @param height A kockák magassága.
+   * @param capacity A gyűrű mérete (a lejátszási pozíciótól előre legenerált kockák száma).
+   * @param threads A generáló szálak száma.
+   */
+  FramePrefetcher(FrameGenerator fg, int width, int height, int capacity, int threads) {
+    if (fg == null || width <= 0 || height <= 0 || capacity < 1 || threads < 1) {
+      throw new IllegalArgumentException();
+    }
+    this.fg = fg;
+    this.width = width;
+    this.height = height;
+    this.lastFrame = fg.getNumberOfFrames() - 1;
+    this.frameNanos = 1000000000L / fg.getAnimParams().getFramesPerSecond();
+
+    slots = new Slot[capacity];
+    for (int i = 0; i < capacity; i++) {
+      slots[i] = new Slot();
+    }
+
+    final int pool = poolNum.incrementAndGet();
+    workers = new Thread[threads];
+    for (int i = 0; i < threads; i++) {
+      workers[i] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          work();
+        }
+      }, String.format("prefetch-%d-%d", pool, i + 1));
+      workers[i].setDaemon(true);
+      workers[i].setPriority(Thread.NORM_PRIORITY - 1);
+      workers[i].start();
+    }
+  }
+
+  /**
+   * A lejátszási pozíció beállítása; a pozíciótól kezdve az ablak kockái generálódnak.
+   * @param frame A lejátszási pozíció (-1: nincs lejátszás, a folyamatban lévő generálások megszakadnak).
+   * @param looping {@code true}, ha az utolsó kocka után az első következik.
+   */
+  synchronized void setPlayHead(int frame, boolean looping) {
+    if (frame < -1 || frame > lastFrame) {
+      throw new IllegalArgumentException();
+    }
+    this.head = frame;
+    this.looping = looping;
+    for (Slot slot : slots) {
+      if (slot.frame >= 0 && getOffset(slot.frame) < 0) {
+        slot.release();
+      }
+    }
+    notifyAll();
+  }
+
+  /**
+   * A megadott kocka lekérdezése, ha már elkészült. A metódus nem várakozik.
+   * @param frame A kocka.
+   * @return A kocka képe, vagy {@code null}, ha még nem készült el (vagy nincs az ablakban).
+   */
+  synchronized BufferedImage getFrame(int frame) {
+    for (Slot slot : slots) {
+      if (slot.frame == frame && slot.image != null) {
+        return slot.image;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * A szálak leállítása.
+   */
+  void close() {
+    synchronized (this) {
+      closed = true;
+      head = -1;
+      for (Slot slot : slots) {
+        slot.release();
+      }
+      notifyAll();
+    }
+  }
+
+  /**
+   * @param frame A kocka.
+   * @return A kocka távolsága a lejátszási pozíciótól, ha az ablakban van; egyébként -1.
+   */
+  private int getOffset(int frame) {
+    if (head < 0) {
+      return -1;
+    }
+    int offset = frame - head;
+    if (offset < 0 && looping) {
+      offset += lastFrame + 1;
+    }
+    return offset >= 0 && offset < slots.length ? offset : -1;
+  }
+
+  /**
+   * @param offset A lejátszási pozíciótól való távolság.
+   * @return Az ennyivel későbbi kocka, vagy -1, ha nincs ilyen.
+   */
+  private int getFrameAt(int offset) {
+    int frame = head + offset;
+    if (frame > lastFrame) {
+      frame = looping ? frame % (lastFrame + 1) : -1;
+    }
+    return frame;
+  }
+
+  private boolean isTaken(int frame) {
+    for (Slot slot : slots) {
+      if (slot.frame == frame) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * A következő legenerálandó kocka kiválasztása és egy szabad helyre való felvétele.
+   * Ha nincs mit generálni, akkor várakozik.
+   * @return A kocka helye, vagy {@code null}, ha le kell állni.
+   */
+  private synchronized Slot nextJob() {
+    while (!closed) {
+      if (head >= 0) {
+        // Ennyi kockával előrébb kell kezdeni, hogy a kocka még a lejátszás előtt elkészüljön
+        int lead = (int) Math.min(slots.length - 1, Math.ceil(avgRenderNanos / frameNanos));
+        for (int offset = lead; offset < slots.length; offset++) {
+          int frame = getFrameAt(offset);
+          if (frame < 0 || isTaken(frame)) {
+            continue;
+          }
+          for (Slot slot : slots) {
+            if (slot.frame < 0) {
+              slot.frame = frame;
+              slot.worker = Thread.currentThread();
+              return slot;
+            }
+          }
+          break;
+        }
+      }
+      try {
+        wait();
+      } catch (InterruptedException ex) {
+        // Egy már törölt kocka generálását szakították meg: újra kell nézni
+      }
+    }
+    return null;
+  }
+
+  private void work() {
+    Slot slot;
+    while ((slot = nextJob()) != null) {
+      int frame;
+      synchronized (this) {
+        frame = slot.frame;
+      }
+      BufferedImage image = null;
+      long start = System.nanoTime();
+      try {
+        if (frame >= 0) {
+          image = fg.generateFrame(frame, width, height);
+        }
+      } catch (CancellationException ex) {
+        // Kicsúszott az ablakból
+      }
+      long nanos = System.nanoTime() - start;
+
+      synchronized (this) {
+        // Egy esetleges késve érkezett megszakítás törlése
+        Thread.interrupted();
+        if (image != null) {
+          avgRenderNanos = avgRenderNanos == 0.0 ? nanos : avgRenderNanos * 0.8 + nanos * 0.2;
+        }
+        if (slot.worker == Thread.currentThread() && slot.frame == frame) {
+          slot.worker = null;
+          if (image != null) {
+            slot.image = image;
+          } else {
+            slot.release();
+          }
+        }
+        notifyAll();
+      }
+    }
+  }
+
+  /**
+   * A gyűrű egy helye.
+   */
+  private static final class Slot {
+
+    /**
+     * A kocka (-1: szabad hely).
+     */
+    private int frame = -1;
+
+    /**
+     * A kész kép ({@code null}: még generálódik).
+     */
+    private BufferedImage image;
+
+    /**
+     * A kockát generáló szál ({@code null}, ha nem generálódik).
+     */
+    private Thread worker;
+
+    private void release() {
+      if (worker != null) {
+        worker.interrupt();
+        worker = null;
+      }
+      frame = -1;
+      image = null;
+    }
+  }
+}
@@ -4,6 +4,8 @@ import hu.akusius.palenque.anigifmaker.*;
 import hu.akusius.palenque.anigifmaker.util.IoUtils;
 import hu.akusius.palenque.anigifmaker.util.UIUtils;
 import java.awt.Color;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -15,6 +17,7 @@ import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
 import javax.swing.JSpinner;
 import javax.swing.SpinnerNumberModel;
+import javax.swing.Timer;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import javax.swing.event.DocumentEvent;
@@ -28,6 +31,21 @@ public class MainDialog extends javax.swing.JDialog {
 
   private FrameGenerator fg;
 
+  /**
+   * A (jelenleg nem használt) minőség, ami a felületen nem állítható, de a betöltött értéke megmarad.
+   */
+  private int quality = GifParams.QUALITY_RANGE.getDef();
+
+  /**
+   * A paraméterek változása után ennyi ideig (ms) várunk újabb változásra, mielőtt a kockák legenerálódnak.
+   */
+  private static final int RENDER_DELAY = 150;
+
+  /**
+   * A kockák generálásának késleltetése: a gyorsan egymást követő változások (pl. a léptetők) összevonódnak.
+   */
+  private final Timer renderTimer;
+
   /** Creates new form MainDialog
    * @param parent
    * @param modal
@@ -36,8 +54,16 @@ public class MainDialog extends javax.swing.JDialog {
     super(parent, modal);
     initComponents();
 
-    setSpinnerModelFromParamRange(spQuality, GifParams.QUALITY_RANGE, 1);
-    spQuality.setEnabled(false);
+    renderTimer = new Timer(RENDER_DELAY, new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+        renderFrames();
+      }
+    });
+    renderTimer.setRepeats(false);
+
+    setSpinnerModelFromParamRange(spGrayLevels, GifParams.GRAY_LEVELS_RANGE, 1);
+    chkDither.setSelected(GifParams.DITHER_RANGE.getDef());
     chkRepeat.setSelected(GifParams.REPEAT_RANGE.getDef());
     chkEmbedParams.setSelected(GifParams.EMBED_PARAMS_RANGE.getDef());
 
@@ -87,15 +113,15 @@ public class MainDialog extends javax.swing.JDialog {
       lblInfo.setForeground(null);
       lblInfo.setText(String.format("Number of frames: %d. Length: %.2f seconds.", fg.getNumberOfFrames(), fg.getLengthInSeconds()));
 
-      int firstNonFadedFrame = fg.getFirstNonFadedFrame();
-      fpFirstFrame.drawFrame(fg, firstNonFadedFrame);
-
-      int lastNonFadedFrame = fg.getLastNonFadedFrame();
-      fpLastFrame.drawFrame(fg, lastNonFadedFrame);
+      // A korábbi paraméterekkel folyamatban lévő generálások feleslegesek, a korábbi kép addig megmarad
+      fpFirstFrame.cancelRequests();
+      fpLastFrame.cancelRequests();
+      renderTimer.restart();
     } catch (Exception ex) {
       fg = null;
       lblInfo.setForeground(Color.RED);
       lblInfo.setText("Invalid parameters!");
+      renderTimer.stop();
       fpFirstFrame.clearFrame();
       fpLastFrame.clearFrame();
     }
@@ -103,17 +129,32 @@ public class MainDialog extends javax.swing.JDialog {
     refreshButtonStates();
   }
 
+  /**
+   * Az első és az utolsó nem áttűnő kocka legenerálása a háttérben (a két panel párhuzamosan generál).
+   * A korábbi paraméterekkel még folyamatban lévő generálások megszakadnak.
+   */
+  private void renderFrames() {
+    if (fg == null) {
+      return;
+    }
+    fpFirstFrame.requestFrame(fg, fg.getFirstNonFadedFrame());
+    fpLastFrame.requestFrame(fg, fg.getLastNonFadedFrame());
+  }
+
   private void refreshButtonStates() {
     btnPreview.setEnabled(fg != null);
     btnGenerate.setEnabled(fg != null && tfDest.getText().length() > 0);
   }
 
   private GifParams toGifParams() {
-    return new GifParams((int) spQuality.getValue(), chkRepeat.isSelected(), chkEmbedParams.isSelected());
+    return new GifParams(quality, chkRepeat.isSelected(), chkEmbedParams.isSelected(),
+            (int) spGrayLevels.getValue(), chkDither.isSelected());
   }
 
   private void fromGifParams(GifParams gp) {
-    spQuality.setValue(gp.getQuality());
+    quality = gp.getQuality();
+    spGrayLevels.setValue(gp.getGrayLevels());
+    chkDither.setSelected(gp.isDither());
     chkRepeat.setSelected(gp.isRepeat());
     chkEmbedParams.setSelected(gp.isEmbedParams());
   }
@@ -146,7 +187,8 @@ public class MainDialog extends javax.swing.JDialog {
     jPanel3 = new javax.swing.JPanel();
     tfDest = new javax.swing.JTextField();
     btnSelectDest = new javax.swing.JButton();
-    spQuality = new javax.swing.JSpinner();
+    spGrayLevels = new javax.swing.JSpinner();
+    chkDither = new javax.swing.JCheckBox();
     chkRepeat = new javax.swing.JCheckBox();
     chkEmbedParams = new javax.swing.JCheckBox();
     btnGenerate = new javax.swing.JButton();
@@ -247,9 +289,13 @@ public class MainDialog extends javax.swing.JDialog {
       }
     });
 
-    spQuality.setFont(spQuality.getFont().deriveFont(spQuality.getFont().getSize()-1f));
-    spQuality.setModel(new javax.swing.SpinnerNumberModel(10, 1, 20, 1));
-    spQuality.setToolTipText("Quality (currently not used)");
+    spGrayLevels.setFont(spGrayLevels.getFont().deriveFont(spGrayLevels.getFont().getSize()-1f));
+    spGrayLevels.setModel(new javax.swing.SpinnerNumberModel(256, 2, 256, 1));
+    spGrayLevels.setToolTipText("Number of gray levels (256: no reduction)");
+
+    chkDither.setFont(chkDither.getFont().deriveFont(chkDither.getFont().getSize()-1f));
+    chkDither.setText("Dither");
+    chkDither.setToolTipText("Ordered dithering of the reduced gray levels");
 
     chkRepeat.setFont(chkRepeat.getFont().deriveFont(chkRepeat.getFont().getSize()-1f));
     chkRepeat.setSelected(true);
@@ -269,7 +315,9 @@ public class MainDialog extends javax.swing.JDialog {
         .addGap(2, 2, 2)
         .addComponent(btnSelectDest, javax.swing.GroupLayout.PREFERRED_SIZE, 27, javax.swing.GroupLayout.PREFERRED_SIZE)
         .addGap(2, 2, 2)
-        .addComponent(spQuality, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+        .addComponent(spGrayLevels, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+        .addGap(2, 2, 2)
+        .addComponent(chkDither)
         .addGap(2, 2, 2)
         .addComponent(chkRepeat)
         .addGap(2, 2, 2)
@@ -282,7 +330,8 @@ public class MainDialog extends javax.swing.JDialog {
         .addGroup(jPanel3Layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE, false)
           .addComponent(tfDest)
           .addComponent(btnSelectDest, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
-          .addComponent(spQuality)
+          .addComponent(spGrayLevels)
+          .addComponent(chkDither)
           .addComponent(chkRepeat)
           .addComponent(chkEmbedParams))
         .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
@@ -547,6 +596,7 @@ public class MainDialog extends javax.swing.JDialog {
   private javax.swing.JButton btnOpen;
   private javax.swing.JButton btnPreview;
   private javax.swing.JButton btnSelectDest;
+  private javax.swing.JCheckBox chkDither;
   private javax.swing.JCheckBox chkEmbedParams;
   private javax.swing.JCheckBox chkRepeat;
   private javax.swing.JCheckBox chkRestore;
@@ -557,7 +607,7 @@ public class MainDialog extends javax.swing.JDialog {
   private javax.swing.JPanel jPanel3;
   private javax.swing.JLabel lblInfo;
   private hu.akusius.palenque.anigifmaker.ui.ParamsPanel pnlParams;
-  private javax.swing.JSpinner spQuality;
+  private javax.swing.JSpinner spGrayLevels;
   private javax.swing.JTextField tfDest;
   // End of variables declaration//GEN-END:variables
 }
@@ -30,8 +30,23 @@ public class PreviewDialog extends javax.swing.JDialog {
 
   private boolean playing = false;
 
+  /**
+   * A lejátszáskor előre legenerált kockák ({@code null}, ha még nem volt lejátszás).
+   */
+  private FramePrefetcher prefetcher;
+
+  /**
+   * A megjelenített kocka.
+   */
+  private int shownFrame = -1;
+
   private static final int FRAME_PANEL_MAX_SIZE = 600;
 
+  /**
+   * Lejátszáskor ennyi kocka generálódik előre.
+   */
+  private static final int PREFETCH_FRAMES = 16;
+
   /** Creates new form PreviewDialog
    * @param parent
    * @param fg
@@ -102,6 +117,9 @@ public class PreviewDialog extends javax.swing.JDialog {
       @Override
       public void windowClosed(WindowEvent e) {
         playerTimer.stop();
+        if (prefetcher != null) {
+          prefetcher.close();
+        }
       }
     });
 
@@ -110,7 +128,18 @@ public class PreviewDialog extends javax.swing.JDialog {
 
   private void currentFrameChanged() {
     FrameInfo fi = model.getCurrentFrameInfo();
-    fpFrame.drawFrame(fg, fi.getFrameNum());
+    if (playing) {
+      // Ha a kocka még nem készült el, akkor kimarad (a korábbi marad látható)
+      BufferedImage image = prefetcher.getFrame(fi.getFrameNum());
+      prefetcher.setPlayHead(fi.getFrameNum(), model.isLooping());
+      if (image != null) {
+        fpFrame.showFrame(fi.getFrameNum(), image);
+        shownFrame = fi.getFrameNum();
+      }
+    } else {
+      fpFrame.requestFrame(fg, fi.getFrameNum());
+      shownFrame = fi.getFrameNum();
+    }
 
     tfSeconds.setText(String.format("%.2f", fi.getSeconds()));
     tfStepNum.setText(Integer.toString(fi.getStepNum()));
@@ -133,12 +162,25 @@ public class PreviewDialog extends javax.swing.JDialog {
     playing = newPlaying;
 
     if (playing) {
+      if (prefetcher == null) {
+        prefetcher = new FramePrefetcher(fg, fpFrame.getWidth(), fpFrame.getHeight(),
+                PREFETCH_FRAMES, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+      }
       if (!model.hasNextFrame()) {
         model.setCurrentFrame(0);
       }
+      prefetcher.setPlayHead(model.getCurrentFrame(), model.isLooping());
       playerTimer.start();
     } else {
       playerTimer.stop();
+      if (prefetcher != null) {
+        prefetcher.setPlayHead(-1, false);
+      }
+      if (shownFrame != model.getCurrentFrame()) {
+        // Az utolsó kocka kimaradt
+        fpFrame.requestFrame(fg, model.getCurrentFrame());
+        shownFrame = model.getCurrentFrame();
+      }
     }
 
     btnPlay.setSelected(playing);
@@ -0,0 +1,25 @@
+package hu.akusius.palenque.anigifmaker.util;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Segédrutinok a hosszan futó (kirajzolási, tömörítési) műveletek megszakításához.
+ * A megszakítás jelzése a szál megszakítása ({@link Thread#interrupt()}).
+ * @author Bujdosó Ákos
+ */
+public class CancelUtils {
+
+  /**
+   * Megszakítási pont: kivételt dob, ha az aktuális szálat megszakították.
+   * A szál megszakított állapota megmarad.
+   * @throws CancellationException Az aktuális szál meg lett szakítva.
+   */
+  public static void checkCancelled() throws CancellationException {
+    if (Thread.currentThread().isInterrupted()) {
+      throw new CancellationException();
+    }
+  }
+
+  private CancelUtils() {
+  }
+}
@@ -477,8 +477,18 @@ public class AnimatedGifEncoder {
    * Encodes and writes pixel data
    */
   protected void writePixels() throws IOException {
+    encodePixels(width, height, indexedPixels, colorDepth, out);
+  }
+
+  /**
+   * Encodes the given indexed pixels and writes them (initial code size,
+   * data sub-blocks and block terminator) to the given stream. Independent
+   * of the encoder state, so frames can be compressed concurrently.
+   */
+  protected static void encodePixels(int width, int height, byte[] indexedPixels, int colorDepth, OutputStream os)
+      throws IOException {
     LZWEncoder encoder = new LZWEncoder(width, height, indexedPixels, colorDepth);
-    encoder.encode(out);
+    encoder.encode(os);
   }
 
   /**
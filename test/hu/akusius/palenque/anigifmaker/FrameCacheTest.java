@@ -0,0 +1,123 @@
+package hu.akusius.palenque.anigifmaker;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Bujdosó Ákos
+ */
+public class FrameCacheTest {
+
+  public FrameCacheTest() {
+  }
+
+  private static AnimParams createParams(int holdIn, int fps) {
+    AnimParamsBuilder apb = new AnimParamsBuilder();
+    apb.setWidth(120);
+    apb.setHeight(80);
+    apb.setSpeed(100);
+    apb.setFramesPerSecond(fps);
+    apb.setLastStep(2);
+    apb.setHoldInLength(holdIn);
+    apb.setFadeInLength(0);
+    apb.setFadeOutLength(200);
+    return apb.createAnimParams();
+  }
+
+  private static byte[] getPixels(BufferedImage image) {
+    return ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+  }
+
+  @Test
+  public void testSameFrames() {
+    AnimParams ap = createParams(100, 10);
+    FrameGenerator uncached = new FrameGenerator(ap);
+    uncached.setFrameCache(null);
+    assertThat(uncached.getFrameCache(), nullValue());
+
+    FrameCache cache = new FrameCache(16 * 1024 * 1024);
+    FrameGenerator cached = new FrameGenerator(ap);
+    cached.setFrameCache(cache);
+
+    int n = cached.getNumberOfFrames();
+    for (int pass = 0; pass < 2; pass++) {
+      for (int i = 0; i < n; i++) {
+        BufferedImage image = cached.generateFrame(i);
+        assertArrayEquals(getPixels(uncached.generateFrame(i)), getPixels(image));
+        // A visszaadott kép a hívóé, a módosítása nem hat a tárolt kockára
+        getPixels(image)[0] = 123;
+      }
+    }
+
+    // A kitartott kockák és a második kör már a gyorsítótárból jön
+    assertThat(cache.getMisses() < n, is(true));
+    assertThat(cache.getHits() >= n, is(true));
+    assertThat(cache.getHits() + cache.getMisses(), is(2L * n));
+    assertThat(cache.getEntryCount(), is((int) cache.getMisses()));
+    assertThat(cache.getUsedBytes(), is(120L * 80 * cache.getEntryCount()));
+  }
+
+  @Test
+  public void testSharedBetweenGenerators() {
+    FrameCache cache = new FrameCache(16 * 1024 * 1024);
+    FrameGenerator fg1 = new FrameGenerator(createParams(0, 10));
+    fg1.setFrameCache(cache);
+    FrameGenerator fg2 = new FrameGenerator(createParams(200, 10));
+    fg2.setFrameCache(cache);
+
+    // A kitartott kezdőkocka a második generátorban is ugyanaz
+    fg1.generateFrame(0);
+    assertThat(cache.getMisses(), is(1L));
+    fg2.generateFrame(0);
+    fg2.generateFrame(1);
+    assertThat(cache.getMisses(), is(1L));
+    assertThat(cache.getHits(), is(2L));
+
+    // Eltérő méret: új kocka
+    fg2.generateFrame(0, 60, 40);
+    assertThat(cache.getMisses(), is(2L));
+    assertThat(cache.getEntryCount(), is(2));
+
+    cache.clear();
+    assertThat(cache.getEntryCount(), is(0));
+    assertThat(cache.getUsedBytes(), is(0L));
+  }
+
+  @Test
+  public void testEviction() {
+    int frameBytes = 120 * 80;
+    FrameCache cache = new FrameCache(3 * frameBytes);
+    FrameGenerator fg = new FrameGenerator(createParams(0, 10));
+    fg.setFrameCache(cache);
+
+    for (int i = 0; i < 5; i++) {
+      fg.generateFrame(i);
+      assertThat(cache.getUsedBytes() <= cache.getBudget(), is(true));
+    }
+    assertThat(cache.getEntryCount(), is(3));
+    assertThat(cache.getEvictions(), is(2L));
+
+    // A legrégebbi kocka már nincs meg, a legutóbbi megvan
+    long misses = cache.getMisses();
+    fg.generateFrame(4);
+    assertThat(cache.getMisses(), is(misses));
+    fg.generateFrame(0);
+    assertThat(cache.getMisses(), is(misses + 1));
+
+    // A keretnél nagyobb kockát nem tárolja
+    FrameCache tiny = new FrameCache(frameBytes - 1);
+    fg.setFrameCache(tiny);
+    fg.generateFrame(0);
+    assertThat(tiny.getEntryCount(), is(0));
+
+    FrameCache none = new FrameCache(0);
+    fg.setFrameCache(none);
+    fg.generateFrame(0);
+    assertThat(none.getEntryCount(), is(0));
+  }
+}
@@ -1,6 +1,14 @@
 package hu.akusius.palenque.anigifmaker;
 
+import hu.akusius.palenque.anigifmaker.rendering.FrameRenderer;
+import hu.akusius.palenque.anigifmaker.rendering.RenderBackend;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
 import org.junit.Test;
 
 import static org.hamcrest.CoreMatchers.*;
@@ -559,4 +567,240 @@ public class FrameGeneratorTest {
     assertThat(frame.getWidth(), equalTo(500));
     assertThat(frame.getHeight(), equalTo(100));
   }
+
+  private static byte[] getPixels(BufferedImage image) {
+    return ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+  }
+
+  /**
+   * Párhuzamos generálás két eltérő méretű generátorral: a képpontok azonosak az egyszálú eredménnyel.
+   */
+  @Test
+  public void test14() throws Exception {
+    AnimParamsBuilder apb = new AnimParamsBuilder();
+    apb.setSpeed(40);
+    apb.setFramesPerSecond(10);
+    apb.setShowGrid(true);
+    apb.setAutoCam(true);
+    apb.setWidth(160);
+    apb.setHeight(120);
+    final FrameGenerator fg1 = new FrameGenerator(apb.createAnimParams(), testStepsAnimLength);
+
+    apb.setAutoCam(false);
+    apb.setZoom(1.7);
+    apb.setWidth(97);
+    apb.setHeight(211);
+    final FrameGenerator fg2 = new FrameGenerator(apb.createAnimParams(), testStepsAnimLength);
+
+    final FrameGenerator[] fgs = new FrameGenerator[]{fg1, fg2};
+    final List<byte[][]> expected = new ArrayList<>(fgs.length);
+    for (FrameGenerator fg : fgs) {
+      byte[][] pixels = new byte[fg.getNumberOfFrames()][];
+      for (int frame = 0; frame < pixels.length; frame++) {
+        pixels[frame] = getPixels(fg.generateFrame(frame));
+      }
+      expected.add(pixels);
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Boolean>> results = new ArrayList<>();
+      for (int round = 0; round < 3; round++) {
+        for (int frame = 0; frame < fg1.getNumberOfFrames() || frame < fg2.getNumberOfFrames(); frame++) {
+          for (int i = 0; i < fgs.length; i++) {
+            final int index = i;
+            final int f = frame;
+            if (f >= fgs[index].getNumberOfFrames()) {
+              continue;
+            }
+            results.add(executor.submit(new Callable<Boolean>() {
+              @Override
+              public Boolean call() throws Exception {
+                byte[] pixels = getPixels(fgs[index].generateFrame(f));
+                return Arrays.equals(pixels, expected.get(index)[f]);
+              }
+            }));
+          }
+        }
+      }
+      for (Future<Boolean> result : results) {
+        assertThat(result.get(), equalTo(true));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * A lépésekhez tartozó képkocka-tartományok (speed=5, FPS=20, 10-11. lépés, hold elején 40, végén 80).
+   */
+  @Test
+  public void test15() {
+    AnimParamsBuilder apb = new AnimParamsBuilder();
+    apb.setSpeed(5);
+    apb.setFramesPerSecond(20);
+    apb.setFirstStep(10);
+    apb.setLastStep(11);
+    apb.setHoldInLength(40);
+    apb.setHoldOutLength(80);
+    FrameGenerator fg = new FrameGenerator(apb.createAnimParams(), testStepsAnimLength);
+
+    // A kitartott kockák nem számítanak bele a lépés tartományába
+    assertThat(fg.getFirstFrameOfStep(10), equalTo(40));
+    assertThat(fg.getLastFrameOfStep(10), equalTo(79));
+    assertThat(fg.getFirstFrameOfStep(11), equalTo(80));
+    assertThat(fg.getLastFrameOfStep(11), equalTo(119));
+    for (int step = 0; step < testStepsAnimLength.length; step++) {
+      if (step != 10 && step != 11) {
+        assertThat(fg.getFirstFrameOfStep(step), equalTo(-1));
+        assertThat(fg.getLastFrameOfStep(step), equalTo(-1));
+      }
+    }
+
+    for (int step = 10; step <= 11; step++) {
+      for (int frame = fg.getFirstFrameOfStep(step); frame <= fg.getLastFrameOfStep(step); frame++) {
+        FrameInfo fi = fg.getFrameInfo(frame);
+        assertThat(fi.getStepNum(), equalTo(step));
+        assertThat(fi.isHeld(), equalTo(false));
+      }
+    }
+
+    try {
+      fg.getFirstFrameOfStep(testStepsAnimLength.length);
+      fail();
+    } catch (IllegalArgumentException ex) {
+    }
+  }
+
+  /**
+   * Saját kamerapálya: az automatikus kamera kulcspontjaival (tetszőleges sorrendben) ugyanazok a kockák.
+   */
+  @Test
+  public void test16() {
+    AnimParamsBuilder apb = new AnimParamsBuilder();
+    apb.setSpeed(100);
+    apb.setFramesPerSecond(10);
+    apb.setWidth(120);
+    apb.setHeight(90);
+    apb.setAutoCam(true);
+    FrameGenerator fg1 = new FrameGenerator(apb.createAnimParams());
+    fg1.setFrameCache(null);
+
+    List<CamKeyframe> keyframes = new ArrayList<>(FrameGenerator.getAutoCamKeyframes());
+    Collections.reverse(keyframes);
+    apb.setAutoCam(false);
+    apb.setTheta(0.5);
+    apb.setZoom(2.0);
+    FrameGenerator fg2 = new FrameGenerator(apb.createAnimParams(), keyframes);
+    fg2.setFrameCache(null);
+
+    assertThat(fg2.getNumberOfFrames(), equalTo(fg1.getNumberOfFrames()));
+    for (int frame = 0; frame < fg1.getNumberOfFrames(); frame++) {
+      assertArrayEquals(getPixels(fg1.generateFrame(frame)), getPixels(fg2.generateFrame(frame)));
+    }
+
+    List<List<CamKeyframe>> invalids = new ArrayList<>();
+    invalids.add(new ArrayList<CamKeyframe>());
+    invalids.add(Arrays.asList(new CamKeyframe(1, 0.0)));
+    invalids.add(Arrays.asList(new CamKeyframe(0, 0.0), new CamKeyframe(3, 50.0), new CamKeyframe(3, 50.0)));
+    invalids.add(Arrays.asList(new CamKeyframe(0, 0.0), new CamKeyframe(FrameRenderer.MAX_STEP + 1, 0.0)));
+    for (List<CamKeyframe> invalid : invalids) {
+      try {
+        new FrameGenerator(apb.createAnimParams(), invalid);
+        fail();
+      } catch (IllegalArgumentException ex) {
+      }
+    }
+  }
+
+  /**
+   * Közvetlen kirajzolás: legfeljebb kis eltérés a Java2D-s kirajzoláshoz képest.
+   */
+  @Test
+  public void test17() {
+    AnimParamsBuilder apb = new AnimParamsBuilder();
+    apb.setSpeed(100);
+    apb.setFramesPerSecond(10);
+    apb.setWidth(160);
+    apb.setHeight(120);
+    apb.setShowGrid(true);
+    apb.setAutoCam(true);
+    FrameGenerator java2d = new FrameGenerator(apb.createAnimParams());
+    java2d.setFrameCache(null);
+    assertThat(java2d.getRenderBackend(), equalTo(RenderBackend.JAVA2D));
+    FrameGenerator raster = new FrameGenerator(apb.createAnimParams());
+    raster.setFrameCache(null);
+    raster.setRenderBackend(RenderBackend.RASTER);
+
+    for (int frame = 0; frame < java2d.getNumberOfFrames(); frame++) {
+      byte[] p1 = getPixels(java2d.generateFrame(frame));
+      byte[] p2 = getPixels(raster.generateFrame(frame));
+      assertThat(p2.length, equalTo(p1.length));
+      long sum = 0;
+      int far = 0;
+      for (int i = 0; i < p1.length; i++) {
+        int d = Math.abs((p1[i] & 0xFF) - (p2[i] & 0xFF));
+        sum += d;
+        if (d > 64) {
+          far++;
+        }
+      }
+      // Átlagosan kevesebb, mint 2 szintnyi eltérés, és a képpontok legfeljebb 1%-a tér el jelentősen
+      assertThat("frame " + frame, (double) sum / p1.length, lessThan(2.0));
+      assertThat("frame " + frame, far * 100, lessThanOrEqualTo(p1.length));
+    }
+
+    // A két mód kockái külön tárolódnak
+    FrameCache cache = new FrameCache(1024 * 1024);
+    java2d.setFrameCache(cache);
+    raster.setFrameCache(cache);
+    java2d.generateFrame(0);
+    raster.generateFrame(0);
+    assertThat(cache.getMisses(), equalTo(2L));
+
+    try {
+      raster.setRenderBackend(null);
+      fail();
+    } catch (IllegalArgumentException ex) {
+    }
+  }
+
+  /**
+   * Szürkeárnyalatos képkockák: a szintek megegyeznek a színindexekkel.
+   */
+  @Test
+  public void test18() {
+    AnimParamsBuilder apb = new AnimParamsBuilder();
+    apb.setSpeed(100);
+    apb.setFramesPerSecond(10);
+    apb.setWidth(160);
+    apb.setHeight(120);
+    apb.setShowGrid(true);
+    apb.setAutoCam(true);
+    FrameGenerator indexed = new FrameGenerator(apb.createAnimParams());
+    indexed.setFrameCache(null);
+    assertThat(indexed.isGrayFrames(), is(false));
+    FrameGenerator gray = new FrameGenerator(apb.createAnimParams());
+    gray.setFrameCache(null);
+    gray.setGrayFrames(true);
+
+    // A szürke szintek megegyeznek a színindexekkel
+    for (int frame = 0; frame < indexed.getNumberOfFrames(); frame++) {
+      BufferedImage im1 = indexed.generateFrame(frame);
+      BufferedImage im2 = gray.generateFrame(frame);
+      assertThat(im1.getType(), is(BufferedImage.TYPE_BYTE_INDEXED));
+      assertThat(im2.getType(), is(BufferedImage.TYPE_BYTE_GRAY));
+      assertArrayEquals("frame " + frame, getPixels(im1), getPixels(im2));
+    }
+
+    // A két képtípus kockái külön tárolódnak
+    FrameCache cache = new FrameCache(1024 * 1024);
+    indexed.setFrameCache(cache);
+    gray.setFrameCache(cache);
+    indexed.generateFrame(0);
+    gray.generateFrame(0);
+    assertThat(cache.getMisses(), equalTo(2L));
+    assertThat(gray.generateFrame(0).getType(), is(BufferedImage.TYPE_BYTE_GRAY));
+    assertThat(cache.getHits(), equalTo(1L));
+  }
 }
@@ -0,0 +1,194 @@
+package hu.akusius.palenque.anigifmaker;
+
+import hu.akusius.palenque.anigifmaker.rendering.RenderBackend;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Bujdosó Ákos
+ */
+public class GifCacheTest {
+
+  private Path dir;
+
+  public GifCacheTest() {
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    dir = Files.createTempDirectory("pqagm-cache");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    for (Path p : listFiles()) {
+      Files.delete(p);
+    }
+    Files.delete(dir);
+  }
+
+  private List<Path> listFiles() throws Exception {
+    List<Path> files = new ArrayList<>();
+    try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+      for (Path p : ds) {
+        files.add(p);
+      }
+    }
+    return files;
+  }
+
+  private static GenerateParams createParams(int width) {
+    AnimParamsBuilder apb = new AnimParamsBuilder();
+    apb.setWidth(width);
+    apb.setHeight(80);
+    apb.setSpeed(100);
+    apb.setFramesPerSecond(10);
+    apb.setLastStep(2);
+    apb.setFadeInLength(200);
+    apb.setFadeOutLength(200);
+    return new GenerateParams(apb.createAnimParams(), new GifParams());
+  }
+
+  private static byte[] makeGif(GenerateParams params) throws Exception {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    GifMaker.makeGif(params, bos, 1);
+    return bos.toByteArray();
+  }
+
+  private static byte[] read(GifCache cache, GenerateParams params) throws Exception {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    cache.transferTo(params, 1, bos);
+    return bos.toByteArray();
+  }
+
+  /**
+   * Az első kérés generál, a második a gyorsítótárból jön; a kulcs a paraméterektől függ.
+   */
+  @Test
+  public void test1() throws Exception {
+    GenerateParams p1 = createParams(100);
+    GenerateParams p2 = createParams(101);
+    assertThat(GifCache.getKey(p1), is(GifCache.getKey(createParams(100))));
+    assertThat(GifCache.getKey(p1), not(GifCache.getKey(p2)));
+    // A kirajzolási mód is a kulcs része
+    assertThat(GifCache.getKey(p1), is(GifCache.getKey(p1, FrameGenerator.getDefaultRenderBackend())));
+    assertThat(GifCache.getKey(p1, RenderBackend.JAVA2D), not(GifCache.getKey(p1, RenderBackend.RASTER)));
+
+    GifCache cache = new GifCache(dir, 1L << 30);
+    assertThat(cache.get(p1), nullValue());
+    assertThat(cache.contains(p1), is(false));
+    byte[] expected = makeGif(p1);
+    assertArrayEquals(expected, read(cache, p1));
+    assertThat(cache.contains(p1), is(true));
+    assertArrayEquals(expected, read(cache, p1));
+    // A contains nem számít találatnak
+    assertThat(cache.getMisses(), is(1L));
+    assertThat(cache.getHits(), is(1L));
+    assertThat(cache.getSize(), is(1));
+    assertThat(cache.getTotalBytes(), is((long) expected.length));
+    assertThat(listFiles().size(), is(1));
+  }
+
+  /**
+   * A méretkorlát a legrégebben használt fájlokat törli; újranyitáskor a tartalom megmarad.
+   */
+  @Test
+  public void test2() throws Exception {
+    GenerateParams a = createParams(100);
+    GenerateParams b = createParams(110);
+    GenerateParams c = createParams(120);
+    long sa = makeGif(a).length;
+    long sb = makeGif(b).length;
+    long sc = makeGif(c).length;
+
+    GifCache cache = new GifCache(dir, sa + sb + sc - 1);
+    cache.getOrCreate(a, 1);
+    Thread.sleep(20);
+    cache.getOrCreate(b, 1);
+    Thread.sleep(20);
+    assertThat(cache.get(a), notNullValue());
+    Thread.sleep(20);
+    cache.getOrCreate(c, 1);
+    assertThat(cache.getSize(), is(2));
+    assertThat(cache.getTotalBytes(), is(sa + sc));
+    assertThat(cache.get(b), nullValue());
+    assertThat(listFiles().size(), is(2));
+
+    // Félbemaradt ideiglenes fájl
+    Files.createFile(dir.resolve("x.tmp"));
+    GifCache reopened = new GifCache(dir, sa + sc);
+    assertThat(reopened.getSize(), is(2));
+    assertThat(reopened.get(a), notNullValue());
+    assertThat(reopened.get(c), notNullValue());
+    assertThat(listFiles().size(), is(2));
+
+    // Kisebb korlát: a legrégebben használt törlődik
+    reopened = new GifCache(dir, Math.max(sa, sc));
+    assertThat(reopened.getSize(), is(1));
+    assertThat(reopened.get(c), notNullValue());
+  }
+
+  /**
+   * Kívülről írt bejegyzés: csak a közzététel után látszik.
+   */
+  @Test
+  public void test3() throws Exception {
+    GenerateParams p = createParams(100);
+    byte[] gif = makeGif(p);
+    GifCache cache = new GifCache(dir, 1L << 30);
+
+    try (GifCache.PendingEntry entry = cache.newEntry(p)) {
+      entry.write(gif, 0, 10);
+    }
+    assertThat(cache.get(p), nullValue());
+    assertThat(listFiles().size(), is(0));
+
+    try (GifCache.PendingEntry entry = cache.newEntry(p)) {
+      entry.write(gif);
+      entry.commit();
+    }
+    assertArrayEquals(gif, Files.readAllBytes(cache.get(p)));
+    assertThat(cache.getMisses(), is(0L));
+  }
+
+  /**
+   * Ugyanazon paraméterek egyidejű kérésekor csak egy generálás fut.
+   */
+  @Test
+  public void test4() throws Exception {
+    final GenerateParams p = createParams(100);
+    final GifCache cache = new GifCache(dir, 1L << 30);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<byte[]>> results = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        results.add(executor.submit(new Callable<byte[]>() {
+          @Override
+          public byte[] call() throws Exception {
+            return read(cache, p);
+          }
+        }));
+      }
+      byte[] expected = makeGif(p);
+      for (Future<byte[]> f : results) {
+        assertArrayEquals(expected, f.get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertThat(cache.getMisses(), is(1L));
+    assertThat(cache.getHits(), is(7L));
+  }
+}
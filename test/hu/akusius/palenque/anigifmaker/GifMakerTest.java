@@ -0,0 +1,205 @@
+package hu.akusius.palenque.anigifmaker;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.concurrent.*;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.swing.SwingWorker;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Bujdosó Ákos
+ */
+public class GifMakerTest {
+
+  public GifMakerTest() {
+  }
+
+  private static byte[] makeGif(GenerateParams params, int threads) throws Exception {
+    try (ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
+      GifMaker.makeGif(params, bos, threads);
+      return bos.toByteArray();
+    }
+  }
+
+  private static GenerateParams createParams(boolean autoCam, boolean showGrid) {
+    return createParams(autoCam, showGrid, new GifParams());
+  }
+
+  private static GenerateParams createParams(boolean autoCam, boolean showGrid, GifParams gp) {
+    AnimParamsBuilder apb = new AnimParamsBuilder();
+    apb.setWidth(120);
+    apb.setHeight(90);
+    apb.setSpeed(100);
+    apb.setFramesPerSecond(10);
+    apb.setAutoCam(autoCam);
+    apb.setShowGrid(showGrid);
+    apb.setFadeInLength(200);
+    apb.setFadeOutLength(200);
+    return new GenerateParams(apb.createAnimParams(), gp);
+  }
+
+  /**
+   * A párhuzamos generálás bájtra azonos eredményt ad a soros generálással.
+   */
+  @Test
+  public void test1() throws Exception {
+    for (boolean autoCam : new boolean[]{false, true}) {
+      GenerateParams params = createParams(autoCam, !autoCam);
+      byte[] sequential = makeGif(params, 1);
+      assertThat(sequential.length, not(equalTo(0)));
+      for (int threads : new int[]{2, 4, 7}) {
+        assertArrayEquals(sequential, makeGif(params, threads));
+      }
+    }
+  }
+
+  /**
+   * A kvantált GIF kisebb, és párhuzamosan is ugyanaz az eredmény.
+   */
+  @Test
+  public void test3() throws Exception {
+    byte[] full = makeGif(createParams(false, true), 1);
+    for (boolean dither : new boolean[]{false, true}) {
+      GenerateParams params = createParams(false, true, new GifParams(10, true, true, 8, dither));
+      byte[] quantized = makeGif(params, 1);
+      assertThat(quantized.length < full.length, is(true));
+      assertArrayEquals(quantized, makeGif(params, 3));
+    }
+  }
+
+  /**
+   * Érvénytelen szálszám.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void test2() throws Exception {
+    makeGif(createParams(false, false), 0);
+  }
+
+  /**
+   * Aszinkron generálás végrehajtón: ugyanaz az eredmény, az előrehaladás képkockánként érkezik,
+   * a befejeződésről értesítés jön.
+   */
+  @Test
+  public void test4() throws Exception {
+    GenerateParams params = createParams(true, true);
+    byte[] expected = makeGif(params, 1);
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      final List<GifProgress> progresses = new CopyOnWriteArrayList<>();
+      final CountDownLatch completed = new CountDownLatch(1);
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      GifTask task = GifMaker.makeGifAsync(params, bos, 2, executor, new GifProgressListener() {
+        @Override
+        public void progressChanged(GifProgress progress) {
+          progresses.add(progress);
+        }
+      });
+      task.addCompletionListener(new Runnable() {
+        @Override
+        public void run() {
+          completed.countDown();
+        }
+      });
+      task.get();
+      assertThat(completed.await(10, TimeUnit.SECONDS), is(true));
+      assertArrayEquals(expected, bos.toByteArray());
+
+      int total = new FrameGenerator(params.getAnimParams()).getNumberOfFrames();
+      GifProgress last = task.getProgress();
+      assertThat(last.getFrames(), is(total));
+      assertThat(last.getTotalFrames(), is(total));
+      assertThat(last.getPercent(), is(100));
+      assertThat(last.getBytes(), is((long) expected.length));
+      for (int i = 1; i < progresses.size(); i++) {
+        assertThat(progresses.get(i).getFrames() >= progresses.get(i - 1).getFrames(), is(true));
+        assertThat(progresses.get(i).getBytes() >= progresses.get(i - 1).getBytes(), is(true));
+        assertThat(progresses.get(i).getElapsedNanos() >= progresses.get(i - 1).getElapsedNanos(), is(true));
+      }
+      assertThat(progresses.size(), is(total + 2));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * A megszakítás a generálás közben érvényesül, a végrehajtó szál felszabadul.
+   */
+  @Test
+  public void test5() throws Exception {
+    AnimParamsBuilder apb = new AnimParamsBuilder();
+    apb.setWidth(1000);
+    apb.setHeight(800);
+    apb.setShowGrid(true);
+    GenerateParams params = new GenerateParams(apb.createAnimParams(), new GifParams());
+
+    for (int threads : new int[]{1, 3}) {
+      ExecutorService executor = Executors.newSingleThreadExecutor();
+      final CountDownLatch started = new CountDownLatch(1);
+      GifTask task = GifMaker.makeGifAsync(params, new ByteArrayOutputStream(), threads, executor, new GifProgressListener() {
+        @Override
+        public void progressChanged(GifProgress progress) {
+          if (progress.getFrames() > 0) {
+            started.countDown();
+          }
+        }
+      });
+      assertThat(started.await(30, TimeUnit.SECONDS), is(true));
+      assertThat(task.cancel(true), is(true));
+      assertThat(task.isCancelled(), is(true));
+      assertThat(task.isDone(), is(true));
+      executor.shutdown();
+      assertThat(executor.awaitTermination(5, TimeUnit.SECONDS), is(true));
+      assertThat(task.getProgress().getFrames() < task.getProgress().getTotalFrames(), is(true));
+    }
+  }
+
+  /**
+   * A {@code SwingWorker} {@code cancel(false)} hívása leállítja a generálást, a GIF lezárva marad.
+   */
+  @Test
+  public void test6() throws Exception {
+    AnimParamsBuilder apb = new AnimParamsBuilder();
+    apb.setWidth(1000);
+    apb.setHeight(800);
+    apb.setShowGrid(true);
+    GenerateParams params = new GenerateParams(apb.createAnimParams(), new GifParams());
+
+    final CountDownLatch finished = new CountDownLatch(1);
+    ByteArrayOutputStream bos = new ByteArrayOutputStream() {
+      @Override
+      public synchronized void flush() {
+        // A GIF lezárásakor a záró bájt után
+        if (count > 0 && buf[count - 1] == 0x3b) {
+          finished.countDown();
+        }
+      }
+    };
+    SwingWorker<Void, Void> sw = GifMaker.makeGifAsync(params, bos, 1);
+    long deadline = System.currentTimeMillis() + 30000;
+    while (sw.getProgress() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertThat(sw.getProgress() > 0, is(true));
+    assertThat(sw.cancel(false), is(true));
+    assertThat(finished.await(30, TimeUnit.SECONDS), is(true));
+
+    // A generálás a végigérés előtt leállt, a kiírt kockák olvashatók
+    assertThat(sw.getProgress() < 100, is(true));
+    ImageReader reader = ImageIO.getImageReadersByFormatName("gif").next();
+    try (ImageInputStream iis = ImageIO.createImageInputStream(new ByteArrayInputStream(bos.toByteArray()))) {
+      reader.setInput(iis);
+      assertThat(reader.getNumImages(true) > 0, is(true));
+    } finally {
+      reader.dispose();
+    }
+  }
+}
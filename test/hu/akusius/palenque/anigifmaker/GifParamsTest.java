@@ -73,4 +73,55 @@ public class GifParamsTest {
       }
     }
   }
+
+  /**
+   * A szürkeárnyalatok és a dithering (de)szerializálása.
+   */
+  @Test
+  public void test4() throws IOException {
+    GifParams gp1 = new GifParams(7, true, false, 8, true);
+    assertThat(gp1.getGrayLevels(), equalTo(8));
+    assertThat(gp1.isDither(), equalTo(true));
+    assertThat(gp1.isQuantized(), equalTo(true));
+    assertThat(new GifParams().isQuantized(), equalTo(false));
+
+    testEqual(gp1, GifParams.deserialize(gp1.serialize()));
+
+    JSONObject jo = gp1.serializeJSON();
+    jo.remove("grayLevels");
+    jo.remove("dither");
+    GifParams gp2 = GifParams.deserialize(jo);
+    assertThat(gp2.getGrayLevels(), equalTo(GifParams.GRAY_LEVELS_RANGE.getDef()));
+    assertThat(gp2.isDither(), equalTo(GifParams.DITHER_RANGE.getDef()));
+
+    byte[] serialized;
+    try (ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            DataOutputStream dos = new DataOutputStream(bos)) {
+      gp1.serialize(dos);
+      dos.flush();
+      serialized = bos.toByteArray();
+    }
+    try (DataInputStream dis = new DataInputStream(new ByteArrayInputStream(serialized))) {
+      testEqual(gp1, GifParams.deserialize(dis));
+    }
+
+    // Az 1-es verzió beolvasása
+    byte[] v1 = new byte[]{1, 7, 1, 0};
+    try (DataInputStream dis = new DataInputStream(new ByteArrayInputStream(v1))) {
+      testEqual(new GifParams(7, true, false), GifParams.deserialize(dis));
+    }
+
+    // Alapértelmezett szürkeárnyalatok és dithering esetén az 1-es verzió íródik ki
+    try (ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            DataOutputStream dos = new DataOutputStream(bos)) {
+      new GifParams(7, true, false).serialize(dos);
+      dos.flush();
+      assertArrayEquals(v1, bos.toByteArray());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test5() {
+    GifParams gp = new GifParams(7, true, false, 1, false);
+  }
 }
@@ -0,0 +1,87 @@
+package hu.akusius.palenque.anigifmaker;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.Arrays;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Bujdosó Ákos
+ */
+public class GrayQuantizerTest {
+
+  public GrayQuantizerTest() {
+  }
+
+  private static byte[] getPixels(BufferedImage image) {
+    return ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+  }
+
+  private static int countUsed(boolean[] used) {
+    int n = 0;
+    for (boolean u : used) {
+      if (u) {
+        n++;
+      }
+    }
+    return n;
+  }
+
+  /**
+   * A kvantált képkockában csak a megadott szintek fordulnak elő, a fekete és a fehér megmarad.
+   */
+  @Test
+  public void test1() {
+    AnimParamsBuilder apb = new AnimParamsBuilder();
+    apb.setWidth(120);
+    apb.setHeight(90);
+    FrameGenerator fg = new FrameGenerator(apb.createAnimParams());
+
+    for (int levels : new int[]{2, 4, 8, 16, 256}) {
+      for (boolean dither : new boolean[]{false, true}) {
+        GrayQuantizer quantizer = new GrayQuantizer(levels, dither);
+        boolean[] used = quantizer.getUsedColors();
+        assertThat(countUsed(used), is(levels));
+        assertThat(used[0] && used[255], is(true));
+
+        BufferedImage image = fg.generateFrame(fg.getFirstNonFadedFrame());
+        byte[] original = getPixels(image).clone();
+        quantizer.apply(image);
+        byte[] pixels = getPixels(image);
+        for (int i = 0; i < pixels.length; i++) {
+          assertThat(used[pixels[i] & 0xFF], is(true));
+          if (original[i] == 0 || original[i] == (byte) 255) {
+            assertThat(pixels[i], is(original[i]));
+          }
+          if (levels == 256) {
+            assertThat(pixels[i], is(original[i]));
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * A dithering egy egyenletes szürke felületet a két szomszédos szint keverékére bont,
+   * aminek az átlaga az eredeti érték közelében marad.
+   */
+  @Test
+  public void test2() {
+    BufferedImage image = new FrameGenerator(new AnimParamsBuilder().createAnimParams()).generateFrame(0, 16, 16);
+    byte[] pixels = getPixels(image);
+    Arrays.fill(pixels, (byte) 100);
+
+    new GrayQuantizer(4, true).apply(image);
+    int sum = 0;
+    for (byte p : pixels) {
+      int v = p & 0xFF;
+      assertThat(v == 85 || v == 170, is(true));
+      sum += v;
+    }
+    assertThat(Math.abs(sum / pixels.length - 100) <= 6, is(true));
+  }
+}
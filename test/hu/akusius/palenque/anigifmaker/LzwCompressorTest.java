@@ -0,0 +1,104 @@
+package hu.akusius.palenque.anigifmaker;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import org.junit.Test;
+import org.other.AnimatedGifEncoder;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Bujdosó Ákos
+ */
+public class LzwCompressorTest {
+
+  public LzwCompressorTest() {
+  }
+
+  /**
+   * Az eredeti kódoló elérése.
+   */
+  private static final class Reference extends AnimatedGifEncoder {
+
+    static byte[] encode(byte[] pixels, int width, int height, int colorDepth) throws IOException {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      encodePixels(width, height, pixels, colorDepth, bos);
+      return bos.toByteArray();
+    }
+  }
+
+  private static void check(LzwCompressor compressor, byte[] pixels, int width, int height, int colorDepth)
+          throws IOException {
+    byte[] expected = Reference.encode(pixels, width, height, colorDepth);
+    int len = compressor.compress(pixels, width * height, colorDepth);
+    assertArrayEquals(expected, Arrays.copyOf(compressor.getBuffer(), len));
+
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    compressor.encode(pixels, width * height, colorDepth, bos);
+    assertArrayEquals(expected, bos.toByteArray());
+  }
+
+  /**
+   * Legenerált képkockák: bájtra azonos kimenet, ugyanazzal a példánnyal.
+   */
+  @Test
+  public void test1() throws IOException {
+    AnimParamsBuilder apb = new AnimParamsBuilder();
+    apb.setWidth(150);
+    apb.setHeight(110);
+    apb.setShowGrid(true);
+    FrameGenerator fg = new FrameGenerator(apb.createAnimParams());
+
+    LzwCompressor compressor = new LzwCompressor();
+    for (int frame = 0; frame < fg.getNumberOfFrames(); frame += 37) {
+      BufferedImage image = fg.generateFrame(frame);
+      byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+      check(compressor, pixels, image.getWidth(), image.getHeight(), 8);
+    }
+  }
+
+  /**
+   * Véletlen adatok (sok táblatörléssel), különböző színmélységekkel és méretekkel.
+   */
+  @Test
+  public void test2() throws IOException {
+    Random random = new Random(12345);
+    LzwCompressor compressor = new LzwCompressor();
+    int[][] sizes = new int[][]{{1, 1}, {2, 1}, {17, 3}, {254, 1}, {300, 200}, {1000, 700}, {64, 64}};
+    for (int colorDepth = 1; colorDepth <= 8; colorDepth++) {
+      for (int[] size : sizes) {
+        byte[] pixels = new byte[size[0] * size[1]];
+        for (int i = 0; i < pixels.length; i++) {
+          // Részben ismétlődő, részben véletlen tartalom
+          pixels[i] = (byte) (random.nextInt(4) == 0 ? random.nextInt(1 << colorDepth) : (i / 7) % (1 << colorDepth));
+        }
+        check(compressor, pixels, size[0], size[1], colorDepth);
+      }
+    }
+  }
+
+  /**
+   * A megszakított szálon a tömörítés leáll, utána a példány újra használható.
+   */
+  @Test
+  public void test3() throws IOException {
+    LzwCompressor compressor = new LzwCompressor();
+    byte[] pixels = new byte[400 * 300];
+    Thread.currentThread().interrupt();
+    try {
+      compressor.compress(pixels, pixels.length, 8);
+      fail();
+    } catch (CancellationException ex) {
+      // Várt kivétel
+    } finally {
+      Thread.interrupted();
+    }
+    check(compressor, pixels, 400, 300, 8);
+  }
+}
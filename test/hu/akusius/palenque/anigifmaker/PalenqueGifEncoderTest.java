@@ -0,0 +1,323 @@
+package hu.akusius.palenque.anigifmaker;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import org.junit.Test;
+import org.w3c.dom.Node;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.number.OrderingComparison.*;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Bujdosó Ákos
+ */
+public class PalenqueGifEncoderTest {
+
+  public PalenqueGifEncoderTest() {
+  }
+
+  private static AnimParams createAnimParams() {
+    AnimParamsBuilder apb = new AnimParamsBuilder();
+    apb.setWidth(100);
+    apb.setHeight(80);
+    apb.setSpeed(100);
+    apb.setFramesPerSecond(10);
+    apb.setHoldInLength(200);
+    apb.setHoldOutLength(200);
+    apb.setFadeInLength(200);
+    apb.setFadeOutLength(200);
+    return apb.createAnimParams();
+  }
+
+  private static byte[] getPixels(BufferedImage image) {
+    return ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+  }
+
+  private static List<BufferedImage> generateFrames(FrameGenerator fg) {
+    List<BufferedImage> frames = new ArrayList<>(fg.getNumberOfFrames());
+    for (int i = 0; i < fg.getNumberOfFrames(); i++) {
+      frames.add(fg.generateFrame(i));
+    }
+    return frames;
+  }
+
+  private static byte[] encode(List<BufferedImage> frames, int delayMs, boolean merge) {
+    return encode(frames, delayMs, merge, true);
+  }
+
+  private static byte[] encode(List<BufferedImage> frames, int delayMs, boolean merge, boolean crop) {
+    return encode(frames, delayMs, merge, crop, true);
+  }
+
+  private static byte[] encode(List<BufferedImage> frames, int delayMs, boolean merge, boolean crop, boolean delta) {
+    return encode(frames, delayMs, merge, crop, delta, null);
+  }
+
+  private static byte[] encode(List<BufferedImage> frames, int delayMs, boolean merge, boolean crop, boolean delta,
+          boolean[] usedColors) {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    PalenqueGifEncoder encoder = new PalenqueGifEncoder();
+    encoder.setUsedColors(usedColors);
+    encoder.setMergeIdenticalFrames(merge);
+    encoder.setCropFrames(crop);
+    encoder.setTransparentDelta(delta);
+    assertTrue(encoder.start(bos));
+    encoder.setDelay(delayMs);
+    for (BufferedImage frame : frames) {
+      assertTrue(encoder.addFrame(frame));
+    }
+    assertTrue(encoder.finish());
+    return bos.toByteArray();
+  }
+
+  /**
+   * A GIF képeinek visszafejtése teljes (szürkeárnyalatos) képkockákká (a részképek elhelyezésével,
+   * az átlátszó képpontok kihagyásával).
+   */
+  private static List<DecodedFrame> decode(byte[] gif) throws Exception {
+    List<DecodedFrame> frames = new ArrayList<>();
+    Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("gif");
+    ImageReader reader = readers.next();
+    try (ImageInputStream iis = ImageIO.createImageInputStream(new ByteArrayInputStream(gif))) {
+      reader.setInput(iis);
+      int num = reader.getNumImages(true);
+      byte[] canvas = null;
+      int width = 0;
+      for (int i = 0; i < num; i++) {
+        BufferedImage image = reader.read(i);
+        Node root = reader.getImageMetadata(i).getAsTree("javax_imageio_gif_image_1.0");
+        Node desc = getChild(root, "ImageDescriptor");
+        Node gce = getChild(root, "GraphicControlExtension");
+        int left = getIntAttr(desc, "imageLeftPosition");
+        int top = getIntAttr(desc, "imageTopPosition");
+        boolean transparent = Boolean.parseBoolean(getAttr(gce, "transparentColorFlag"));
+        int transIndex = getIntAttr(gce, "transparentColorIndex");
+        assertThat(getAttr(gce, "disposalMethod"), anyOf(is("none"), is("doNotDispose")));
+        if (canvas == null) {
+          width = image.getWidth();
+          canvas = new byte[width * image.getHeight()];
+        }
+        IndexColorModel cm = (IndexColorModel) image.getColorModel();
+        Raster raster = image.getRaster();
+        for (int y = 0; y < image.getHeight(); y++) {
+          for (int x = 0; x < image.getWidth(); x++) {
+            int index = raster.getSample(x, y, 0);
+            if (!transparent || index != transIndex) {
+              canvas[(top + y) * width + left + x] = (byte) cm.getRed(index);
+            }
+          }
+        }
+        frames.add(new DecodedFrame(canvas.clone(), getIntAttr(gce, "delayTime")));
+      }
+    } finally {
+      reader.dispose();
+    }
+    return frames;
+  }
+
+  private static Node getChild(Node node, String name) {
+    for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+      if (child.getNodeName().equals(name)) {
+        return child;
+      }
+    }
+    throw new AssertionError(name);
+  }
+
+  private static String getAttr(Node node, String name) {
+    return node.getAttributes().getNamedItem(name).getNodeValue();
+  }
+
+  private static int getIntAttr(Node node, String name) {
+    return Integer.parseInt(getAttr(node, name));
+  }
+
+  /**
+   * Az azonos képkockák összevonása: kevesebb kép, de a lejátszás kockáról kockára azonos.
+   */
+  @Test
+  public void test1() throws Exception {
+    FrameGenerator fg = new FrameGenerator(createAnimParams());
+    List<BufferedImage> frames = generateFrames(fg);
+    int delay = 10;
+
+    List<DecodedFrame> decoded = decode(encode(frames, delay * 10, true));
+    assertThat(decoded.size(), lessThan(frames.size()));
+
+    int frame = 0;
+    for (DecodedFrame df : decoded) {
+      assertThat(df.delay % delay, is(0));
+      for (int i = 0; i < df.delay / delay; i++) {
+        assertArrayEquals(getPixels(frames.get(frame++)), df.pixels);
+      }
+    }
+    assertThat(frame, is(frames.size()));
+
+    List<DecodedFrame> unmerged = decode(encode(frames, delay * 10, false));
+    assertThat(unmerged.size(), is(frames.size()));
+  }
+
+  /**
+   * A túl hosszú összevont késleltetés több képre oszlik.
+   */
+  @Test
+  public void test2() throws Exception {
+    FrameGenerator fg = new FrameGenerator(createAnimParams());
+    BufferedImage image = fg.generateFrame(0);
+    List<BufferedImage> frames = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      frames.add(image);
+    }
+    frames.add(fg.generateFrame(fg.getNumberOfFrames() / 2));
+
+    List<DecodedFrame> decoded = decode(encode(frames, 300000, true));
+    assertThat(decoded.size(), is(4));
+    assertThat(decoded.get(0).delay, is(60000));
+    assertThat(decoded.get(1).delay, is(60000));
+    assertThat(decoded.get(2).delay, is(30000));
+    assertThat(decoded.get(3).delay, is(30000));
+    assertArrayEquals(getPixels(image), decoded.get(2).pixels);
+    assertThat(decoded.get(3).pixels, not(equalTo(decoded.get(2).pixels)));
+  }
+
+  /**
+   * A képkockák vágása: a lejátszás változatlan, a fájl kisebb.
+   */
+  @Test
+  public void test3() throws Exception {
+    FrameGenerator fg = new FrameGenerator(createAnimParams());
+    List<BufferedImage> frames = generateFrames(fg);
+
+    byte[] cropped = encode(frames, 100, false, true, false);
+    byte[] full = encode(frames, 100, false, false, false);
+    assertThat(cropped.length, lessThan(full.length));
+
+    List<DecodedFrame> decoded = decode(cropped);
+    assertThat(decoded.size(), is(frames.size()));
+    for (int i = 0; i < frames.size(); i++) {
+      assertArrayEquals(getPixels(frames.get(i)), decoded.get(i).pixels);
+    }
+  }
+
+  /**
+   * Az átlátszó különbségi kódolás: a lejátszás változatlan, a fájl kisebb.
+   */
+  @Test
+  public void test4() throws Exception {
+    AnimParamsBuilder apb = new AnimParamsBuilder(createAnimParams());
+    apb.setShowGrid(true);
+    FrameGenerator fg = new FrameGenerator(apb.createAnimParams());
+    List<BufferedImage> frames = generateFrames(fg);
+
+    for (boolean crop : new boolean[]{true, false}) {
+      byte[] delta = encode(frames, 100, true, crop, true);
+      byte[] plain = encode(frames, 100, true, crop, false);
+      assertThat(delta.length, lessThan(plain.length));
+
+      List<DecodedFrame> decoded = decode(delta);
+      List<DecodedFrame> expected = decode(plain);
+      assertThat(decoded.size(), is(expected.size()));
+      for (int i = 0; i < decoded.size(); i++) {
+        assertArrayEquals(expected.get(i).pixels, decoded.get(i).pixels);
+        assertThat(decoded.get(i).delay, is(expected.get(i).delay));
+      }
+    }
+  }
+
+  /**
+   * Csak a használt színeket tartalmazó paletta: a lejátszás változatlan, a fájl kisebb.
+   */
+  @Test
+  public void test5() throws Exception {
+    FrameGenerator fg = new FrameGenerator(createAnimParams());
+    List<BufferedImage> frames = generateFrames(fg);
+
+    // 4 szürkeárnyalatra csökkentett képkockák
+    boolean[] usedColors = new boolean[256];
+    List<BufferedImage> quantized = new ArrayList<>(frames.size());
+    for (BufferedImage frame : frames) {
+      BufferedImage q = new BufferedImage(frame.getColorModel(), frame.copyData(null), false, null);
+      byte[] pixels = getPixels(q);
+      for (int i = 0; i < pixels.length; i++) {
+        pixels[i] = (byte) (pixels[i] & 0xC0);
+        usedColors[pixels[i] & 0xFF] = true;
+      }
+      quantized.add(q);
+    }
+
+    for (boolean delta : new boolean[]{true, false}) {
+      byte[] compact = encode(quantized, 100, false, true, delta, usedColors);
+      byte[] full = encode(quantized, 100, false, true, delta, null);
+      assertThat(compact.length, lessThan(full.length));
+
+      List<DecodedFrame> decoded = decode(compact);
+      assertThat(decoded.size(), is(quantized.size()));
+      for (int i = 0; i < quantized.size(); i++) {
+        assertArrayEquals(getPixels(quantized.get(i)), decoded.get(i).pixels);
+      }
+    }
+  }
+
+  /**
+   * A megadott palettán nem szereplő szín.
+   */
+  @Test(expected = RuntimeException.class)
+  public void test6() throws Exception {
+    FrameGenerator fg = new FrameGenerator(createAnimParams());
+    boolean[] usedColors = new boolean[256];
+    usedColors[0] = true;
+    encode(generateFrames(fg), 100, true, true, true, usedColors);
+  }
+
+  /**
+   * A szürkeárnyalatos képkockák a szürke palettájú indexelt képkockákkal azonos GIF-et adnak.
+   */
+  @Test
+  public void test7() throws Exception {
+    FrameGenerator fg = new FrameGenerator(createAnimParams());
+    List<BufferedImage> frames = generateFrames(fg);
+    List<BufferedImage> grays = new ArrayList<>(frames.size());
+    for (BufferedImage frame : frames) {
+      BufferedImage g = new BufferedImage(frame.getWidth(), frame.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+      byte[] pixels = getPixels(frame);
+      System.arraycopy(pixels, 0, getPixels(g), 0, pixels.length);
+      grays.add(g);
+    }
+
+    for (boolean merge : new boolean[]{true, false}) {
+      byte[] gif = encode(grays, 100, merge);
+      assertArrayEquals(encode(frames, 100, merge), gif);
+      if (!merge) {
+        List<DecodedFrame> decoded = decode(gif);
+        assertThat(decoded.size(), is(grays.size()));
+        for (int i = 0; i < grays.size(); i++) {
+          assertArrayEquals(getPixels(grays.get(i)), decoded.get(i).pixels);
+        }
+      }
+    }
+  }
+
+  private static final class DecodedFrame {
+
+    final byte[] pixels;
+
+    final int delay;
+
+    DecodedFrame(byte[] pixels, int delay) {
+      this.pixels = pixels;
+      this.delay = delay;
+    }
+  }
+}
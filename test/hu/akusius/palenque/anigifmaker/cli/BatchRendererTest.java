@@ -0,0 +1,185 @@
+package hu.akusius.palenque.anigifmaker.cli;
+
+import hu.akusius.palenque.anigifmaker.AnimParamsBuilder;
+import hu.akusius.palenque.anigifmaker.GenerateParams;
+import hu.akusius.palenque.anigifmaker.GifMaker;
+import hu.akusius.palenque.anigifmaker.GifParams;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Bujdosó Ákos
+ */
+public class BatchRendererTest {
+
+  private Path dir;
+
+  public BatchRendererTest() {
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    dir = Files.createTempDirectory("pqagm-batch");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    for (Path p : Files.newDirectoryStream(dir)) {
+      Files.delete(p);
+    }
+    Files.delete(dir);
+  }
+
+  private static GenerateParams createParams(int width) {
+    AnimParamsBuilder apb = new AnimParamsBuilder();
+    apb.setWidth(width);
+    apb.setHeight(80);
+    apb.setSpeed(100);
+    apb.setFramesPerSecond(10);
+    apb.setLastStep(3);
+    apb.setFadeInLength(200);
+    apb.setFadeOutLength(200);
+    return new GenerateParams(apb.createAnimParams(), new GifParams(10, true, true));
+  }
+
+  private static byte[] makeGif(GenerateParams params) throws Exception {
+    try (ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
+      GifMaker.makeGif(params, bos, 1);
+      return bos.toByteArray();
+    }
+  }
+
+  private static int run(String... args) {
+    PrintStream out = new PrintStream(new ByteArrayOutputStream());
+    return BatchRenderer.run(args, out, out);
+  }
+
+  /**
+   * A feladatok beolvasása a különböző formátumokból.
+   */
+  @Test
+  public void test1() throws Exception {
+    GenerateParams p1 = createParams(100);
+    GenerateParams p2 = createParams(110);
+    GenerateParams p3 = createParams(120);
+
+    Path json = dir.resolve("first.json");
+    Files.write(json, p1.serialize().getBytes(StandardCharsets.UTF_8));
+    Path gif = dir.resolve("third.gif");
+    Files.write(gif, makeGif(p3));
+    Path list = dir.resolve("jobs.txt");
+    Files.write(list, Arrays.asList("# jobs", "", "first.json", p2.serializeBinaryASCII(), "third.gif"), StandardCharsets.UTF_8);
+
+    List<BatchRenderer.Job> jobs = BatchRenderer.parseJobs(Arrays.asList("@" + list, p1.serialize().replace('\n', ' ')));
+    assertThat(jobs.size(), is(4));
+    assertThat(jobs.get(0).name, is("first"));
+    assertThat(jobs.get(0).params.serialize(), is(p1.serialize()));
+    assertThat(jobs.get(1).name, is("job-002"));
+    assertThat(jobs.get(1).params.serialize(), is(p2.serialize()));
+    assertThat(jobs.get(2).name, is("third"));
+    assertThat(jobs.get(2).params.serialize(), is(p3.serialize()));
+    assertThat(jobs.get(3).params.serialize(), is(p1.serialize()));
+  }
+
+  /**
+   * A párhuzamosan generált GIF-ek megegyeznek a külön generáltakkal,
+   * a forrás GIF nem íródik felül.
+   */
+  @Test
+  public void test2() throws Exception {
+    GenerateParams p1 = createParams(100);
+    GenerateParams p2 = createParams(120);
+    byte[] gif2 = makeGif(p2);
+    Path source = dir.resolve("second.gif");
+    Files.write(source, gif2);
+
+    assertThat(run("-j", "2", "-t", "2", "-o", dir.toString(), p1.serializeBinaryASCII(), source.toString()), is(0));
+    assertArrayEquals(makeGif(p1), Files.readAllBytes(dir.resolve("job-001.gif")));
+    assertArrayEquals(gif2, Files.readAllBytes(source));
+    assertArrayEquals(gif2, Files.readAllBytes(dir.resolve("second-2.gif")));
+  }
+
+  /**
+   * Érvénytelen paraméterek.
+   */
+  @Test
+  public void test3() throws Exception {
+    assertThat(run(), is(2));
+    assertThat(run("-j", "0", "PQAGM:"), is(2));
+    assertThat(run("-x"), is(2));
+    assertThat(run("-o", dir.toString(), dir.resolve("missing.json").toString()), is(2));
+  }
+
+  /**
+   * Üres, illetve csak megjegyzéseket tartalmazó listafájl.
+   */
+  @Test
+  public void test4() throws Exception {
+    Path empty = dir.resolve("empty.lst");
+    Files.write(empty, new byte[0]);
+    assertThat(run("-o", dir.toString(), "@" + empty), is(2));
+
+    Path comments = dir.resolve("comments.lst");
+    Files.write(comments, Arrays.asList("# jobs", "", "  # none"), StandardCharsets.UTF_8);
+    assertThat(run("-o", dir.toString(), "@" + comments), is(2));
+  }
+
+  /**
+   * A gyorsítótárból kiszolgált feladat egyetlen találatnak számít.
+   */
+  @Test
+  public void test5() throws Exception {
+    Path cacheDir = Files.createDirectory(dir.resolve("cache"));
+    try {
+      String spec = createParams(100).serializeBinaryASCII();
+      assertThat(run("-o", dir.toString(), "--cache", cacheDir.toString(), spec), is(0));
+
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      PrintStream out = new PrintStream(bos, true, "UTF-8");
+      assertThat(BatchRenderer.run(new String[]{"-o", dir.toString(), "--cache", cacheDir.toString(), spec}, out, out), is(0));
+      String output = new String(bos.toByteArray(), StandardCharsets.UTF_8);
+      assertThat(output, containsString("[cached]"));
+      assertThat(output, containsString("Cache: 1 hit(s), 0 miss(es)"));
+    } finally {
+      for (Path p : Files.newDirectoryStream(cacheDir)) {
+        Files.delete(p);
+      }
+      Files.delete(cacheDir);
+    }
+  }
+
+  /**
+   * Sikertelen feladat után nem marad (csonka vagy ideiglenes) kimeneti fájl.
+   */
+  @Test
+  public void test6() throws Exception {
+    // A kimenet helyén egy nem üres könyvtár van, így a kimenet nem írható ki
+    Path blocker = Files.createDirectory(dir.resolve("job-001.gif"));
+    Path inner = Files.createFile(blocker.resolve("keep"));
+    try {
+      assertThat(run("-o", dir.toString(), createParams(100).serializeBinaryASCII()), is(1));
+      List<Path> files = new ArrayList<>();
+      for (Path p : Files.newDirectoryStream(dir)) {
+        files.add(p);
+      }
+      assertThat(files, is(Arrays.asList(blocker)));
+      assertThat(Files.isDirectory(blocker), is(true));
+    } finally {
+      Files.delete(inner);
+      Files.delete(blocker);
+    }
+  }
+}
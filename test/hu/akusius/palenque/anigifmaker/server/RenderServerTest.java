@@ -0,0 +1,198 @@
+package hu.akusius.palenque.anigifmaker.server;
+
+import hu.akusius.palenque.anigifmaker.AnimParamsBuilder;
+import hu.akusius.palenque.anigifmaker.GenerateParams;
+import hu.akusius.palenque.anigifmaker.GifCache;
+import hu.akusius.palenque.anigifmaker.GifMaker;
+import hu.akusius.palenque.anigifmaker.GifParams;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Bujdosó Ákos
+ */
+public class RenderServerTest {
+
+  private RenderServer server;
+
+  public RenderServerTest() {
+  }
+
+  @After
+  public void tearDown() {
+    if (server != null) {
+      server.stop();
+    }
+  }
+
+  private void start(int workers, int queueLimit, long timeoutMillis) throws IOException {
+    server = new RenderServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), workers, 2, queueLimit, timeoutMillis);
+    server.start();
+  }
+
+  private static GenerateParams createParams(int width, int height, boolean full) {
+    AnimParamsBuilder apb = new AnimParamsBuilder();
+    apb.setWidth(width);
+    apb.setHeight(height);
+    apb.setShowGrid(true);
+    if (!full) {
+      apb.setSpeed(100);
+      apb.setFramesPerSecond(10);
+      apb.setLastStep(3);
+      apb.setFadeInLength(200);
+      apb.setFadeOutLength(200);
+    }
+    return new GenerateParams(apb.createAnimParams(), new GifParams());
+  }
+
+  private HttpURLConnection open(String path) throws IOException {
+    URL url = new URL("http", "127.0.0.1", server.getAddress().getPort(), path);
+    return (HttpURLConnection) url.openConnection();
+  }
+
+  private HttpURLConnection post(String body) throws IOException {
+    HttpURLConnection conn = open("/render");
+    conn.setRequestMethod("POST");
+    conn.setDoOutput(true);
+    try (OutputStream os = conn.getOutputStream()) {
+      os.write(body.getBytes(StandardCharsets.UTF_8));
+    }
+    return conn;
+  }
+
+  private static byte[] read(InputStream is) throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int n;
+    try (InputStream in = is) {
+      while ((n = in.read(buffer)) != -1) {
+        bos.write(buffer, 0, n);
+      }
+    }
+    return bos.toByteArray();
+  }
+
+  private static byte[] makeGif(GenerateParams params) throws Exception {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    GifMaker.makeGif(params, bos, 1);
+    return bos.toByteArray();
+  }
+
+  /**
+   * A GIF darabolt átvitellel érkezik, JSON-, PQAGM:- és GET-kérésre is ugyanaz.
+   */
+  @Test
+  public void test1() throws Exception {
+    start(2, 4, 60000);
+    GenerateParams params = createParams(100, 80, false);
+    byte[] expected = makeGif(params);
+
+    HttpURLConnection conn = post(params.serialize());
+    assertThat(conn.getResponseCode(), is(200));
+    assertThat(conn.getContentType(), is("image/gif"));
+    assertThat(conn.getHeaderField("Transfer-Encoding"), is("chunked"));
+    assertArrayEquals(expected, read(conn.getInputStream()));
+
+    conn = post(params.serializeBinaryASCII());
+    assertThat(conn.getResponseCode(), is(200));
+    assertArrayEquals(expected, read(conn.getInputStream()));
+
+    conn = open("/render?params=" + URLEncoder.encode(params.serializeBinaryASCII(), "UTF-8"));
+    assertThat(conn.getResponseCode(), is(200));
+    assertArrayEquals(expected, read(conn.getInputStream()));
+
+    conn = open("/status");
+    assertThat(new String(read(conn.getInputStream()), StandardCharsets.UTF_8), containsString("completed: 3"));
+  }
+
+  /**
+   * Hibás kérések.
+   */
+  @Test
+  public void test2() throws Exception {
+    start(1, 1, 60000);
+    assertThat(post("{invalid").getResponseCode(), is(400));
+    assertThat(post("PQAGM:xyz").getResponseCode(), is(400));
+    assertThat(post("").getResponseCode(), is(400));
+    assertThat(open("/render").getResponseCode(), is(400));
+    HttpURLConnection conn = open("/render");
+    conn.setRequestMethod("DELETE");
+    assertThat(conn.getResponseCode(), is(405));
+  }
+
+  /**
+   * Telített szolgáltatás: a sor fölötti kérések elutasításra kerülnek;
+   * az időkorlát túllépésekor a válasz csonka marad.
+   */
+  @Test
+  public void test3() throws Exception {
+    start(1, 0, 1500);
+    String big = createParams(1000, 800, true).serializeBinaryASCII();
+
+    HttpURLConnection first = post(big);
+    assertThat(first.getResponseCode(), is(200));
+    InputStream is = first.getInputStream();
+    assertThat(is.read(), is((int) 'G'));
+
+    assertThat(post(big).getResponseCode(), is(503));
+
+    try {
+      read(is);
+      fail();
+    } catch (IOException ex) {
+      // A csonka darabolt átvitel hibát ad
+    }
+  }
+
+  /**
+   * Gyorsítótárral: az első kérés generál (és eltárol), a második a gyorsítótárból, fix hosszal érkezik.
+   */
+  @Test
+  public void test4() throws Exception {
+    Path dir = Files.createTempDirectory("pqagm-cache");
+    try {
+      GifCache cache = new GifCache(dir, 1L << 30);
+      server = new RenderServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1, 1, 1, 60000, cache);
+      server.start();
+      GenerateParams params = createParams(100, 80, false);
+      byte[] expected = makeGif(params);
+
+      HttpURLConnection conn = post(params.serializeBinaryASCII());
+      assertThat(conn.getHeaderField("X-Cache"), is("MISS"));
+      assertArrayEquals(expected, read(conn.getInputStream()));
+
+      conn = post(params.serializeBinaryASCII());
+      assertThat(conn.getHeaderField("X-Cache"), is("HIT"));
+      assertThat(conn.getContentLength(), is(expected.length));
+      assertArrayEquals(expected, read(conn.getInputStream()));
+      assertThat(cache.getMisses(), is(0L));
+      assertThat(cache.getHits(), is(1L));
+    } finally {
+      server.stop();
+      server = null;
+      try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+        for (Path p : ds) {
+          Files.delete(p);
+        }
+      }
+      Files.delete(dir);
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package hu.akusius.palenque.anigifmaker.ui;
+
+import hu.akusius.palenque.anigifmaker.AnimParamsBuilder;
+import hu.akusius.palenque.anigifmaker.FrameGenerator;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Bujdosó Ákos
+ */
+public class FramePrefetcherTest {
+
+  public FramePrefetcherTest() {
+  }
+
+  private static FrameGenerator createGenerator() {
+    AnimParamsBuilder apb = new AnimParamsBuilder();
+    apb.setWidth(120);
+    apb.setHeight(80);
+    // Lassú lejátszás, hogy a generálás biztosan lépést tartson vele (ne maradjon ki kocka)
+    apb.setSpeed(10);
+    apb.setFramesPerSecond(2);
+    apb.setLastStep(3);
+    apb.setFadeInLength(0);
+    apb.setFadeOutLength(0);
+    FrameGenerator fg = new FrameGenerator(apb.createAnimParams());
+    fg.setFrameCache(null);
+    return fg;
+  }
+
+  private static BufferedImage waitForFrame(FramePrefetcher prefetcher, int frame) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 20000;
+    BufferedImage image;
+    while ((image = prefetcher.getFrame(frame)) == null && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    return image;
+  }
+
+  private static byte[] getPixels(BufferedImage image) {
+    return ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+  }
+
+  @Test
+  public void testPrefetch() throws Exception {
+    FrameGenerator fg = createGenerator();
+    int lastFrame = fg.getNumberOfFrames() - 1;
+    assertThat(lastFrame > 8, is(true));
+
+    FramePrefetcher prefetcher = new FramePrefetcher(fg, 60, 40, 4, 2);
+    try {
+      // Lejátszás nélkül nem generál semmit
+      Thread.sleep(50);
+      assertThat(prefetcher.getFrame(0), nullValue());
+
+      prefetcher.setPlayHead(0, false);
+      for (int frame = 0; frame < 4; frame++) {
+        BufferedImage image = waitForFrame(prefetcher, frame);
+        assertThat(image, notNullValue());
+        assertThat(image.getWidth(), is(60));
+        assertThat(image.getHeight(), is(40));
+        assertArrayEquals(getPixels(fg.generateFrame(frame, 60, 40)), getPixels(image));
+      }
+      // Az ablakon kívüli kocka nem generálódik
+      assertThat(prefetcher.getFrame(4), nullValue());
+
+      // Továbblépéskor a korábbi kockák kikerülnek, az újak elkészülnek
+      prefetcher.setPlayHead(2, false);
+      assertThat(prefetcher.getFrame(1), nullValue());
+      assertThat(prefetcher.getFrame(2), notNullValue());
+      assertThat(waitForFrame(prefetcher, 5), notNullValue());
+
+      // Ismétléskor az utolsó kocka után az első következik
+      prefetcher.setPlayHead(lastFrame - 1, true);
+      assertThat(waitForFrame(prefetcher, 1), notNullValue());
+      assertThat(waitForFrame(prefetcher, lastFrame), notNullValue());
+
+      // Leállítás után nincs kész kocka
+      prefetcher.setPlayHead(-1, false);
+      assertThat(prefetcher.getFrame(lastFrame), nullValue());
+    } finally {
+      prefetcher.close();
+    }
+  }
+}